@@ -1,178 +1,240 @@
 package com.example.symply_care.Consumer;
 
-import com.example.symply_care.controller.DoctorController;
-import com.example.symply_care.controller.EmailSendController;
-import com.example.symply_care.controller.PatientController;
-import com.example.symply_care.dto.DoctorDTO;
-import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.Publisher.RabbitMQProducer;
+import com.example.symply_care.config.RabbitMQConfig;
 import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.service.EmailDeliveryService;
+import com.example.symply_care.service.EmailTemplateService;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.http.ResponseEntity;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
-public class RabbitMQConsumer {
-    private final EmailSendController emailSendController;
-    private final PatientController patientController;
-    private final DoctorController doctorController;
-
-
-    public RabbitMQConsumer(EmailSendController emailSendController, PatientController patientController, DoctorController doctorController) {
-        this.emailSendController = emailSendController;
-        this.patientController = patientController;
-        this.doctorController = doctorController;
+public class RabbitMQConsumer implements ChannelAwareBatchMessageListener {
+    private final EmailDeliveryService emailDeliveryService;
+    private final EmailTemplateService emailTemplateService;
+    private final MessageConverter messageConverter;
+    private final RabbitMQProducer producer;
+    private final int maxAttempts;
+
+
+    //הערכים שכל תבנית מקבלת כאן. נבדק מול המשבצות של התבניות בעלייה (EmailTemplateService.requireParameters)
+    private static final Map<String, Set<String>> TEMPLATE_PARAMETERS = Map.of(
+            "appointment", Set.of("doctorName", "patientName"),
+            "inquiry", Set.of("senderRole", "senderName", "recipientName"),
+            "answer", Set.of("doctorName", "recipientName"),
+            "contact-us", Set.of("message", "email"));
+
+    public RabbitMQConsumer(EmailDeliveryService emailDeliveryService, EmailTemplateService emailTemplateService, MessageConverter messageConverter,
+                            RabbitMQProducer producer, @Value("${rabbitmq.retry.max-attempts:4}") int maxAttempts) {
+        this.emailDeliveryService = emailDeliveryService;
+        this.emailTemplateService = emailTemplateService;
+        this.messageConverter = messageConverter;
+        this.producer = producer;
+        this.maxAttempts = maxAttempts;
+        TEMPLATE_PARAMETERS.forEach(emailTemplateService::requireParameters);
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMQConsumer.class);
 
-    @Transactional
-    @RabbitListener(queues = {"${rabbitmq.queue.name}"})
-    public void consume(RabbitMQMessage rabbitMQMessage) throws Exception {
+    //מנה של הודעות ממחיצה אחת (RabbitMQConfig.notificationListeners), לפי הסדר שבתור.
+    //המיילים של כל ההודעות במנה נשלחים במקביל בEmailDeliveryService, אבל הack/nack והפרסום לתור ההמתנה
+    //נעשים רק כאן, בthread של הlistener - Channel לא בטוח לשימוש מכמה threads
+    @Override
+    public void onMessageBatch(List<Message> messages, Channel channel) {
+        List<CompletableFuture<Void>> results = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            RabbitMQMessage rabbitMQMessage;
+            try {
+                rabbitMQMessage = (RabbitMQMessage) messageConverter.fromMessage(message);
+            } catch (MessageConversionException | ClassCastException e) {
+                results.add(CompletableFuture.failedFuture(new MessageConversionException("Unreadable message", e)));
+                continue;
+            }
+            results.add(consume(rabbitMQMessage));
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            try {
+                results.get(i).join();
+                acknowledge(channel, deliveryTag);
+            } catch (CompletionException e) {
+                fail(message, channel, deliveryTag, e);
+            }
+        }
+    }
+
+    //הfuture מסתיים אחרי שכל המיילים של ההודעה התקבלו בשרת הדואר, או עם הכשלון הראשון
+    private CompletableFuture<Void> consume(RabbitMQMessage rabbitMQMessage) {
         LOGGER.info(String.format("Recieved message -> %s", rabbitMQMessage.toString()));
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        try {
+            compose(rabbitMQMessage, deliveries);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.allOf(deliveries.toArray(new CompletableFuture[0]));
+    }
+
+    //כשלון זמני - ההודעה עוברת לתור ההמתנה של הנסיון הבא (RabbitMQConfig.notificationRetryQueues).
+    //כשלון קבוע או אחרי maxAttempts נסיונות - לparking lot. בשני המקרים ההודעה המקורית מקבלת ack,
+    //ורק אם הפרסום עצמו נכשל היא חוזרת לתור
+    private void fail(Message message, Channel channel, long deliveryTag, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Object previousAttempts = message.getMessageProperties().getHeader(RabbitMQConfig.ATTEMPTS_HEADER);
+        int attempts = (previousAttempts instanceof Number number ? number.intValue() : 0) + 1;
+        try {
+            if (isPermanent(cause) || attempts >= maxAttempts) {
+                LOGGER.error(String.format("Parking message after %d attempts: %s", attempts, cause.getMessage()));
+                producer.sendToParkingLot(message, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+            } else {
+                LOGGER.warn(String.format("Retrying message (attempt %d of %d): %s", attempts, maxAttempts, cause.getMessage()));
+                producer.sendToRetry(message, attempts);
+            }
+            acknowledge(channel, deliveryTag);
+        } catch (AmqpException e) {
+            LOGGER.error("Failed to reroute message " + deliveryTag + ": " + e.getMessage());
+            try {
+                channel.basicNack(deliveryTag, false, true);
+            } catch (IOException nackError) {
+                LOGGER.warn("Failed to nack message " + deliveryTag + ": " + nackError.getMessage());
+            }
+        }
+    }
+
+    private static boolean isPermanent(Throwable error) {
+        return error instanceof MessageConversionException || EmailDeliveryService.isPermanent(error);
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException e) {
+            //הchannel נסגר בינתיים - הברוקר ישלח את ההודעה שוב
+            LOGGER.warn("Failed to acknowledge message " + deliveryTag + ": " + e.getMessage());
+        }
+    }
+
+    //השמות מגיעים בהודעה עצמה (RabbitMQMessage גרסה 2), כך שאין כאן גישה למסד - רק רינדור התבנית (EmailTemplateService) והגשה לשליחה
+    private void compose(RabbitMQMessage rabbitMQMessage, List<CompletableFuture<Void>> deliveries) throws Exception {
         if(rabbitMQMessage.getEmail()==null){
-        // Get doctor info
-        ResponseEntity<DoctorDTO> doctorResponseEntity = doctorController.getDoctorByEmail(rabbitMQMessage.getDoctorEmail());
-        DoctorDTO doctor = doctorResponseEntity.getBody();
+        String doctorName = nameOf(rabbitMQMessage.getDoctorName(), rabbitMQMessage.getDoctorEmail());
 
         // Check for appointment
         if (rabbitMQMessage.getAppointmentDate() != null) {
-            sendAppointmentEmail(rabbitMQMessage, doctor);
+            sendAppointmentEmail(rabbitMQMessage, doctorName, deliveries);
         } else if (rabbitMQMessage.getDoctorAnswer() == null) {
-            sendInquiryEmail(rabbitMQMessage, doctor);
+            sendInquiryEmail(rabbitMQMessage, doctorName, deliveries);
         } else {
-            sendAnswerEmail(rabbitMQMessage, doctor);
+            sendAnswerEmail(rabbitMQMessage, doctorName, deliveries);
         }
     }
     else{
-        sendMessageToAdmin(rabbitMQMessage);
+        sendMessageToAdmin(rabbitMQMessage, deliveries);
     }
     }
 
-    private void sendAppointmentEmail(RabbitMQMessage rabbitMQMessage, DoctorDTO doctor) {
-        try {
-            ResponseEntity<PatientDTO> patientResponseEntity = patientController.getPatientByEmail(rabbitMQMessage.getPatientEmail());
-            PatientDTO patient = patientResponseEntity.getBody();
-
-            String subject = "New Appointment Scheduled for You!";
-            String body = "<html>" +
-                    "<body style=\"font-family: Arial, sans-serif;\">" +
-                    "<div style=\"background-color: #f2f2f2; padding: 20px;\">" +
-                    "<h1 style=\"color:royalblue; margin-bottom: 20px;\">Hi! It's SYMPly - Care</h1>" +
-                    "<p style=\"margin-bottom: 20px;\">We are pleased to inform you that a new meeting has been scheduled for you with the following details:</p>" +
-                    "<ul style=\"margin-left: 40px;\">" +
-                    "<li style=\"margin-bottom: 10px;\"><strong>Doctor:</strong> " + doctor.getFirstName() + " " + doctor.getLastName() + "</li>" +
-                    "<li style=\"margin-bottom: 10px;\"><strong>Patient:</strong> " + patient.getFirstName() + " " + patient.getLastName() + "</li>" +
-                    "</ul>" +
-                    "<p style=\"margin-bottom: 20px;\">For more details, please check your profile on our website.</p>" +
-                    "</div>" +
-                    "</body>" +
-                    "</html>";
-
-            emailSendController.sendEmail(rabbitMQMessage.getPatientEmail(), subject, body, null);
-            emailSendController.sendEmail(rabbitMQMessage.getDoctorEmail(), subject, body, null);
-        } catch (Exception e) {
-            LOGGER.error("Error sending appointment email: " + e.getMessage());
-        }
+    //הודעה מגרסה 1 לא כוללת שמות - מציגים את כתובת המייל.
+    //לעולם לא מחזיר null, כי הערכים לתבניות נבנים עם Map.of שזורק NullPointerException על null
+    private static String nameOf(String name, String email) {
+        return name != null ? name : Objects.requireNonNullElse(email, "");
+    }
+
+    private void sendAppointmentEmail(RabbitMQMessage rabbitMQMessage, String doctorName, List<CompletableFuture<Void>> deliveries) {
+        String patientName = nameOf(rabbitMQMessage.getPatientName(), rabbitMQMessage.getPatientEmail());
+
+        String subject = "New Appointment Scheduled for You!";
+        //שני השמות מnameOf
+        String body = emailTemplateService.render("appointment", Map.of(
+                "doctorName", doctorName,
+                "patientName", patientName));
+
+        deliveries.add(emailDeliveryService.submit(rabbitMQMessage.getPatientEmail(), subject, body));
+        deliveries.add(emailDeliveryService.submit(rabbitMQMessage.getDoctorEmail(), subject, body));
     }
 
-    private void sendInquiryEmail(RabbitMQMessage rabbitMQMessage, DoctorDTO doctor) throws Exception {
-        PatientDTO patient = null;
-        DoctorDTO doctor2 = null;
+    private void sendInquiryEmail(RabbitMQMessage rabbitMQMessage, String doctorName, List<CompletableFuture<Void>> deliveries) {
+        String patientName = "";
         String recipientEmail = null;
         String recipientName = null;
+        String senderInquiryEmail = rabbitMQMessage.getSenderInquiryEmail();
+        String senderName = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
+                "Doctor" : "Patient";
         if (rabbitMQMessage.getPatientEmail() != null) {
-            ResponseEntity<PatientDTO> patientResponseEntity = patientController.getPatientByEmail(rabbitMQMessage.getPatientEmail());
-            patient = patientResponseEntity.getBody();
+            patientName = nameOf(rabbitMQMessage.getPatientName(), rabbitMQMessage.getPatientEmail());
+            recipientEmail = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
+                    rabbitMQMessage.getPatientEmail() : rabbitMQMessage.getDoctorEmail();
+            recipientName = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
+                    patientName : doctorName;
         } else {
-            ResponseEntity<DoctorDTO> doctor2ResponseEntity = doctorController.getDoctorByEmail(rabbitMQMessage.getDoctor2Email());
-            doctor2 = doctor2ResponseEntity.getBody();
+            recipientEmail = rabbitMQMessage.getDoctor2Email();
+            recipientName = nameOf(rabbitMQMessage.getDoctor2Name(), rabbitMQMessage.getDoctor2Email());
         }
-        try {
-            String senderInquiryEmail = rabbitMQMessage.getSenderInquiryEmail();
-            String senderName = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
-                    "Doctor" : "Patient";
-            if (patient != null) {
-                recipientEmail = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
-                        rabbitMQMessage.getPatientEmail() : rabbitMQMessage.getDoctorEmail();
-                recipientName = (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail())) ?
-                        patient.getFirstName() + " " + patient.getLastName() : doctor.getFirstName() + " " + doctor.getLastName();
-            } else {
-                recipientEmail = rabbitMQMessage.getDoctor2Email();
-                recipientName = doctor2.getFirstName() + " " + doctor2.getLastName();
-            }
 
-            String subject = "New Inquiry is waiting for your response!";
-            String body = "<html><body><h1 style=\"color:royalblue;\">Hi! it's SYMPly - Care</h1><br/><br/>"
-                    + "<p>A new inquiry is waiting for you with these details:</p>"
-                    + "<p>From " + senderName + ": " + (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail()) ? doctor.getFirstName() + " " + doctor.getLastName() : patient.getFirstName() + " " + patient.getLastName()) + "</p>"
-                    + "<p>To you: " + recipientName + "</p>"
-                    + "<p>For more details, check the website in your profile.</p>"
-                    + "</body></html>";
+        String subject = "New Inquiry is waiting for your response!";
+        //senderName וrecipientName הם doctorName, patientName (מאותחל ל"") או תוצאה של nameOf
+        String body = emailTemplateService.render("inquiry", Map.of(
+                "senderRole", senderName,
+                "senderName", Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctorEmail()) ? doctorName : patientName,
+                "recipientName", recipientName));
 
-            emailSendController.sendEmail(recipientEmail, subject, body, null);
-        } catch (Exception e) {
-            LOGGER.error("Error sending inquiry email: " + e.getMessage());
-        }
+        deliveries.add(emailDeliveryService.submit(recipientEmail, subject, body));
     }
 
 
 
-    private void sendAnswerEmail(RabbitMQMessage rabbitMQMessage, DoctorDTO doctor) {
+    private void sendAnswerEmail(RabbitMQMessage rabbitMQMessage, String doctorName, List<CompletableFuture<Void>> deliveries) {
         String recipientEmail = null;
         String recipientName = null;
-        PatientDTO patient = null;
-        DoctorDTO doctor2 = null;
-        try {
-            String senderInquiryEmail = rabbitMQMessage.getSenderInquiryEmail();
-            if (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctor2Email())) {
-                recipientEmail = rabbitMQMessage.getDoctorEmail();
-                recipientName = doctor.getFirstName() + " " + doctor.getLastName();
-                ResponseEntity<DoctorDTO> doctor2ResponseEntity = doctorController.getDoctorByEmail(rabbitMQMessage.getDoctor2Email());
-                doctor2 = doctor2ResponseEntity.getBody();
-            } else {
-                ResponseEntity<PatientDTO> patientResponseEntity = patientController.getPatientByEmail(rabbitMQMessage.getPatientEmail());
-                patient = patientResponseEntity.getBody();
-                recipientEmail = rabbitMQMessage.getPatientEmail();
-                recipientName = patient.getFirstName() + " " + patient.getLastName();
-            }
-            String subject = "Your inquiry has been answered!";
-            String body = "<html><body><h1 style=\"color:royalblue;\">Hi! it's SYMPly - Care</h1><br/><br/>"
-                    + "<p>A new inquiry has been answered with these details:</p>"
-                    + "<p>Doctor: " + (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctor2Email()) ?
-                    doctor2.getFirstName() + " " + doctor2.getLastName() : doctor.getFirstName() + " " + doctor.getLastName()) + "</p>"
-                    + "<p>To you: " + recipientName + "</p>"
-                    + "<p>For more details, check the website in your profile.</p>"
-                    + "</body></html>";
-
-            emailSendController.sendEmail(recipientEmail, subject, body, null);
-        } catch (Exception e) {
-            LOGGER.error("Error sending answer email: " + e.getMessage());
+        String doctor2Name = null;
+        String senderInquiryEmail = rabbitMQMessage.getSenderInquiryEmail();
+        if (Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctor2Email())) {
+            recipientEmail = rabbitMQMessage.getDoctorEmail();
+            recipientName = doctorName;
+            doctor2Name = nameOf(rabbitMQMessage.getDoctor2Name(), rabbitMQMessage.getDoctor2Email());
+        } else {
+            recipientEmail = rabbitMQMessage.getPatientEmail();
+            recipientName = nameOf(rabbitMQMessage.getPatientName(), rabbitMQMessage.getPatientEmail());
         }
+        String subject = "Your inquiry has been answered!";
+        //doctor2Name נקבע (מnameOf) בדיוק כשהוא נבחר כאן
+        String body = emailTemplateService.render("answer", Map.of(
+                "doctorName", Objects.equals(senderInquiryEmail, rabbitMQMessage.getDoctor2Email()) ? doctor2Name : doctorName,
+                "recipientName", recipientName));
+
+        deliveries.add(emailDeliveryService.submit(recipientEmail, subject, body));
     }
-    private void sendMessageToAdmin(RabbitMQMessage rabbitMQMessage) {
-        try {
-            // Decode the message
-            String decodedMessage = URLDecoder.decode(rabbitMQMessage.getMessage(), "UTF-8");
-
-            String subject = "Hello Ezra, You have received a message from someone interested in contacting you regarding your application.";
-            String body = "<html><body><h1 style=\"color:royalblue;\">Hi! it's SYMPly - Care</h1><br/><br/>"
-                    + "<p>Information:</p>"
-                    + "<p>Message: " + decodedMessage + "</p>"
-                    + "<p>From this Email Address: " + rabbitMQMessage.getEmail() + "</p>"
-                    + "<p>For more details, check the website in your profile.</p>"
-                    + "</body></html>";
-
-            // Send the email with the decoded message
-            emailSendController.sendEmail(rabbitMQMessage.getAdminEmail(), subject, body, null);
-        } catch (Exception e) {
-            LOGGER.error("Error sending answer email: " + e.getMessage());
-        }
+    private void sendMessageToAdmin(RabbitMQMessage rabbitMQMessage, List<CompletableFuture<Void>> deliveries) throws Exception {
+        // Decode the message
+        //טופס בלי הודעה נשלח עם הודעה ריקה. הכתובת לא null - compose מגיע לכאן רק כשיש Email
+        String decodedMessage = URLDecoder.decode(Objects.requireNonNullElse(rabbitMQMessage.getMessage(), ""), "UTF-8");
+
+        String subject = "Hello Ezra, You have received a message from someone interested in contacting you regarding your application.";
+        //ההודעה והכתובת מגיעות מטופס פתוח באתר, והתבנית עושה להן escaping
+        String body = emailTemplateService.render("contact-us", Map.of(
+                "message", decodedMessage,
+                "email", rabbitMQMessage.getEmail()));
+
+        // Send the email with the decoded message
+        deliveries.add(emailDeliveryService.submit(rabbitMQMessage.getAdminEmail(), subject, body));
     }
 
 
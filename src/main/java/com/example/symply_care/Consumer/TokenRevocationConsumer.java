@@ -0,0 +1,35 @@
+package com.example.symply_care.Consumer;
+
+import com.example.symply_care.entity.TokenRevocationMessage;
+import com.example.symply_care.service.ClusteredTokenRevocationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@ConditionalOnProperty(name = "token.revocation.store", havingValue = "rabbit")
+public class TokenRevocationConsumer {
+    private final ClusteredTokenRevocationStore clusteredTokenRevocationStore;
+
+    public TokenRevocationConsumer(ClusteredTokenRevocationStore clusteredTokenRevocationStore) {
+        this.clusteredTokenRevocationStore = clusteredTokenRevocationStore;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenRevocationConsumer.class);
+
+    @RabbitListener(queues = {"#{tokenRevocationQueue.name}"})
+    public void consume(TokenRevocationMessage tokenRevocationMessage) {
+        LOGGER.debug(String.format("Recieved token revocation -> %s", tokenRevocationMessage.getTokenId()));
+        clusteredTokenRevocationStore.onRemoteRevocation(tokenRevocationMessage);
+    }
+
+    //התור של השרת כבר קיים ומחובר לexchange, כך שהתשובות של שאר השרתים יגיעו אליו
+    @EventListener(ApplicationReadyEvent.class)
+    public void requestRevocationsFromOtherNodes() {
+        clusteredTokenRevocationStore.requestSync();
+    }
+}
@@ -1,12 +1,29 @@
 package com.example.symply_care.Publisher;
 
+import com.example.symply_care.config.RabbitMQConfig;
 import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.entity.TokenRevocationMessage;
+import com.example.symply_care.util.Partitions;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ReturnListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Service
 public class RabbitMQProducer {
     @Value("${rabbitmq.exchnage.name}")
@@ -15,14 +32,142 @@ public class RabbitMQProducer {
     private String queue;
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
+    @Value("${rabbitmq.partitions:8}")
+    private int partitions;
+    @Value("${token.revocation.exchange:sympleCare_tokenRevocations}")
+    private String tokenRevocationExchange;
+    @Value("${rabbitmq.retry.initial-delay-millis:1000}")
+    private long initialDelayMillis;
+    @Value("${rabbitmq.retry.multiplier:5}")
+    private int multiplier;
+    @Value("${rabbitmq.publish.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
     private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMQProducer.class);
     private RabbitTemplate rabbitTemplate;
     public RabbitMQProducer(RabbitTemplate rabbitTemplate){
         this.rabbitTemplate=rabbitTemplate;
     }
+    //כל ההודעות של אותה שיחה (אותו מטופל, או אותו רופא מופנה) הולכות לאותה מחיצה ולכן נצרכות לפי הסדר
     public void sendMessage(RabbitMQMessage rabbitMQMessage){
+        if (rabbitMQMessage.getSchemaVersion() == null) {
+            rabbitMQMessage.setSchemaVersion(RabbitMQMessage.SCHEMA_VERSION);
+        }
         LOGGER.info(String.format("Json Message sent -> %s", rabbitMQMessage));
-        rabbitTemplate.convertAndSend(exhange,routingKey,rabbitMQMessage);
+        int partition = Partitions.of(partitionKey(rabbitMQMessage), partitions);
+        rabbitTemplate.convertAndSend(exhange,routingKey + "." + partition,rabbitMQMessage);
+    }
+    public static String partitionKey(RabbitMQMessage rabbitMQMessage){
+        if (rabbitMQMessage.getPatientEmail() != null) {
+            return rabbitMQMessage.getPatientEmail();
+        }
+        if (rabbitMQMessage.getDoctor2Email() != null) {
+            return rabbitMQMessage.getDoctor2Email();
+        }
+        return rabbitMQMessage.getDoctorEmail() != null ? rabbitMQMessage.getDoctorEmail() : rabbitMQMessage.getEmail();
+    }
+    //הודעה שנכשלה ממתינה בתור ההמתנה של הנסיון הזה, ואז חוזרת מהברוקר לאותה מחיצה (RabbitMQConfig.notificationRetryQueues).
+    //חוזר רק אחרי שהברוקר אישר שההודעה נשמרה בתור, כי מיד אחרי זה ההודעה המקורית מקבלת ack (RabbitMQConsumer.fail)
+    public void sendToRetry(Message message, int attempts){
+        String originalRoutingKey = originalRoutingKey(message);
+        Message retry = MessageBuilder.fromClonedMessage(message)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .setHeader(RabbitMQConfig.ATTEMPTS_HEADER, attempts)
+                .setHeader(RabbitMQConfig.RETRY_QUEUE_HEADER,
+                        RabbitMQConfig.retryQueue(queue, RabbitMQConfig.retryDelay(initialDelayMillis, multiplier, attempts)))
+                .setHeader(RabbitMQConfig.ORIGINAL_ROUTING_KEY_HEADER, originalRoutingKey)
+                .build();
+        sendConfirmed(exhange + ".retry", originalRoutingKey, retry);
+    }
+    public void sendToParkingLot(Message message, String error){
+        Message parked = MessageBuilder.fromClonedMessage(message)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .setHeader(RabbitMQConfig.ORIGINAL_ROUTING_KEY_HEADER, originalRoutingKey(message))
+                .setHeader(RabbitMQConfig.LAST_ERROR_HEADER, error)
+                .build();
+        sendConfirmed("", RabbitMQConfig.parkingLotQueue(queue), parked);
+    }
+    //ממתין לconfirm של הברוקר. nack, הודעה שחזרה כי אין לה תור (mandatory) או timeout נזרקים כAmqpException
+    private void sendConfirmed(String exchange, String routingKey, Message message){
+        CorrelationData correlationData = new CorrelationData();
+        rabbitTemplate.send(exchange, routingKey, message, correlationData);
+        CorrelationData.Confirm confirm;
+        try {
+            confirm = correlationData.getFuture().get(confirmTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while waiting for the publisher confirm", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpTimeoutException("No publisher confirm for " + exchange + "/" + routingKey, e);
+        }
+        if (!confirm.isAck()) {
+            throw new AmqpException("Broker rejected message to " + exchange + "/" + routingKey + ": " + confirm.getReason());
+        }
+        //הreturn מגיע מהברוקר לפני הconfirm
+        if (correlationData.getReturned() != null) {
+            throw new AmqpException("Message to " + exchange + "/" + routingKey + " was not routed: "
+                    + correlationData.getReturned().getReplyText());
+        }
+    }
+    public long parkingLotSize(){
+        Long size = rabbitTemplate.execute(channel -> channel.messageCount(RabbitMQConfig.parkingLotQueue(queue)));
+        return size == null ? 0 : size;
+    }
+    //מחזיר עד limit הודעות מהparking lot לexchange הראשי, עם מונה נסיונות מאופס.
+    //הack נשלח רק אחרי שהברוקר אישר את הפרסום מחדש (confirm) ושההודעה הגיעה לתור (mandatory), כך שאם החיבור
+    //נופל באמצע או שאין מחיצה מתאימה ההודעה נשארת בparking lot.
+    //להודעה שנדחתה ישירות מתור מחיצה אין routing key מקורי, והיא עוברת לתור הראשי הישן
+    public int replayParkingLot(int limit){
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        Integer replayed = rabbitTemplate.execute(channel -> {
+            int count = 0;
+            boolean[] returned = new boolean[1];
+            ReturnListener returnListener = (replyCode, replyText, exchange, routingKey, properties, body) -> returned[0] = true;
+            channel.confirmSelect();
+            channel.addReturnListener(returnListener);
+            try {
+                GetResponse response;
+                while (count < limit && (response = channel.basicGet(RabbitMQConfig.parkingLotQueue(queue), false)) != null) {
+                    Map<String, Object> headers = response.getProps().getHeaders() == null ?
+                            new HashMap<>() : new HashMap<>(response.getProps().getHeaders());
+                    Object originalRoutingKey = headers.remove(RabbitMQConfig.ORIGINAL_ROUTING_KEY_HEADER);
+                    headers.remove(RabbitMQConfig.ATTEMPTS_HEADER);
+                    headers.remove(RabbitMQConfig.RETRY_QUEUE_HEADER);
+                    headers.remove(RabbitMQConfig.LAST_ERROR_HEADER);
+                    headers.remove("x-death");
+                    String replayRoutingKey = originalRoutingKey == null ? routingKey : originalRoutingKey.toString();
+                    returned[0] = false;
+                    channel.basicPublish(exhange, replayRoutingKey, true,
+                            response.getProps().builder().headers(headers).build(), response.getBody());
+                    channel.waitForConfirmsOrDie(confirmTimeoutMillis);
+                    if (returned[0]) {
+                        channel.basicNack(response.getEnvelope().getDeliveryTag(), false, true);
+                        LOGGER.error(String.format("Stopped replaying: no queue is bound to %s/%s", exhange, replayRoutingKey));
+                        break;
+                    }
+                    channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+                    count++;
+                }
+            } finally {
+                channel.removeReturnListener(returnListener);
+            }
+            return count;
+        });
+        LOGGER.info(String.format("Replayed %d messages from the parking lot", replayed));
+        return replayed == null ? 0 : replayed;
+    }
+    private String originalRoutingKey(Message message){
+        Object header = message.getMessageProperties().getHeader(RabbitMQConfig.ORIGINAL_ROUTING_KEY_HEADER);
+        if (header != null) {
+            return header.toString();
+        }
+        String received = message.getMessageProperties().getReceivedRoutingKey();
+        return received != null ? received : routingKey;
+    }
+    //fanout - כל שרת מקבל עותק בתור משלו
+    public void sendTokenRevocation(TokenRevocationMessage tokenRevocationMessage){
+        rabbitTemplate.convertAndSend(tokenRevocationExchange,"",tokenRevocationMessage);
     }
 
 
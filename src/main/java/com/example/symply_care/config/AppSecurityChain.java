@@ -3,8 +3,11 @@ package com.example.symply_care.config;
 
 import com.example.symply_care.service.CustomLogoutHandler;
 import com.example.symply_care.service.CustomUserDetailsService;
+import com.example.symply_care.service.TokenBlackListService;
+import com.example.symply_care.service.TokenVersionService;
 import com.example.symply_care.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -27,6 +30,12 @@ public class AppSecurityChain {
     final private CustomUserDetailsService userDetailsService;
     final private JwtUtil jwtUtil;
     final private CustomLogoutHandler customLogoutHandler;
+    final private TokenVersionService tokenVersionService;
+    final private TokenBlackListService tokenBlackListService;
+
+    //claims - אימות מתוך הtoken בלבד, database - טעינת המשתמש בכל בקשה
+    @Value("${jwt.authentication.mode:claims}")
+    private String authenticationMode;
 
 
     @Bean //על מנת ליצור עצם של פעולה!! מבלי תוספת קוד
@@ -40,11 +49,14 @@ public class AppSecurityChain {
                 .csrf(csrf -> csrf.disable())
                 .cors(cors -> cors.configure(http))
                 .sessionManagement(sess -> sess.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .addFilterBefore(new JwtAuthenticationFilter(jwtUtil, userDetailsService),
+                .addFilterBefore(new JwtAuthenticationFilter(jwtUtil, userDetailsService, tokenVersionService, tokenBlackListService,
+                                "claims".equalsIgnoreCase(authenticationMode)),
                         UsernamePasswordAuthenticationFilter.class)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
-                        .requestMatchers("/changePassword/**","/contactUs/**","/login/**", "/signup/**", "/doctors/doctors","/doctors/addDoctor","/patients/addPatient","/getSpecializations").permitAll()
+                        .requestMatchers("/changePassword/**","/contactUs/**","/login/**", "/signup/**", "/doctors/doctors","/doctors/directory","/doctors/doctor/*/image","/doctors/doctor/*/thumbnail","/doctors/addDoctor","/patients/addPatient","/getSpecializations").permitAll()
+                        //ROLE_ADMIN ניתן רק דרך security.admin-emails (AdminRoleProvisioner)
+                        .requestMatchers("/rabbitmq/parkingLot/**").hasRole("ADMIN")
                         .requestMatchers("/logout/**", "/refresh_token/**", "/doctors/**", "/rabbitmq/**",
                                 "/patients/**", "/email/**").hasAnyRole("PATIENT", "DOCTOR")
                         .anyRequest().authenticated())
@@ -1,26 +1,37 @@
 package com.example.symply_care.config;
 
 
+import com.example.symply_care.exceptions.TokenValidationException;
 import com.example.symply_care.service.CustomUserDetailsService;
+import com.example.symply_care.service.TokenBlackListService;
+import com.example.symply_care.service.TokenVersionService;
 import com.example.symply_care.util.JwtProperties;
 import com.example.symply_care.util.JwtUtil;
+import com.example.symply_care.util.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter { //OncePerRequestFilter מאפשר הרצה עבור כל בקשה
 
     final private JwtUtil jwtUtil;
     final private CustomUserDetailsService customUserDetailsService;
+    final private TokenVersionService tokenVersionService;
+    final private TokenBlackListService tokenBlackListService;
+    //true - ההרשאות נבנות מהroles שבtoken ללא פנייה לבסיס הנתונים. false - טעינת המשתמש מבסיס הנתונים בכל בקשה
+    final private boolean claimsOnly;
 
 
     //עושה פילטר ראשוני עבור כל בקשה לאימות הנתונים
@@ -40,17 +51,39 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter { //OncePerReq
         }
 
         if (token != null) {
-            String username = jwtUtil.extractUsername(token);
-            UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
+            try {
+                //פענוח ואימות החתימה מתבצעים פעם אחת בלבד לכל בקשה
+                VerifiedToken verifiedToken = jwtUtil.verify(token);
+                if (tokenBlackListService.isBlacklisted(verifiedToken.getId())) {
+                    throw new TokenValidationException("Token has been revoked", null);
+                }
+                UserDetails userDetails = claimsOnly
+                        ? userDetailsFromClaims(verifiedToken)
+                        : customUserDetailsService.loadUserByUsername(verifiedToken.getSubject());
 
-            if (jwtUtil.validateToken(token, userDetails)) {
-                UsernamePasswordAuthenticationToken authentication =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+                if (jwtUtil.validateToken(verifiedToken, userDetails)
+                        && tokenVersionService.isCurrent(verifiedToken.getSubject(), verifiedToken.getTokenVersion())) {
+                    UsernamePasswordAuthenticationToken authentication =
+                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                    authentication.setDetails(verifiedToken);
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                    request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, verifiedToken);
+                }
+            } catch (TokenValidationException e) {
+                //token לא תקין - הבקשה ממשיכה ללא אימות וspring security יחליט אם לחסום אותה
+                logger.debug("Rejected JWT: " + e.getMessage());
             }
         }
         filterChain.doFilter(request, response); // המשך הפילטור או המשך מימוש הבקשה לפי הקוד זאת אומרת שימשיך במסלולו הרגיל
         //במידה ולא יהיה שורה זאת אז הבקשה תיעצר פה
     }
+
+    //החתימה כבר אומתה, לכן אפשר לסמוך על הroles שבתוך הtoken
+    private UserDetails userDetailsFromClaims(VerifiedToken verifiedToken) {
+        List<SimpleGrantedAuthority> authorities = verifiedToken.getRoles().stream()
+                .map(SimpleGrantedAuthority::new)
+                .toList();
+        return new User(verifiedToken.getSubject(), "", authorities);
+    }
 }
 
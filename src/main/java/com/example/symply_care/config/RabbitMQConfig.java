@@ -1,6 +1,14 @@
 package com.example.symply_care.config;
 
+import com.example.symply_care.Consumer.RabbitMQConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
@@ -9,14 +17,31 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMQConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMQConfig.class);
     @Value("${rabbitmq.queue.name}")
     private String queue;
     @Value("${rabbitmq.exchnage.name}")
     private String exhange;
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
+    @Value("${rabbitmq.partitions:8}")
+    private int partitions;
+    @Value("${rabbitmq.retry.max-attempts:4}")
+    private int maxAttempts;
+    @Value("${rabbitmq.retry.initial-delay-millis:1000}")
+    private long initialDelayMillis;
+    @Value("${rabbitmq.retry.multiplier:5}")
+    private int multiplier;
+
+    public static final String ATTEMPTS_HEADER = "x-attempts";
+    public static final String RETRY_QUEUE_HEADER = "x-retry-queue";
+    public static final String ORIGINAL_ROUTING_KEY_HEADER = "x-original-routing-key";
+    public static final String LAST_ERROR_HEADER = "x-last-error";
 
     @Bean
     public Queue queue(){
@@ -32,6 +57,124 @@ public class RabbitMQConfig {
                 .to(exchange())
                 .with((routingKey));
     }
+    //התור הראשי מחולק למחיצות לפי כתובת המייל (RabbitMQProducer). לכל מחיצה צרכן פעיל אחד בלבד בכל השרתים
+    //(single active consumer), כך שהודעות של אותו נמען נצרכות לפי הסדר, ומחיצות שונות נצרכות במקביל.
+    //מספר המחיצות חייב להיות זהה בשולח ובצרכן; שינוי שלו מערבב את הסדר של הודעות שכבר בתורים.
+    //הארגומנטים של תור לא משתנים אחרי שנוצר (שינוי נכשל בPRECONDITION_FAILED), ולכן אין כאן dead letter -
+    //הצרכן לא דוחה הודעות בלי requeue. מי שרוצה רשת ביטחון מגדיר policy, שאפשר לשנות בלי למחוק את התורים:
+    //rabbitmqctl set_policy notifications-dlx "^sympleCareMain\.[0-9]+$" '{"dead-letter-exchange":"","dead-letter-routing-key":"sympleCareMain.parking-lot"}' --apply-to queues
+    //מעבר מגרסה שהגדירה x-dead-letter-* על המחיצות: לעצור את הצרכנים, לחכות שהמחיצות יתרוקנו
+    //(rabbitmqctl delete_queue sympleCareMain.N --if-empty) ורק אז לעלות עם הגרסה הזו
+    @Bean
+    public Declarables notificationPartitions(){
+        List<Declarable> declarables = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            Queue partition = QueueBuilder.durable(partitionQueue(i)).singleActiveConsumer().build();
+            declarables.add(partition);
+            declarables.add(BindingBuilder.bind(partition).to(exchange()).with(routingKey + "." + i));
+        }
+        return new Declarables(declarables);
+    }
+    //צרכן אחד לכל תור: שני צרכנים על אותו תור יכולים לטפל בשתי הודעות של אותו נמען במקביל ולהפוך את הסדר.
+    //ההודעות נלקחות במנות, והack נשלח ידנית מהthread של הcontainer אחרי שהמיילים של המנה נשלחו (RabbitMQConsumer)
+    @Bean
+    public SimpleRabbitListenerContainerFactory notificationListenerFactory(ConnectionFactory connectionFactory,
+                                                                            @Value("${rabbitmq.listener.prefetch:50}") int prefetch,
+                                                                            @Value("${rabbitmq.listener.batch-size:20}") int batchSize,
+                                                                            @Value("${rabbitmq.listener.receive-timeout-millis:100}") long receiveTimeout){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+    //container לכל מחיצה, ועוד אחד לתור הישן בלי המחיצות כדי לרוקן הודעות שנשלחו לפני המעבר
+    @Bean
+    public RabbitListenerConfigurer notificationListeners(RabbitMQConsumer rabbitMQConsumer,
+                                                          SimpleRabbitListenerContainerFactory notificationListenerFactory){
+        return (RabbitListenerEndpointRegistrar registrar) -> {
+            List<String> queueNames = new ArrayList<>();
+            queueNames.add(queue);
+            for (int i = 0; i < partitions; i++) {
+                queueNames.add(partitionQueue(i));
+            }
+            for (String queueName : queueNames) {
+                SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+                endpoint.setId("notifications-" + queueName);
+                endpoint.setQueueNames(queueName);
+                endpoint.setMessageListener(rabbitMQConsumer);
+                registrar.registerEndpoint(endpoint, notificationListenerFactory);
+            }
+        };
+    }
+    //נסיונות חוזרים: הודעה שנכשלה נשלחת לתור המתנה לפי מספר הנסיון, בלי צרכנים ועם TTL שגדל פי multiplier בכל נסיון.
+    //כשהTTL נגמר הברוקר מעביר אותה (dead letter) לexchange הראשי עם הrouting key המקורי, כלומר חזרה לאותה מחיצה.
+    //כך הודעה בעייתית לא תופסת את הצרכן בלולאה, ושאר ההודעות במחיצה ממשיכות בזמן שהיא ממתינה.
+    //ההשהיה היא חלק מהשם (sympleCareMain.retry.5000ms): שינוי של initial-delay-millis או multiplier יוצר תורים חדשים
+    //במקום להגדיר מחדש תור קיים עם TTL אחר. התורים הישנים מתרוקנים לבד חזרה למחיצות, ואחר כך אפשר למחוק אותם
+    //(rabbitmqctl delete_queue <שם> --if-empty), כולל sympleCareMain.retry.1/2/3 מהגרסה שמספרה את התורים לפי נסיון
+    @Bean
+    public HeadersExchange notificationRetryExchange(){
+        return new HeadersExchange(exhange + ".retry");
+    }
+    @Bean
+    public Declarables notificationRetryQueues(){
+        List<Declarable> declarables = new ArrayList<>();
+        for (int attempt = 1; attempt < maxAttempts; attempt++) {
+            long delay = retryDelay(initialDelayMillis, multiplier, attempt);
+            Queue retryQueue = QueueBuilder.durable(retryQueue(queue, delay)).ttl((int) delay)
+                    .deadLetterExchange(exhange).build();
+            declarables.add(retryQueue);
+            declarables.add(BindingBuilder.bind(retryQueue).to(notificationRetryExchange())
+                    .where(RETRY_QUEUE_HEADER).matches(retryQueue.getName()));
+        }
+        return new Declarables(declarables);
+    }
+    //הודעות שנכשלו בכל הנסיונות, שנכשלו לצמיתות או שלא ניתן לקרוא. נשארות עד שמישהו בודק ומפעיל אותן מחדש
+    //(RabbitMQController), וגם הודעות שנדחו מתורי המחיצות אם הוגדר הpolicy שלמעלה
+    @Bean
+    public Queue notificationParkingLot(){
+        return QueueBuilder.durable(parkingLotQueue(queue)).build();
+    }
+    public static long retryDelay(long initialDelayMillis, int multiplier, int attempt){
+        long delay = initialDelayMillis;
+        for (int i = 1; i < attempt; i++) {
+            delay *= multiplier;
+        }
+        return delay;
+    }
+    public static String retryQueue(String queue, long delayMillis){
+        return queue + ".retry." + delayMillis + "ms";
+    }
+    public static String parkingLotQueue(String queue){
+        return queue + ".parking-lot";
+    }
+    private String partitionQueue(int partition){
+        return queue + "." + partition;
+    }
+    //ביטולי tokens: כל שרת מקבל תור זמני משלו (נמחק כשהשרת נופל) שמחובר לexchange מסוג fanout
+    @Bean
+    @ConditionalOnProperty(name = "token.revocation.store", havingValue = "rabbit")
+    public FanoutExchange tokenRevocationExchange(@Value("${token.revocation.exchange:sympleCare_tokenRevocations}") String name){
+        return new FanoutExchange(name);
+    }
+    //תור זמני לכל שרת, שנמחק כשהשרת יורד. ביטולים שנשלחו לפני שהשרת עלה מגיעים מהשרתים האחרים (ClusteredTokenRevocationStore.requestSync)
+    @Bean
+    @ConditionalOnProperty(name = "token.revocation.store", havingValue = "rabbit")
+    public Queue tokenRevocationQueue(){
+        return new AnonymousQueue(new Base64UrlNamingStrategy("sympleCare_tokenRevocations."));
+    }
+    @Bean
+    @ConditionalOnProperty(name = "token.revocation.store", havingValue = "rabbit")
+    public Binding tokenRevocationBinding(Queue tokenRevocationQueue, FanoutExchange tokenRevocationExchange){
+        return BindingBuilder.bind(tokenRevocationQueue).to(tokenRevocationExchange);
+    }
     @Bean
     public MessageConverter converter(){
         return new Jackson2JsonMessageConverter();
@@ -40,6 +183,11 @@ public class RabbitMQConfig {
     public AmqpTemplate amqpTemplate(ConnectionFactory connectionFactory){
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(converter());
+        //הודעה שאין לה תור (למשל מחיצה שלא הוגדרה) חוזרת מהברוקר במקום להיעלם. שליחות עם CorrelationData
+        //(RabbitMQProducer) מקבלות אותה בתוך הCorrelationData, ולכל השאר נשאר רק הלוג
+        rabbitTemplate.setMandatory(true);
+        rabbitTemplate.setReturnsCallback(returned -> LOGGER.error(String.format("Message returned by the broker from %s/%s: %s",
+                returned.getExchange(), returned.getRoutingKey(), returned.getReplyText())));
         return rabbitTemplate;
     }
 }
\ No newline at end of file
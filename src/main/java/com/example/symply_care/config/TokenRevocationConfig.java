@@ -0,0 +1,37 @@
+package com.example.symply_care.config;
+
+import com.example.symply_care.Publisher.RabbitMQProducer;
+import com.example.symply_care.service.ClusteredTokenRevocationStore;
+import com.example.symply_care.service.CustomUserDetailsService;
+import com.example.symply_care.service.InMemoryTokenRevocationStore;
+import com.example.symply_care.service.TokenRevocationStore;
+import com.example.symply_care.service.TokenVersionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//בחירת מקום השמירה של tokens שבוטלו: token.revocation.store=memory (שרת יחיד) או rabbit (כמה שרתים מאחורי load balancer)
+@Configuration
+public class TokenRevocationConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "token.revocation.store", havingValue = "memory", matchIfMissing = true)
+    public TokenRevocationStore inMemoryTokenRevocationStore() {
+        return new InMemoryTokenRevocationStore();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "token.revocation.store", havingValue = "rabbit")
+    public ClusteredTokenRevocationStore clusteredTokenRevocationStore(
+            RabbitMQProducer rabbitMQProducer,
+            CustomUserDetailsService customUserDetailsService,
+            TokenVersionService tokenVersionService,
+            @Value("${token.revocation.bloom.expected-insertions:100000}") long expectedInsertions,
+            @Value("${token.revocation.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        return new ClusteredTokenRevocationStore(rabbitMQProducer::sendTokenRevocation, email -> {
+            customUserDetailsService.evict(email);
+            tokenVersionService.evict(email);
+        }, expectedInsertions, falsePositiveRate);
+    }
+}
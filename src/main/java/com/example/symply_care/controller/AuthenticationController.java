@@ -10,7 +10,9 @@ import com.example.symply_care.repository.PatientRepository;
 import com.example.symply_care.repository.UsersRepository;
 import com.example.symply_care.service.AuthenticationService;
 import com.example.symply_care.service.RefreshTokenService;
+import com.example.symply_care.service.UserCredentialsChangedEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -29,6 +31,7 @@ public class AuthenticationController {
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
     private final UsersRepository usersRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@RequestBody AuthenticationRequest authenticationRequest) {
@@ -92,6 +95,7 @@ public class AuthenticationController {
                     patientRepository.save(patientResponse.get());
                     usersOptional.get().setPassword(newPassword);
                     usersRepository.save(usersOptional.get());
+                    eventPublisher.publishEvent(new UserCredentialsChangedEvent(email));
                     return ResponseEntity.ok().build();
                 }
             }else{
@@ -103,6 +107,7 @@ public class AuthenticationController {
                     doctorRepository.save(doctorResponse.get());
                     usersOptional.get().setPassword(newPassword);
                     usersRepository.save(usersOptional.get());
+                    eventPublisher.publishEvent(new UserCredentialsChangedEvent(email));
                     return ResponseEntity.ok().build();
                 }
             }
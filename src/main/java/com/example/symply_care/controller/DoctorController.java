@@ -2,19 +2,31 @@ package com.example.symply_care.controller;
 
 import com.example.symply_care.Publisher.RabbitMQProducer;
 import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.HistoryPageDTO;
+import com.example.symply_care.dto.AvailabilityDTO;
+import com.example.symply_care.dto.DoctorDirectoryPageDTO;
+import com.example.symply_care.dto.FreeSlotDTO;
 import com.example.symply_care.dto.DoctorShortDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.dto.PageDTO;
 import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
 import com.example.symply_care.entity.Appointments;
 import com.example.symply_care.entity.Inquiries;
 import com.example.symply_care.entity.Users;
 import com.example.symply_care.service.DoctorService;
+import com.example.symply_care.service.HistoryArchiveService;
+import com.example.symply_care.service.ProfileImageService;
+import com.example.symply_care.service.SchedulingService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.text.ParseException;
@@ -28,6 +40,12 @@ public class DoctorController {
 
     @Autowired
     private DoctorService doctorService;
+    @Autowired
+    private ProfileImageService profileImageService;
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
+    @Autowired
+    private SchedulingService schedulingService;
 
 
     @GetMapping("/doctors")
@@ -35,11 +53,32 @@ public class DoctorController {
         return ResponseEntity.ok(doctorService.getAllShortDoctors());
     }
 
+    //הגרסה המהירה של /doctors: עמודים, סינון ומיון, בלי תמונות
+    @GetMapping("/directory")
+    public ResponseEntity<DoctorDirectoryPageDTO> getDoctorDirectory(@RequestParam(required = false) String specialization,
+                                                                     @RequestParam(required = false) String hmo,
+                                                                     @RequestParam(required = false) String hospital,
+                                                                     @RequestParam(defaultValue = "id") String sort,
+                                                                     @RequestParam(required = false) String cursor,
+                                                                     @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(doctorService.getDoctorDirectory(specialization, hmo, hospital, sort, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/fullDoctors")
     public ResponseEntity<List<DoctorDTO>> getAllDoctors() {
         return ResponseEntity.ok(doctorService.getAllDoctors());
     }
 
+    //כל הרופאים עם מונים במקום הרשימות המלאות
+    @GetMapping("/summaries")
+    public ResponseEntity<List<DoctorSummaryDTO>> getAllDoctorSummaries() {
+        return ResponseEntity.ok(doctorService.getAllDoctorSummaries());
+    }
+
     @PostMapping("/addDoctor")
     public ResponseEntity<DoctorDTO> createDoctor(@RequestBody @Valid DoctorDTO doctorDTO) throws Exception {
         return ResponseEntity.ok(doctorService.createDoctor(doctorDTO));
@@ -85,6 +124,52 @@ public class DoctorController {
     public ResponseEntity<List<PatientDTO>> getPatientsOfDoctor(@PathVariable Long id){
         return ResponseEntity.ok(doctorService.getPatientsOfDoctor(id));
     }
+
+    @GetMapping("/doctor/{id}/patients/summary")
+    public ResponseEntity<List<PatientSummaryDTO>> getPatientSummariesOfDoctor(@PathVariable Long id){
+        return ResponseEntity.ok(doctorService.getPatientSummariesOfDoctor(id));
+    }
+
+    //פרופיל הרופא עם מונים ומעט פריטים אחרונים, בלי הרשימות המלאות
+    @GetMapping("/doctor/{id}/summary")
+    public ResponseEntity<DoctorSummaryDTO> getDoctorSummary(@PathVariable Long id){
+        return ResponseEntity.ok(doctorService.getDoctorSummary(id));
+    }
+
+    @GetMapping("/doctor/{id}/patientsPage")
+    public ResponseEntity<PageDTO<PatientSummaryDTO>> getPatientsPageOfDoctor(@PathVariable Long id,
+                                                                            @RequestParam(required = false) Integer page,
+                                                                            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(doctorService.getPatientsOfDoctor(id, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/doctor/{id}/inquiriesPage")
+    public ResponseEntity<PageDTO<Inquiries>> getInquiriesPageOfDoctor(@PathVariable Long id,
+                                                                       @RequestParam(required = false) Integer page,
+                                                                       @RequestParam(required = false) Integer size,
+                                                                       @RequestParam(required = false) String direction) {
+        try {
+            return ResponseEntity.ok(doctorService.getInquiriesOfDoctor(id, page, size, direction));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/doctor/{id}/appointmentsPage")
+    public ResponseEntity<PageDTO<Appointments>> getAppointmentsPageOfDoctor(@PathVariable Long id,
+                                                                             @RequestParam(required = false) Integer page,
+                                                                             @RequestParam(required = false) Integer size,
+                                                                             @RequestParam(required = false) String direction) {
+        try {
+            return ResponseEntity.ok(doctorService.getAppointmentsOfDoctor(id, page, size, direction));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
     @PostMapping("/doctor/{doctorID}/addInquiryToPatient")
     public ResponseEntity<List<Inquiries>> addInquiryToPatient(
             @PathVariable Long doctorID,
@@ -114,10 +199,62 @@ public class DoctorController {
         return ResponseEntity.ok(doctorService.addPatientToDoctor(doctorID,patient.getId()));
     }
 
+    //תורים ופניות שהועברו לארכיון, מהחדש לישן. month בפורמט yyyy-MM
+    @GetMapping("/doctor/{doctorID}/history")
+    public ResponseEntity<HistoryPageDTO> getDoctorHistory(@PathVariable Long doctorID,
+                                                         @RequestParam(required = false) String month,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(historyArchiveService.getDoctorHistory(doctorID, month, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("/doctor/{doctorID}/addAppointment")
     public ResponseEntity<List<Appointments>> addAppointmentToDoctor(@PathVariable Long doctorID,@RequestBody Map<String, Object> appointmentData ) throws ParseException {
         return ResponseEntity.ok(doctorService.addAppointmentToDoctor(doctorID,appointmentData));
     }
+    @PutMapping("/doctor/{doctorID}/availability")
+    public ResponseEntity<List<AvailabilityDTO>> setAvailability(@PathVariable Long doctorID, @RequestBody List<AvailabilityDTO> availability) {
+        try {
+            return ResponseEntity.ok(schedulingService.setAvailability(doctorID, availability));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/doctor/{doctorID}/availability")
+    public ResponseEntity<List<AvailabilityDTO>> getAvailability(@PathVariable Long doctorID) {
+        return ResponseEntity.ok(schedulingService.getAvailability(doctorID));
+    }
+
+    //התורים הפנויים הבאים של רופא, החל מfrom (yyyy-MM-dd HH:mm) או מעכשיו
+    @GetMapping("/doctor/{doctorID}/freeSlots")
+    public ResponseEntity<List<FreeSlotDTO>> getFreeSlots(@PathVariable Long doctorID,
+                                                          @RequestParam(required = false) String from,
+                                                          @RequestParam(required = false) Integer count) {
+        try {
+            return ResponseEntity.ok(schedulingService.nextFreeSlots(doctorID, from, count));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //תורים פנויים של כל הרופאים בהתמחות. ברירת המחדל היא השבוע הקרוב
+    @GetMapping("/freeSlots")
+    public ResponseEntity<List<FreeSlotDTO>> getFreeSlotsBySpecialization(@RequestParam String specialization,
+                                                                          @RequestParam(required = false) String from,
+                                                                          @RequestParam(required = false) String to,
+                                                                          @RequestParam(required = false) Integer count) {
+        try {
+            return ResponseEntity.ok(schedulingService.freeSlotsBySpecialization(specialization, from, to, count));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @DeleteMapping("/deleteAppointment/{id}")
     public ResponseEntity<String> deleteAppointment(@PathVariable Long id) throws Exception {
         return ResponseEntity.ok(doctorService.deleteAppointment(id));
@@ -136,6 +273,17 @@ public class DoctorController {
         return ResponseEntity.ok().body("Inquiry answered successfully");
     }
 
+    //הגרסה (v) מגיעה מimageUrl בDTO. תומך ב If-None-Match / If-Modified-Since ו Range
+    @GetMapping("/doctor/{id}/image")
+    public ResponseEntity<Resource> getDoctorImage(@PathVariable Long id, @RequestParam(required = false) String v, WebRequest request) {
+        return profileImageService.getDoctorImage(id, false, v, request);
+    }
+
+    @GetMapping("/doctor/{id}/thumbnail")
+    public ResponseEntity<Resource> getDoctorThumbnail(@PathVariable Long id, @RequestParam(required = false) String v, WebRequest request) {
+        return profileImageService.getDoctorImage(id, true, v, request);
+    }
+
     @PutMapping ("/doctor/{doctorID}/addImage")
     public String uploadImage(@PathVariable Long doctorID, @RequestParam("image") MultipartFile file) {
         System.out.println("---------------------------------------");
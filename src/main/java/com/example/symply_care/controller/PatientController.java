@@ -1,16 +1,24 @@
 package com.example.symply_care.controller;
 
 import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.dto.HistoryPageDTO;
+import com.example.symply_care.dto.PageDTO;
 import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
 import com.example.symply_care.entity.*;
 import com.example.symply_care.service.PatientService;
+import com.example.symply_care.service.HistoryArchiveService;
+import com.example.symply_care.service.ProfileImageService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import jakarta.validation.Valid;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
@@ -28,12 +36,22 @@ public class PatientController {
 
     @Autowired
     private PatientService patientService;
+    @Autowired
+    private ProfileImageService profileImageService;
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
 
 
     @GetMapping("/patients")
     public ResponseEntity<List<PatientDTO>> getAllPatients() {
         return ResponseEntity.ok(patientService.getAllPatients());
     }
+
+    //כל המטופלים עם מונים במקום הרשימות המלאות
+    @GetMapping("/summaries")
+    public ResponseEntity<List<PatientSummaryDTO>> getAllPatientSummaries() {
+        return ResponseEntity.ok(patientService.getAllPatientSummaries());
+    }
     @GetMapping("/allInquiries")
     public ResponseEntity<List<Inquiries>> getAllInquiries(){
         return ResponseEntity.ok(patientService.getAllInquiries());
@@ -74,6 +92,28 @@ public class PatientController {
         return ResponseEntity.ok(patientService.getDoctorsOfPatient(id));
     }
 
+    @GetMapping("/patient/{id}/doctors/summary")
+    public ResponseEntity<List<DoctorSummaryDTO>> getDoctorSummariesOfPatient(@PathVariable Long id){
+        return ResponseEntity.ok(patientService.getDoctorSummariesOfPatient(id));
+    }
+
+    //פרופיל המטופל עם מונים ומעט פריטים אחרונים, בלי הרשימות המלאות
+    @GetMapping("/patient/{id}/summary")
+    public ResponseEntity<PatientSummaryDTO> getPatientSummary(@PathVariable Long id){
+        return ResponseEntity.ok(patientService.getPatientSummary(id));
+    }
+
+    @GetMapping("/patient/{id}/doctorsPage")
+    public ResponseEntity<PageDTO<DoctorSummaryDTO>> getDoctorsPageOfPatient(@PathVariable Long id,
+                                                                           @RequestParam(required = false) Integer page,
+                                                                           @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(patientService.getDoctorsOfPatient(id, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/patient/{id}/inquiries")
     public ResponseEntity<List<Inquiries>> getInquiriesOfPatient(@PathVariable Long id){
         return ResponseEntity.ok(patientService.getInquiriesOfPatient(id));
@@ -84,6 +124,31 @@ public class PatientController {
     public ResponseEntity<List<Appointments>> getAppointmentsOfPatient(@PathVariable Long id){
         return ResponseEntity.ok(patientService.getAppointmentsOfPatient(id));
     }
+
+    //עמוד של פניות/תורים לפי תאריך. direction=asc או desc (ברירת מחדל desc)
+    @GetMapping("/patient/{id}/inquiriesPage")
+    public ResponseEntity<PageDTO<Inquiries>> getInquiriesPageOfPatient(@PathVariable Long id,
+                                                                        @RequestParam(required = false) Integer page,
+                                                                        @RequestParam(required = false) Integer size,
+                                                                        @RequestParam(required = false) String direction) {
+        try {
+            return ResponseEntity.ok(patientService.getInquiriesOfPatient(id, page, size, direction));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/patient/{id}/appointmentsPage")
+    public ResponseEntity<PageDTO<Appointments>> getAppointmentsPageOfPatient(@PathVariable Long id,
+                                                                              @RequestParam(required = false) Integer page,
+                                                                              @RequestParam(required = false) Integer size,
+                                                                              @RequestParam(required = false) String direction) {
+        try {
+            return ResponseEntity.ok(patientService.getAppointmentsOfPatient(id, page, size, direction));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
     @GetMapping("/patient/appointments")
     public ResponseEntity<List<Appointments>> getAppointments(){
         return ResponseEntity.ok(patientService.getAppointments());
@@ -97,6 +162,19 @@ public class PatientController {
     public ResponseEntity<List<DoctorDTO>> addDoctorToPatient(@PathVariable Long patientID,@RequestBody @Valid DoctorDTO doctor){
         return ResponseEntity.ok(patientService.addDoctorToPatient(patientID,doctor.getId()));
     }
+    //תורים ופניות שהועברו לארכיון, מהחדש לישן. month בפורמט yyyy-MM
+    @GetMapping("/patient/{patientID}/history")
+    public ResponseEntity<HistoryPageDTO> getPatientHistory(@PathVariable Long patientID,
+                                                         @RequestParam(required = false) String month,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(historyArchiveService.getPatientHistory(patientID, month, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("/patient/{patientID}/addAppointment")
     public ResponseEntity<List<Appointments>> addAppointmentToPatient(@PathVariable Long patientID,@RequestBody Map<String, Object> appointmentData) throws ParseException {
         return ResponseEntity.ok(patientService.addAppointmentToPatient(patientID,appointmentData));
@@ -123,6 +201,17 @@ public class PatientController {
     public ResponseEntity<Users> addRoleToPatient(@PathVariable Long patientID, @RequestBody @jakarta.validation.Valid String role){
         return ResponseEntity.ok(patientService.addRoleToPatient(patientID,role));
     }
+    //הגרסה (v) מגיעה מimageUrl בDTO. תומך ב If-None-Match / If-Modified-Since ו Range
+    @GetMapping("/patient/{id}/image")
+    public ResponseEntity<Resource> getPatientImage(@PathVariable Long id, @RequestParam(required = false) String v, WebRequest request) {
+        return profileImageService.getPatientImage(id, false, v, request);
+    }
+
+    @GetMapping("/patient/{id}/thumbnail")
+    public ResponseEntity<Resource> getPatientThumbnail(@PathVariable Long id, @RequestParam(required = false) String v, WebRequest request) {
+        return profileImageService.getPatientImage(id, true, v, request);
+    }
+
     @PutMapping("/patient/{patientID}/addImage")
     public String uploadImage(@PathVariable Long patientID, @RequestParam("image") MultipartFile file) {
         System.out.println(file);
@@ -36,4 +36,22 @@ public class RabbitMQController {
                     .body("Failed to send message to RabbitMQ: " + e.getMessage());
         }
     }
+    //הודעות שנכשלו בכל הנסיונות (RabbitMQConsumer). אחרי שהבעיה תוקנה מחזירים אותן לתור הראשי
+    @GetMapping("/parkingLot")
+    public ResponseEntity<Long> getParkingLotSize() {
+        return ResponseEntity.ok(producer.parkingLotSize());
+    }
+
+    @PostMapping("/parkingLot/replay")
+    public ResponseEntity<String> replayParkingLot(@RequestParam(defaultValue = "100") int limit) {
+        try {
+            int replayed = producer.replayParkingLot(limit);
+            return ResponseEntity.ok("Replayed " + replayed + " messages.");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to replay messages: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package com.example.symply_care.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//שעות עבודה של רופא ליום אחד בשבוע. השעות בפורמט HH:mm
+@Data
+@NoArgsConstructor
+public class AvailabilityDTO {
+    private String dayOfWeek;
+    private String startTime;
+    private String endTime;
+    private Integer slotMinutes;
+}
@@ -53,8 +53,10 @@ public class DoctorDTO {
     @NotEmpty(message = "Birth Date should not be empty")
     private String birthDay;
 
-    @Lob
-    private byte[] imageData;
+    //כתובות התמונה והתמונה המוקטנת, null אם אין תמונה
+    private String imageUrl;
+
+    private String thumbnailUrl;
 
     @NotNull(message = "specialization should not be null")
     @NotBlank(message = "specialization should not be blank")
@@ -0,0 +1,34 @@
+package com.example.symply_care.dto;
+
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.util.ProfileImageUrls;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//שורה ברשימת הרופאים הציבורית. נבנית ישירות מהשאילתה (constructor projection) בלי לטעון את הרופא ואת התמונה שלו
+@Data
+@NoArgsConstructor
+public class DoctorDirectoryDTO {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String specialization;
+    private String hospital;
+    private String hmo;
+    private Integer experience;
+    private String thumbnailUrl;
+
+    public DoctorDirectoryDTO(Long id, String firstName, String lastName, String email, Specialization specialization,
+                              String hospital, String hmo, Integer experience, String imageHash) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.specialization = specialization != null ? specialization.name() : null;
+        this.hospital = hospital;
+        this.hmo = hmo;
+        this.experience = experience;
+        this.thumbnailUrl = ProfileImageUrls.doctorThumbnail(id, imageHash);
+    }
+}
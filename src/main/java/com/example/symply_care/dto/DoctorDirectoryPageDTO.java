@@ -0,0 +1,16 @@
+package com.example.symply_care.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//nextCursor נשלח חזרה כדי לקבל את העמוד הבא. null אם זה העמוד האחרון
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DoctorDirectoryPageDTO {
+    private List<DoctorDirectoryDTO> doctors;
+    private String nextCursor;
+}
@@ -28,8 +28,10 @@ public class DoctorShortDTO {
     @Column(unique = true, nullable = false, length = 70)
     private String email;
 
-    @Lob
-    private byte[] imageData;
+    //כתובות התמונה והתמונה המוקטנת, null אם אין תמונה
+    private String imageUrl;
+
+    private String thumbnailUrl;
 
     @NotNull(message = "specialization should not be null")
     @NotBlank(message = "specialization should not be blank")
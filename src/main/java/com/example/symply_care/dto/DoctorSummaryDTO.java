@@ -0,0 +1,42 @@
+package com.example.symply_care.dto;
+
+import com.example.symply_care.entity.Appointments;
+import com.example.symply_care.entity.Inquiries;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+//פרטי הרופא עם מספרים במקום הרשימות המלאות. הרשימות עצמן זמינות בעמודים דרך ה-endpoints של הרופא
+//recentInquiries ו upcomingAppointments מתמלאים רק ב /doctors/doctor/{id}/summary
+@Data
+public class DoctorSummaryDTO {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String city;
+    private String country;
+    private String street;
+    private String birthDay;
+    private String imageUrl;
+    private String thumbnailUrl;
+    private String specialization;
+    private String hospital;
+    private String hmo;
+    private Integer experience;
+
+    private long patientsCount;
+    private long inquiriesCount;
+    private long appointmentsCount;
+    private LocalDateTime lastInquiryAt;
+    private Instant nextAppointmentAt;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Inquiries> recentInquiries;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Appointments> upcomingAppointments;
+}
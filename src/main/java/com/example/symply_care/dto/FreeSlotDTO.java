@@ -0,0 +1,16 @@
+package com.example.symply_care.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//תור פנוי. התאריכים באותו פורמט של Appointments.date, כך שאפשר לשלוח אותם ישירות ל addAppointment
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FreeSlotDTO {
+    private Long doctorId;
+    private String startsAt;
+    private String endsAt;
+    private Integer durationMinutes;
+}
@@ -0,0 +1,23 @@
+package com.example.symply_care.dto;
+
+import com.example.symply_care.entity.ArchiveKind;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+//רשומה אחת מהארכיון. details הם השדות של התור/הפנייה המקוריים
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryRecordDTO {
+    private ArchiveKind kind;
+    private Long sourceId;
+    private Long doctorId;
+    private Long patientId;
+    private String month;
+    private Instant occurredAt;
+    private Map<String, Object> details;
+}
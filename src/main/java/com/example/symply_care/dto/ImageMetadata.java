@@ -0,0 +1,18 @@
+package com.example.symply_care.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//הפרטים של תמונת פרופיל בלי התמונה עצמה - מספיק כדי לענות 304 בלי לקרוא את הקובץ
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageMetadata {
+    private String hash;
+    private String thumbnailHash;
+    private Instant updatedAt;
+    private String contentType;
+}
@@ -0,0 +1,29 @@
+package com.example.symply_care.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+//עמוד של תוצאות לפי מספר עמוד (מתחיל מ0)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageDTO<T> {
+    private List<T> content;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+
+    public static <T> PageDTO<T> of(Page<T> page) {
+        return new PageDTO<>(page.getContent(), page.getNumber(), page.getSize(), page.getTotalElements(), page.getTotalPages());
+    }
+
+    //אותו עמוד עם תוכן שכבר הומר (למשל לסיכומים שנבנים לכל העמוד יחד)
+    public static <T> PageDTO<T> of(Page<?> page, List<T> content) {
+        return new PageDTO<>(content, page.getNumber(), page.getSize(), page.getTotalElements(), page.getTotalPages());
+    }
+}
@@ -54,8 +54,10 @@ public class PatientDTO{
     @NotEmpty(message = "Birth Date should not be empty")
     private String birthDay;
 
-    @Lob
-    private byte[] imageData;
+    //כתובות התמונה והתמונה המוקטנת, null אם אין תמונה
+    private String imageUrl;
+
+    private String thumbnailUrl;
 
     private List<Inquiries> inquiriesList;
     private List<Doctor> doctors;
@@ -7,11 +7,17 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 import org.springframework.format.annotation.DateTimeFormat;
 
+import java.time.Instant;
 import java.util.Date;
 
 @Entity
 @Data
-@Table(name = "appointments")
+//רופא או מטופל לא יכולים לקבל שני תורים שמתחילים באותו רגע. האינדקסים משמשים גם לבדיקת חפיפה (AppointmentService)
+//האינדקס על starts_at משמש את הניקוי הלילי (ScheduledService)
+@Table(name = "appointments", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_appointments_doctor_starts_at", columnNames = {"doctor_id", "starts_at"}),
+        @UniqueConstraint(name = "uk_appointments_patient_starts_at", columnNames = {"patient_id", "starts_at"})},
+        indexes = @Index(name = "idx_appointments_starts_at", columnList = "starts_at"))
 public class Appointments {
 
     @Id
@@ -30,6 +36,17 @@ public class Appointments {
     @JoinColumn(name = "patient_id", nullable = false)
     public Patient patient;
 
+    //התאריך כפי שהלקוח שולח ומציג אותו (yyyy-MM-dd HH:mm). החישובים נעשים על startsAt/endsAt
     @Column(nullable = false, unique = false)
     private String date;
+
+    @Column(name = "starts_at")
+    private Instant startsAt;
+
+    @Column(name = "duration_minutes", columnDefinition = "int default 30")
+    private Integer durationMinutes;
+
+    //נשמר (ולא מחושב) כדי שבדיקת החפיפה תהיה שאילתה אחת על האינדקס
+    @Column(name = "ends_at")
+    private Instant endsAt;
 }
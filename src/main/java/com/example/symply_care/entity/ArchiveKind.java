@@ -0,0 +1,6 @@
+package com.example.symply_care.entity;
+
+public enum ArchiveKind {
+    APPOINTMENT,
+    INQUIRY
+}
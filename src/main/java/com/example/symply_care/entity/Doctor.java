@@ -19,7 +19,18 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name="doctors")
+//תוכניות טעינה לפי שימוש: כל אחת טוענת אוסף אחד יחד עם הרופא (יותר מאוסף List אחד בשאילתה אחת לא אפשרי ב-Hibernate)
+//האוספים האחרים נטענים בעת הצורך במנות (hibernate.default_batch_fetch_size)
+@NamedEntityGraph(name = "Doctor.appointments", attributeNodes = @NamedAttributeNode(value = "appointments", subgraph = "appointment"),
+        subgraphs = @NamedSubgraph(name = "appointment", attributeNodes = {@NamedAttributeNode("doctor"), @NamedAttributeNode("patient")}))
+@NamedEntityGraph(name = "Doctor.inquiries", attributeNodes = @NamedAttributeNode(value = "inquiries", subgraph = "inquiry"),
+        subgraphs = @NamedSubgraph(name = "inquiry", attributeNodes = @NamedAttributeNode("patient")))
+@NamedEntityGraph(name = "Doctor.patients", attributeNodes = @NamedAttributeNode("patients"))
+@Table(name="doctors", indexes = {
+        @Index(name = "idx_doctors_last_name_id", columnList = "last_name, id"),
+        @Index(name = "idx_doctors_specialization_id", columnList = "specialization, id"),
+        @Index(name = "idx_doctors_hmo", columnList = "hmo"),
+        @Index(name = "idx_doctors_hospital", columnList = "hospital")})
 public class Doctor extends User{
 
     @Column(name="specialization",nullable=false)
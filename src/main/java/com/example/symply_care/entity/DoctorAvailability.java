@@ -0,0 +1,44 @@
+package com.example.symply_care.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+//שעות עבודה קבועות של רופא: יום בשבוע, טווח שעות ואורך כל תור. לרופא יכולות להיות כמה שורות לאותו יום (למשל בוקר וערב)
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "doctor_availability", indexes = @Index(name = "idx_doctor_availability_doctor", columnList = "doctor_id"))
+public class DoctorAvailability {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JsonIgnore
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "doctor_id", nullable = false)
+    private Doctor doctor;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private DayOfWeek dayOfWeek;
+
+    @Column(nullable = false)
+    private LocalTime startTime;
+
+    @Column(nullable = false)
+    private LocalTime endTime;
+
+    @Column(nullable = false)
+    private Integer slotMinutes;
+}
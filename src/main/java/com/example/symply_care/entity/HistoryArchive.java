@@ -0,0 +1,59 @@
+package com.example.symply_care.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//תורים ופניות ישנים שהוצאו מהטבלאות הפעילות. כל הפרטים נשמרים כJSON דחוס בpayload,
+//ורק העמודות שצריך לחפש לפיהן נשמרות בנפרד
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+//כל שורה מקורית נשמרת פעם אחת בלבד. ddl-auto לא יצליח ליצור את האינדקס אם כבר יש כפילויות, ואז צריך למחוק אותן קודם:
+//DELETE a FROM history_archive a JOIN history_archive b ON a.kind = b.kind AND a.source_id = b.source_id AND a.id > b.id
+@Table(name = "history_archive", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_history_archive_kind_source_id", columnNames = {"kind", "source_id"})}, indexes = {
+        @Index(name = "idx_history_archive_patient_occurred_at", columnList = "patient_id, occurred_at, id"),
+        @Index(name = "idx_history_archive_doctor_occurred_at", columnList = "doctor_id, occurred_at, id"),
+        @Index(name = "idx_history_archive_month", columnList = "archive_month")})
+public class HistoryArchive {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private ArchiveKind kind;
+
+    //המזהה של השורה המקורית בappointments/inquiries
+    @Column(name = "source_id", nullable = false)
+    private Long sourceId;
+
+    @Column(name = "doctor_id")
+    private Long doctorId;
+
+    @Column(name = "patient_id")
+    private Long patientId;
+
+    //החודש של התור/הפנייה בפורמט yyyyMM. לפיו מסננים ומוחקים היסטוריה לפי חודשים
+    @Column(name = "archive_month", nullable = false)
+    private Integer archiveMonth;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+
+    //JSON דחוס בgzip
+    @Lob
+    @Column(nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] payload;
+}
@@ -18,7 +18,9 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
-@Table(name = "inquiries")
+@Table(name = "inquiries", indexes = {
+        @Index(name = "idx_inquiries_has_answered_created_at", columnList = "has_answered, created_at"),
+        @Index(name = "idx_inquiries_patient_id_created_at", columnList = "patient_id, created_at")})
 public class Inquiries {
 
     @Id
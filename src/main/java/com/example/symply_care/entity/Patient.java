@@ -11,6 +11,7 @@ import java.util.List;
 @Setter
 @NoArgsConstructor
 @Entity
+@NamedEntityGraph(name = "Patient.doctors", attributeNodes = @NamedAttributeNode("doctors"))
 @Table(name = "patients")
 public class Patient extends User {
 
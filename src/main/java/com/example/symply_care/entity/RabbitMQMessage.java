@@ -1,5 +1,6 @@
 package com.example.symply_care.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import org.springframework.context.annotation.Bean;
@@ -7,11 +8,21 @@ import org.springframework.context.annotation.Bean;
 import java.util.Map;
 
 
+//גרסה 2: ההודעה כוללת את השמות שמופיעים במייל, כך שהצרכן לא צריך לשלוף את הרופא והמטופל מהמסד.
+//בהודעה מגרסה 1 (בלי schemaVersion ובלי השמות) הצרכן מציג את כתובת המייל במקום השם.
+//שדות חדשים מתווספים בלבד, ושדות לא מוכרים מהגרסה הבאה נזרקים, כך ששרתים בגרסאות שונות יכולים לרוץ יחד
 @Data
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class RabbitMQMessage {
+    public static final int SCHEMA_VERSION = 2;
+
+    private Integer schemaVersion;
     private String doctorEmail;
+    private String doctorName;
     private String patientEmail;
+    private String patientName;
     private String doctor2Email;
+    private String doctor2Name;
     private String senderInquiryEmail;
     private String question;
     private String doctorAnswer;
@@ -20,4 +31,8 @@ public class RabbitMQMessage {
     private String Email;
     private String Message;
     private String AdminEmail = "ezra5385@gmail.com";
+
+    public static String displayName(String firstName, String lastName) {
+        return firstName + " " + lastName;
+    }
 }
@@ -11,6 +11,7 @@ import java.time.Instant;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_refresh_token_expiry_date", columnList = "expiry_date"))
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -19,12 +20,19 @@ public class RefreshToken {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    //נשמר רק הhash (SHA-256) של הtoken, כך שדליפה של הטבלה לא מאפשרת להשתמש בtokens
+    @Column(nullable = false, unique = true, length = 64)
     private String token;
     private Instant expiryDate;
 
+    //עולה בכל החלפה של הtoken. שתי בקשות refresh מקבילות עם אותו token - רק אחת תצליח
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
+    //token אחד לכל משתמש, כך שההתחברות יכולה לדרוס את הקיים בפקודה אחת
     @OneToOne
-    @JoinColumn(name = "user_id", referencedColumnName = "id")
+    @JoinColumn(name = "user_id", referencedColumnName = "id", unique = true)
     private Users user;
 
 }
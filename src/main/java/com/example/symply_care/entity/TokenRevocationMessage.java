@@ -0,0 +1,39 @@
+package com.example.symply_care.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//הודעה שנשלחת לכל השרתים כשtoken מבוטל באחד מהם, או כשהסיסמה/ההרשאות של משתמש משתנות (USER)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenRevocationMessage {
+
+    public enum Kind {
+        TOKEN,
+        //כל שרת מוחק את המשתמש מהמטמונים שלו, והtokens הישנים נדחים לפי הגרסה
+        USER,
+        //שרת שעלה מבקש מהשאר לשלוח שוב את כל הביטולים שעוד בתוקף
+        SYNC_REQUEST
+    }
+
+    //null בהודעות משרתים שעוד לא עודכנו - נחשב TOKEN
+    private Kind kind;
+    private String tokenId;
+    private long expiresAtMillis;
+    private String originNode;
+    private String userEmail;
+
+    public static TokenRevocationMessage token(String tokenId, long expiresAtMillis, String originNode) {
+        return new TokenRevocationMessage(Kind.TOKEN, tokenId, expiresAtMillis, originNode, null);
+    }
+
+    public static TokenRevocationMessage user(String userEmail, String originNode) {
+        return new TokenRevocationMessage(Kind.USER, null, 0, originNode, userEmail);
+    }
+
+    public static TokenRevocationMessage syncRequest(String originNode) {
+        return new TokenRevocationMessage(Kind.SYNC_REQUEST, null, 0, originNode, null);
+    }
+}
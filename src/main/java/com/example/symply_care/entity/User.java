@@ -1,10 +1,12 @@
 package com.example.symply_care.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import jakarta.persistence.*;
 import lombok.*;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.hibernate.annotations.Type;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -40,9 +42,22 @@ public class User {
 
     private String street;
 
-    @Lob
-    @Column(columnDefinition = "mediumblob")
-    private byte[] imageData;
+    //התמונות עצמן נשמרות בקבצים (ImageBlobStore) לפי הhash שלהן, כאן נשמרת רק ההפניה
+    //הhash משמש גם כETag וכגרסה בכתובת התמונה
+    @JsonIgnore
+    @Column(length = 64)
+    private String imageHash;
+
+    @JsonIgnore
+    @Column(length = 64)
+    private String thumbnailHash;
+
+    @JsonIgnore
+    private Instant imageUpdatedAt;
+
+    @JsonIgnore
+    @Column(length = 100)
+    private String imageContentType;
 
     @DateTimeFormat(pattern="dd/MM/yyyy")
     private String birthDay;
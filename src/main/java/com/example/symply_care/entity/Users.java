@@ -3,13 +3,12 @@ package com.example.symply_care.entity;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@NamedEntityGraph(name = "Users.roles", attributeNodes = @NamedAttributeNode("roles"))
 @NoArgsConstructor
 @AllArgsConstructor
 @Setter
@@ -26,15 +25,19 @@ public class Users {
     @Column(nullable = false, length = 64)
     private String password;
 
-    @LazyCollection(LazyCollectionOption.FALSE)
+    //נטען יחד עם המשתמש רק דרך UsersRepository.findByEmail/findById (Users.roles), ולא בכל טעינה של Users
     @JsonIgnore
-    @ManyToMany(fetch = FetchType.EAGER, cascade=CascadeType.ALL)
+    @ManyToMany(fetch = FetchType.LAZY, cascade=CascadeType.ALL)
     @JoinTable(
             name="users_roles",
             joinColumns={@JoinColumn(name="USER_ID", referencedColumnName="ID")},
             inverseJoinColumns={@JoinColumn(name="ROLE_ID", referencedColumnName="ID")})
     private List<Role> roles = new ArrayList<>();
 
+    //עולה בכל שינוי סיסמה או הרשאות. tokens עם גרסה ישנה נחשבים כמבוטלים
+    @Column(name = "token_version", nullable = false, columnDefinition = "int default 0")
+    private Integer tokenVersion = 0;
+
     @Override
     public String toString() {
         return "Users{" +
@@ -42,6 +45,7 @@ public class Users {
                 ", email='" + email + '\'' +
                 ", password='" + password + '\'' +
                 ", roles=" + roles +
+                ", tokenVersion=" + tokenVersion +
                 '}';
     }
 }
@@ -0,0 +1,48 @@
+package com.example.symply_care.mapper;
+
+import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.DoctorShortDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.util.ProfileImageUrls;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import java.util.List;
+
+//המרות בין Doctor לDTOs. המימוש נוצר בזמן הקומפילציה (DoctorMapperImpl) - קריאות getters וsetters רגילות,
+//בלי reflection ובלי טרנזקציה. האוספים העצלים נטענים רק אם הקורא כבר בתוך טרנזקציה
+@Mapper(config = MapperDefaults.class, imports = ProfileImageUrls.class)
+public interface DoctorMapper {
+
+    @Mapping(target = "password", ignore = true)
+    @Mapping(target = "inquiriesList", source = "inquiries")
+    @Mapping(target = "imageUrl", expression = "java(ProfileImageUrls.doctorImage(doctor.getId(), doctor.getImageHash()))")
+    @Mapping(target = "thumbnailUrl", expression = "java(ProfileImageUrls.doctorThumbnail(doctor.getId(), doctor.getImageHash()))")
+    DoctorDTO toDoctorDTO(Doctor doctor);
+
+    @Mapping(target = "imageUrl", expression = "java(ProfileImageUrls.doctorImage(doctor.getId(), doctor.getImageHash()))")
+    @Mapping(target = "thumbnailUrl", expression = "java(ProfileImageUrls.doctorThumbnail(doctor.getId(), doctor.getImageHash()))")
+    DoctorShortDTO toDoctorShortDTO(Doctor doctor);
+
+    List<DoctorShortDTO> toDoctorShortDTOs(List<Doctor> doctors);
+
+    //המספרים והפריטים האחרונים נטענים בשאילתות נפרדות ב DoctorService
+    @Mapping(target = "imageUrl", expression = "java(ProfileImageUrls.doctorImage(doctor.getId(), doctor.getImageHash()))")
+    @Mapping(target = "thumbnailUrl", expression = "java(ProfileImageUrls.doctorThumbnail(doctor.getId(), doctor.getImageHash()))")
+    @Mapping(target = "patientsCount", ignore = true)
+    @Mapping(target = "inquiriesCount", ignore = true)
+    @Mapping(target = "appointmentsCount", ignore = true)
+    @Mapping(target = "lastInquiryAt", ignore = true)
+    @Mapping(target = "nextAppointmentAt", ignore = true)
+    @Mapping(target = "recentInquiries", ignore = true)
+    @Mapping(target = "upcomingAppointments", ignore = true)
+    DoctorSummaryDTO toSummary(Doctor doctor);
+
+    @Mapping(target = "inquiries", source = "inquiriesList")
+    @Mapping(target = "imageHash", ignore = true)
+    @Mapping(target = "thumbnailHash", ignore = true)
+    @Mapping(target = "imageUpdatedAt", ignore = true)
+    @Mapping(target = "imageContentType", ignore = true)
+    Doctor toDoctor(DoctorDTO doctorDTO);
+}
@@ -0,0 +1,10 @@
+package com.example.symply_care.mapper;
+
+import org.mapstruct.MapperConfig;
+import org.mapstruct.ReportingPolicy;
+
+//הגדרות משותפות לכל הmappers: המימוש הוא bean של spring, ושדה ביעד שלא מופה נכשל בקומפילציה
+//(שדה חדש בDTO או בentity חייב @Mapping מפורש, או ignore)
+@MapperConfig(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface MapperDefaults {
+}
@@ -0,0 +1,41 @@
+package com.example.symply_care.mapper;
+
+import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.util.ProfileImageUrls;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+//המרות בין Patient לDTOs, נוצרות בזמן הקומפילציה כמו DoctorMapper
+@Mapper(config = MapperDefaults.class, imports = ProfileImageUrls.class)
+public interface PatientMapper {
+
+    //הפניות והתורים נטענים לכל הרשימה יחד ב PatientService.mapPatientsToPatientDTOs
+    @Mapping(target = "password", ignore = true)
+    @Mapping(target = "inquiriesList", ignore = true)
+    @Mapping(target = "appointments", ignore = true)
+    @Mapping(target = "imageUrl", expression = "java(ProfileImageUrls.patientImage(patient.getId(), patient.getImageHash()))")
+    @Mapping(target = "thumbnailUrl", expression = "java(ProfileImageUrls.patientThumbnail(patient.getId(), patient.getImageHash()))")
+    PatientDTO toPatientDTO(Patient patient);
+
+    @Mapping(target = "imageUrl", expression = "java(ProfileImageUrls.patientImage(patient.getId(), patient.getImageHash()))")
+    @Mapping(target = "thumbnailUrl", expression = "java(ProfileImageUrls.patientThumbnail(patient.getId(), patient.getImageHash()))")
+    @Mapping(target = "doctorsCount", ignore = true)
+    @Mapping(target = "inquiriesCount", ignore = true)
+    @Mapping(target = "appointmentsCount", ignore = true)
+    @Mapping(target = "lastInquiryAt", ignore = true)
+    @Mapping(target = "nextAppointmentAt", ignore = true)
+    @Mapping(target = "recentInquiries", ignore = true)
+    @Mapping(target = "upcomingAppointments", ignore = true)
+    PatientSummaryDTO toSummary(Patient patient);
+
+    //הפניות והתורים נלקחים מבסיס הנתונים ולא מהבקשה
+    @Mapping(target = "inquiries", ignore = true)
+    @Mapping(target = "appointments", ignore = true)
+    @Mapping(target = "imageHash", ignore = true)
+    @Mapping(target = "thumbnailHash", ignore = true)
+    @Mapping(target = "imageUpdatedAt", ignore = true)
+    @Mapping(target = "imageContentType", ignore = true)
+    Patient toPatient(PatientDTO patientDTO);
+}
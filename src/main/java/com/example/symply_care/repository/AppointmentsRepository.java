@@ -1,15 +1,103 @@
 package com.example.symply_care.repository;
 
 import com.example.symply_care.entity.Appointments;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface AppointmentsRepository extends JpaRepository<Appointments,Long> {
     Optional<Appointments> findById(Long id);
 
-}
\ No newline at end of file
+    //התורים של מטופל בשאילתה אחת, יחד עם הרופא והמטופל (שנטענים תמיד), לפי האינדקס (patient_id, starts_at)
+    @Query("select a from Appointments a join fetch a.doctor join fetch a.patient p where p.id = :patientId")
+    List<Appointments> findAllByPatientId(@Param("patientId") Long patientId, Sort sort);
+
+    //מספר התורים והתור הקרוב של כל רופא/מטופל ברשימה, בשאילתה אחת
+    @Query("select a.doctor.id, count(a), min(case when a.startsAt > :now then a.startsAt end) " +
+            "from Appointments a where a.doctor.id in :ids group by a.doctor.id")
+    List<Object[]> countByDoctorIds(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    @Query("select a.patient.id, count(a), min(case when a.startsAt > :now then a.startsAt end) " +
+            "from Appointments a where a.patient.id in :ids group by a.patient.id")
+    List<Object[]> countByPatientIds(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    @Query(value = "select a from Appointments a join fetch a.doctor d join fetch a.patient where d.id = :doctorId",
+            countQuery = "select count(a) from Appointments a where a.doctor.id = :doctorId")
+    Page<Appointments> findPageByDoctorId(@Param("doctorId") Long doctorId, Pageable pageable);
+
+    //התורים הקרובים, מהקרוב לרחוק
+    @Query("select a from Appointments a join fetch a.doctor d join fetch a.patient where d.id = :doctorId " +
+            "and a.startsAt > :now order by a.startsAt, a.id")
+    List<Appointments> findUpcomingByDoctorId(@Param("doctorId") Long doctorId, @Param("now") Instant now, Pageable pageable);
+
+    @Query("select a from Appointments a join fetch a.doctor join fetch a.patient p where p.id = :patientId " +
+            "and a.startsAt > :now order by a.startsAt, a.id")
+    List<Appointments> findUpcomingByPatientId(@Param("patientId") Long patientId, @Param("now") Instant now, Pageable pageable);
+
+    @Query("select a from Appointments a join fetch a.doctor join fetch a.patient p where p.id in :patientIds")
+    List<Appointments> findAllByPatientIdIn(@Param("patientIds") Collection<Long> patientIds, Sort sort);
+
+    @Query(value = "select a from Appointments a join fetch a.doctor join fetch a.patient p where p.id = :patientId",
+            countQuery = "select count(a) from Appointments a where a.patient.id = :patientId")
+    Page<Appointments> findPageByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    //תורים שחופפים לטווח [startsAt, endsAt). earliestStart מגביל את הסריקה של האינדקס (doctor_id, starts_at)
+    //לחלון קצר לפני התור, כך שמספר התורים הקודמים של הרופא לא משפיע על זמן הבדיקה.
+    //FOR UPDATE: בMySQL בREPEATABLE READ קריאה רגילה רואה את הsnapshot מתחילת הטרנזקציה (שכבר קראה את הרופא והמטופל),
+    //ולא תור שנשמר בינתיים בטרנזקציה אחרת. קריאה נועלת רואה את המצב האחרון ונועלת גם את הטווח באינדקס
+    @Query(value = "SELECT id FROM appointments WHERE doctor_id = :doctorId " +
+            "AND starts_at > :earliestStart AND starts_at < :endsAt AND ends_at > :startsAt FOR UPDATE", nativeQuery = true)
+    List<Long> lockDoctorOverlaps(@Param("doctorId") Long doctorId, @Param("earliestStart") Instant earliestStart,
+                                  @Param("startsAt") Instant startsAt, @Param("endsAt") Instant endsAt);
+
+    @Query(value = "SELECT id FROM appointments WHERE patient_id = :patientId " +
+            "AND starts_at > :earliestStart AND starts_at < :endsAt AND ends_at > :startsAt FOR UPDATE", nativeQuery = true)
+    List<Long> lockPatientOverlaps(@Param("patientId") Long patientId, @Param("earliestStart") Instant earliestStart,
+                                   @Param("startsAt") Instant startsAt, @Param("endsAt") Instant endsAt);
+
+    //תורים עתידיים לטעינת האינדקס בזיכרון: מזהה רופא, התחלה, סיום
+    @Query("select a.doctor.id, a.startsAt, a.endsAt from Appointments a where a.endsAt > :now")
+    List<Object[]> findUpcomingForIndex(@Param("now") Instant now);
+
+    //תורים שנוצרו לפני שנוספו startsAt/endsAt
+    @Query("select a.id, a.date from Appointments a where a.startsAt is null")
+    List<Object[]> findLegacyDates();
+
+    @Modifying
+    @Query("update Appointments a set a.startsAt = :startsAt, a.endsAt = :endsAt, a.durationMinutes = :durationMinutes where a.id = :id")
+    int setSchedule(@Param("id") Long id, @Param("startsAt") Instant startsAt,
+                    @Param("endsAt") Instant endsAt, @Param("durationMinutes") int durationMinutes);
+
+    //הניקוי הלילי: מנה של תורים שעברו, מהישן לחדש, ואז מחיקה של המנה מטבלאות הקישור ומהטבלה עצמה.
+    //הסדר (starts_at, id) נקרא ישירות מהאינדקס על starts_at, שמכיל גם את הid.
+    //השורות ננעלות עד סוף הטרנזקציה של המנה, ושרת אחר שמריץ את אותו ניקוי מדלג עליהן ולוקח את המנה הבאה
+    @Query(value = "SELECT id FROM appointments WHERE starts_at < :cutoff ORDER BY starts_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> findIdsStartingBefore(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
+
+    //השדות שנשמרים בארכיון, לכל המנה בשאילתה אחת
+    @Query("select a.id, a.doctor.id, a.patient.id, a.date, a.startsAt, a.endsAt, a.durationMinutes " +
+            "from Appointments a where a.id in :ids")
+    List<Object[]> findForArchive(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM doctors_appointments WHERE appointments_id IN (:ids)", nativeQuery = true)
+    int deleteDoctorLinks(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM patients_appointments WHERE appointments_id IN (:ids)", nativeQuery = true)
+    int deletePatientLinks(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM appointments WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") List<Long> ids);
+}
@@ -0,0 +1,30 @@
+package com.example.symply_care.repository;
+
+import com.example.symply_care.entity.DoctorAvailability;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface DoctorAvailabilityRepository extends JpaRepository<DoctorAvailability, Long> {
+
+    @Query("select a from DoctorAvailability a where a.doctor.id = :doctorId order by a.dayOfWeek, a.startTime")
+    List<DoctorAvailability> findByDoctorId(@Param("doctorId") Long doctorId);
+
+    //לבדיקת שעות העבודה בקביעת תור: קריאה נועלת רואה את השינוי האחרון גם אם הטרנזקציה כבר קראה לפני כן
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("select a from DoctorAvailability a where a.doctor.id = :doctorId order by a.dayOfWeek, a.startTime")
+    List<DoctorAvailability> lockByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Modifying
+    @Query("delete from DoctorAvailability a where a.doctor.id = :doctorId")
+    int deleteByDoctorId(@Param("doctorId") Long doctorId);
+
+    //לטעינת האינדקס בזיכרון: מזהה רופא, התמחות, יום, שעת התחלה, שעת סיום, אורך תור
+    @Query("select a.doctor.id, a.doctor.specialization, a.dayOfWeek, a.startTime, a.endTime, a.slotMinutes from DoctorAvailability a")
+    List<Object[]> findAllForIndex();
+}
@@ -1,15 +1,104 @@
 package com.example.symply_care.repository;
 
+import com.example.symply_care.dto.DoctorDirectoryDTO;
+import com.example.symply_care.dto.ImageMetadata;
 import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.Inquiries;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.entity.Specialization;
 import com.example.symply_care.entity.User;
 import com.example.symply_care.entity.Users;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DoctorRepository extends JpaRepository<Doctor, Long>{
     Optional<Doctor> findByEmail(String email);
 
+    //הרופא יחד עם אוסף אחד שלו, לפי הגרפים שמוגדרים בDoctor
+    @EntityGraph("Doctor.appointments")
+    Optional<Doctor> findWithAppointmentsById(Long id);
+
+    @EntityGraph("Doctor.appointments")
+    Optional<Doctor> findWithAppointmentsByEmail(String email);
+
+    @EntityGraph("Doctor.inquiries")
+    Optional<Doctor> findWithInquiriesById(Long id);
+
+    @EntityGraph("Doctor.patients")
+    Optional<Doctor> findWithPatientsById(Long id);
+
+    //SELECT ... FOR UPDATE על השורה, עד סוף הטרנזקציה. כך קביעות תורים מקבילות לאותו אדם עוברות אחת אחרי השנייה גם בין שרתים
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from Doctor d where d.id = :id")
+    Optional<Doctor> lockById(@Param("id") Long id);
+
+    //מספרים לסיכומי רופאים (DoctorSummaryDTO), לכל הרופאים ברשימה בשאילתה אחת
+    @Query("select d.id, count(p) from Doctor d join d.patients p where d.id in :ids group by d.id")
+    List<Object[]> countPatients(@Param("ids") Collection<Long> ids);
+
+    @Query("select d.id, count(i), max(i.createdAt) from Doctor d join d.inquiries i where d.id in :ids group by d.id")
+    List<Object[]> countInquiries(@Param("ids") Collection<Long> ids);
+
+    //הישות הראשית בשאילתה היא מה שמוחזר, כדי שהמיון של הPageable יחול עליה ולא על הרופא
+    @Query(value = "select p from Patient p where p.id in (select dp.id from Doctor d join d.patients dp where d.id = :doctorId)",
+            countQuery = "select count(p) from Doctor d join d.patients p where d.id = :doctorId")
+    Page<Patient> findPatientsPage(@Param("doctorId") Long doctorId, Pageable pageable);
+
+    @Query(value = "select i from Inquiries i left join fetch i.patient " +
+            "where i.id in (select di.id from Doctor d join d.inquiries di where d.id = :doctorId)",
+            countQuery = "select count(i) from Doctor d join d.inquiries i where d.id = :doctorId")
+    Page<Inquiries> findInquiriesPage(@Param("doctorId") Long doctorId, Pageable pageable);
+
+    //הפניות האחרונות לתקציר, בלי שאילתת count
+    @Query("select i from Inquiries i left join fetch i.patient " +
+            "where i.id in (select di.id from Doctor d join d.inquiries di where d.id = :doctorId) " +
+            "order by i.createdAt desc, i.id desc")
+    List<Inquiries> findRecentInquiries(@Param("doctorId") Long doctorId, Pageable pageable);
+
+    //רשימת הרופאים לפי id. במקום offset ממשיכים מהid האחרון שנשלח (keyset), כך שעמוד 100 מהיר כמו עמוד 1
+    @Query("select new com.example.symply_care.dto.DoctorDirectoryDTO(d.id, d.firstName, d.lastName, d.email, " +
+            "d.specialization, d.hospital, d.hmo, d.experience, d.imageHash) from Doctor d " +
+            "where (:specialization is null or d.specialization = :specialization) " +
+            "and (:hmo is null or d.hmo = :hmo) " +
+            "and (:hospital is null or d.hospital = :hospital) " +
+            "and (:afterId is null or d.id > :afterId) " +
+            "order by d.id")
+    List<DoctorDirectoryDTO> findDirectoryById(@Param("specialization") Specialization specialization,
+                                               @Param("hmo") String hmo,
+                                               @Param("hospital") String hospital,
+                                               @Param("afterId") Long afterId,
+                                               Pageable pageable);
+
+    //אותו דבר לפי שם משפחה. הid מבטיח סדר יציב בין רופאים עם אותו שם
+    @Query("select new com.example.symply_care.dto.DoctorDirectoryDTO(d.id, d.firstName, d.lastName, d.email, " +
+            "d.specialization, d.hospital, d.hmo, d.experience, d.imageHash) from Doctor d " +
+            "where (:specialization is null or d.specialization = :specialization) " +
+            "and (:hmo is null or d.hmo = :hmo) " +
+            "and (:hospital is null or d.hospital = :hospital) " +
+            "and (:afterLastName is null or d.lastName > :afterLastName " +
+            "or (d.lastName = :afterLastName and d.id > :afterId)) " +
+            "order by d.lastName, d.id")
+    List<DoctorDirectoryDTO> findDirectoryByLastName(@Param("specialization") Specialization specialization,
+                                                     @Param("hmo") String hmo,
+                                                     @Param("hospital") String hospital,
+                                                     @Param("afterLastName") String afterLastName,
+                                                     @Param("afterId") Long afterId,
+                                                     Pageable pageable);
+
+    //פרטי התמונה בלבד - בשביל ETag ו 304
+    @Query("select new com.example.symply_care.dto.ImageMetadata(d.imageHash, d.thumbnailHash, d.imageUpdatedAt, d.imageContentType) " +
+            "from Doctor d where d.id = :id")
+    Optional<ImageMetadata> findImageMetadataById(@Param("id") Long id);
 }
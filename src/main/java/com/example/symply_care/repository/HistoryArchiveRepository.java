@@ -0,0 +1,35 @@
+package com.example.symply_care.repository;
+
+import com.example.symply_care.entity.HistoryArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface HistoryArchiveRepository extends JpaRepository<HistoryArchive, Long> {
+
+    //מהחדש לישן לפי מתי שהתור/הפנייה היו (occurredAt, id), ממשיכים מהרשומה האחרונה שנשלחה (keyset)
+    //לפי האינדקס (patient_id, occurred_at, id). הid רק שובר שוויון בין רשומות מאותו זמן
+    @Query("select h from HistoryArchive h where h.patientId = :patientId " +
+            "and (:month is null or h.archiveMonth = :month) " +
+            "and (:beforeAt is null or h.occurredAt < :beforeAt or (h.occurredAt = :beforeAt and h.id < :beforeId)) " +
+            "order by h.occurredAt desc, h.id desc")
+    List<HistoryArchive> findPatientHistory(@Param("patientId") Long patientId,
+                                            @Param("month") Integer month,
+                                            @Param("beforeAt") Instant beforeAt,
+                                            @Param("beforeId") Long beforeId,
+                                            Pageable pageable);
+
+    @Query("select h from HistoryArchive h where h.doctorId = :doctorId " +
+            "and (:month is null or h.archiveMonth = :month) " +
+            "and (:beforeAt is null or h.occurredAt < :beforeAt or (h.occurredAt = :beforeAt and h.id < :beforeId)) " +
+            "order by h.occurredAt desc, h.id desc")
+    List<HistoryArchive> findDoctorHistory(@Param("doctorId") Long doctorId,
+                                           @Param("month") Integer month,
+                                           @Param("beforeAt") Instant beforeAt,
+                                           @Param("beforeId") Long beforeId,
+                                           Pageable pageable);
+}
@@ -3,11 +3,16 @@ package com.example.symply_care.repository;
 import com.example.symply_care.entity.Inquiries;
 import com.example.symply_care.entity.Patient;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +20,59 @@ public interface InquiriesRepository extends JpaRepository<Inquiries,Long> {
     Optional<Inquiries> findById(Long id);
     List<Inquiries> findByCreatedAtBefore(LocalDateTime date);
 
+    //הפניות של מטופל בשאילתה אחת. המטופל נטען באותה שאילתה (join fetch) כי הקשר ManyToOne נטען תמיד
+    @Query("select i from Inquiries i join fetch i.patient p where p.id = :patientId")
+    List<Inquiries> findAllByPatientId(@Param("patientId") Long patientId, Sort sort);
+
+    @Query("select i.patient.id, count(i), max(i.createdAt) from Inquiries i where i.patient.id in :patientIds group by i.patient.id")
+    List<Object[]> countByPatientIds(@Param("patientIds") Collection<Long> patientIds);
+
+    //אותו דבר לכמה מטופלים יחד, בשביל רשימות של מטופלים
+    @Query("select i from Inquiries i join fetch i.patient p where p.id in :patientIds")
+    List<Inquiries> findAllByPatientIdIn(@Param("patientIds") Collection<Long> patientIds, Sort sort);
+
+    @Query(value = "select i from Inquiries i join fetch i.patient p where p.id = :patientId",
+            countQuery = "select count(i) from Inquiries i where i.patient.id = :patientId")
+    Page<Inquiries> findPageByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    //הפניות האחרונות לתקציר, בלי שאילתת count
+    @Query("select i from Inquiries i join fetch i.patient p where p.id = :patientId order by i.createdAt desc, i.id desc")
+    List<Inquiries> findRecentByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    //פניות שלא נענו ונוצרו לפני cutoff, מהישנה לחדשה, לפי האינדקס (has_answered, created_at).
+    //נעולות עד סוף המנה כמו בAppointmentsRepository.findIdsStartingBefore
+    @Query(value = "SELECT id FROM inquiries WHERE has_answered = false AND created_at < :cutoff ORDER BY created_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> findUnansweredIdsCreatedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    //השדות שנשמרים בארכיון. left join כי לפנייה בין רופאים אין מטופל
+    @Query("select i.id, p.id, i.senderId, i.symptoms, i.answer, i.hasAnswered, i.createdAt, i.answeredAt, " +
+            "i.prediction.matchingDisease, i.prediction.matchingRow, i.prediction.maxIndex, i.prediction.predictionRowNumber " +
+            "from Inquiries i left join i.patient p where i.id in :ids")
+    List<Object[]> findForArchive(@Param("ids") List<Long> ids);
+
+    //הרופאים של כל פנייה במנה: 1 = הרופא שקיבל את הפנייה, 2 = הרופא שהפנה
+    @Query(value = "SELECT inquiries_id, doctor_id, 1 FROM inquiries_doctor WHERE inquiries_id IN (:ids) " +
+            "UNION ALL SELECT inquiries_id, doctor2_id, 2 FROM inquiries_doctor2 WHERE inquiries_id IN (:ids)", nativeQuery = true)
+    List<Object[]> findDoctorLinksForArchive(@Param("ids") List<Long> ids);
+
+    //פנייה מקושרת לרופא (doctors_inquiries, inquiries_doctor), לרופא המפנה (inquiries_doctor2) ולמטופל (patients_inquiries)
+    @Modifying
+    @Query(value = "DELETE FROM doctors_inquiries WHERE inquiries_id IN (:ids)", nativeQuery = true)
+    int deleteDoctorLinks(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM inquiries_doctor WHERE inquiries_id IN (:ids)", nativeQuery = true)
+    int deleteInquiryDoctorLinks(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM inquiries_doctor2 WHERE inquiries_id IN (:ids)", nativeQuery = true)
+    int deleteInquiryDoctor2Links(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM patients_inquiries WHERE inquiries_id IN (:ids)", nativeQuery = true)
+    int deletePatientLinks(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM inquiries WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") List<Long> ids);
 }
@@ -1,13 +1,44 @@
 package com.example.symply_care.repository;
 
+import com.example.symply_care.dto.ImageMetadata;
 import com.example.symply_care.entity.Doctor;
 import com.example.symply_care.entity.Patient;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PatientRepository extends JpaRepository<Patient, Long> {
     Optional<Patient> findByEmail(String email);
+
+    //מספרים לסיכומי מטופלים (PatientSummaryDTO)
+    @Query("select p.id, count(d) from Patient p join p.doctors d where p.id in :ids group by p.id")
+    List<Object[]> countDoctors(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "select d from Doctor d where d.id in (select pd.id from Patient p join p.doctors pd where p.id = :patientId)",
+            countQuery = "select count(d) from Patient p join p.doctors d where p.id = :patientId")
+    Page<Doctor> findDoctorsPage(@Param("patientId") Long patientId, Pageable pageable);
+
+    @EntityGraph("Patient.doctors")
+    Optional<Patient> findWithDoctorsById(Long id);
+
+    //נועל את שורת המטופל עד סוף הטרנזקציה, כמו DoctorRepository.lockById
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Patient p where p.id = :id")
+    Optional<Patient> lockById(@Param("id") Long id);
+
+    //פרטי התמונה בלבד - בשביל ETag ו 304
+    @Query("select new com.example.symply_care.dto.ImageMetadata(p.imageHash, p.thumbnailHash, p.imageUpdatedAt, p.imageContentType) " +
+            "from Patient p where p.id = :id")
+    Optional<ImageMetadata> findImageMetadataById(@Param("id") Long id);
 }
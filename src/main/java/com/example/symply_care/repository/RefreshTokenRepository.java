@@ -4,7 +4,12 @@ import com.example.symply_care.entity.RefreshToken;
 import com.example.symply_care.entity.User;
 import com.example.symply_care.entity.Users;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
@@ -13,5 +18,29 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
     void deleteByUser(Users byEmail);
 
     Optional<RefreshToken> findByToken(String token);
-}
 
+    //הtoken והמשתמש (כולל ההרשאות) בשאילתה אחת - כל מה שצריך כדי להנפיק JWT חדש
+    @Query("select r from RefreshToken r join fetch r.user u left join fetch u.roles where r.token = :token")
+    Optional<RefreshToken> findWithUserByToken(@Param("token") String tokenHash);
+
+    //יוצר או דורס את הtoken של המשתמש בפקודה אחת (מתבסס על user_id הייחודי)
+    //row alias (AS new) במקום VALUES(col), שהוצא משימוש בMySQL 8.0.20. דורש MySQL 8.0.19 ומעלה
+    @Modifying
+    @Query(value = "INSERT INTO refresh_token (user_id, token, expiry_date, version) VALUES (:userId, :token, :expiryDate, 0) AS new " +
+            "ON DUPLICATE KEY UPDATE token = new.token, expiry_date = new.expiry_date, version = refresh_token.version + 1",
+            nativeQuery = true)
+    int upsertForUser(@Param("userId") Long userId, @Param("token") String tokenHash, @Param("expiryDate") Instant expiryDate);
+
+    //מחליף את הtoken רק אם הגרסה לא השתנתה מאז שנקרא. מחזיר 0 אם בקשה אחרת כבר החליפה אותו
+    @Modifying
+    @Query("update RefreshToken r set r.token = :token, r.expiryDate = :expiryDate, r.version = r.version + 1 " +
+            "where r.id = :id and r.version = :version")
+    int rotate(@Param("id") Long id, @Param("version") Long version,
+               @Param("token") String tokenHash, @Param("expiryDate") Instant expiryDate);
+
+    //מוחק עד limit שורות שפג תוקפן. כל קריאה היא טרנזקציה קצרה משלה כדי לא להחזיק נעילות על הטבלה
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM refresh_token WHERE expiry_date < :now LIMIT :limit", nativeQuery = true)
+    int deleteExpiredBatch(@Param("now") Instant now, @Param("limit") int limit);
+}
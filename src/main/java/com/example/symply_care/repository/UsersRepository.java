@@ -1,11 +1,28 @@
 package com.example.symply_care.repository;
 
 import com.example.symply_care.entity.Users;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface UsersRepository extends JpaRepository<Users, Long> {
+    @EntityGraph("Users.roles")
     Optional<Users> findById(Long id);
+
+    @EntityGraph("Users.roles")
     Optional<Users> findByEmail(String email);
+
+    @Query("select u.id from Users u where u.email = :email")
+    Optional<Long> findIdByEmail(@Param("email") String email);
+
+    @Query("select u.tokenVersion from Users u where u.email = :email")
+    Optional<Integer> findTokenVersionByEmail(@Param("email") String email);
+
+    @Modifying
+    @Query("update Users u set u.tokenVersion = u.tokenVersion + 1 where u.email = :email")
+    int incrementTokenVersion(@Param("email") String email);
 }
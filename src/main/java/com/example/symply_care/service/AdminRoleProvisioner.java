@@ -0,0 +1,80 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.entity.Role;
+import com.example.symply_care.entity.Users;
+import com.example.symply_care.repository.RoleRepository;
+import com.example.symply_care.repository.UsersRepository;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+//ROLE_ADMIN (ניהול הparking lot של ההתראות, AppSecurityChain) לא ניתן דרך addRole של רופא/מטופל.
+//בעלייה יוצרים את התפקיד אם הוא חסר, ומצרפים אותו למשתמשים שהכתובות שלהם ב security.admin-emails.
+//הסרה: מוחקים את הכתובת מהרשימה ואת השורה בusers_roles
+@Service
+public class AdminRoleProvisioner {
+
+    public static final String ADMIN_ROLE = "ROLE_ADMIN";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdminRoleProvisioner.class);
+
+    private final RoleRepository roleRepository;
+    private final UsersRepository usersRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final List<String> adminEmails;
+
+    public AdminRoleProvisioner(RoleRepository roleRepository,
+                                UsersRepository usersRepository,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${security.admin-emails:}") List<String> adminEmails) {
+        this.roleRepository = roleRepository;
+        this.usersRepository = usersRepository;
+        this.eventPublisher = eventPublisher;
+        this.adminEmails = adminEmails;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void provision() {
+        Role admin = roleRepository.findByRole(ADMIN_ROLE);
+        if (admin == null) {
+            //לטבלת התפקידים אין מחולל מזהים, התפקידים הקיימים הוכנסו ידנית
+            long nextId = roleRepository.findAll().stream().mapToLong(Role::getId).max().orElse(0) + 1;
+            admin = roleRepository.save(new Role(nextId, ADMIN_ROLE, null));
+            LOGGER.info(String.format("Created %s with id %d", ADMIN_ROLE, nextId));
+        }
+        for (String email : adminEmails) {
+            if (email.isBlank()) {
+                continue;
+            }
+            Optional<Users> user = usersRepository.findByEmail(email.trim());
+            if (user.isEmpty()) {
+                LOGGER.warn(String.format("No user %s to grant %s to", email.trim(), ADMIN_ROLE));
+                continue;
+            }
+            Users users = user.get();
+            if (users.getRoles().stream().noneMatch(role -> ADMIN_ROLE.equals(role.getRole()))) {
+                users.getRoles().add(admin);
+                usersRepository.save(users);
+                eventPublisher.publishEvent(new UserCredentialsChangedEvent(users.getEmail()));
+                LOGGER.info(String.format("Granted %s to %s", ADMIN_ROLE, users.getEmail()));
+            }
+        }
+    }
+
+    //addRole של רופא/מטופל פתוח לכל משתמש מחובר, ולכן לא מאפשר לתת לעצמו הרשאת ניהול
+    public static void requireAssignable(String roleName) {
+        if (ADMIN_ROLE.equals(roleName)) {
+            throw new IllegalArgumentException(ADMIN_ROLE + " is granted through security.admin-emails");
+        }
+    }
+}
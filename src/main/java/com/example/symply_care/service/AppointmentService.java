@@ -0,0 +1,192 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.entity.Appointments;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorRepository;
+import com.example.symply_care.repository.PatientRepository;
+import com.example.symply_care.util.StripedLocks;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+//קביעת תורים. בדיקת ההתנגשות נעשית בבסיס הנתונים (שאילתה אחת לרופא ואחת למטופל) במקום לעבור על כל התורים שלהם
+//כדי ששתי בקשות מקבילות לא יעברו את הבדיקה יחד, כל קביעה מחזיקה עד סוף הטרנזקציה:
+//1. מנעול בזיכרון לפי הרופא ולפי המטופל - בקשות באותו שרת מחכות בתור קצר במקום להיתקע על מנעול בבסיס הנתונים
+//2. נעילת השורות של הרופא והמטופל (FOR UPDATE) - מגן גם בין כמה שרתים
+//כל הקריאות אחרי הנעילה (שעות עבודה, חפיפות) הן קריאות נועלות, כדי לראות את מה שנשמר אחרי תחילת הטרנזקציה גם בREPEATABLE READ
+//תמיד קודם הרופא ואחר כך המטופל, כדי שלא ייווצר deadlock
+@Service
+public class AppointmentService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppointmentService.class);
+
+    //DateTimeFormatter בטוח לשימוש מכמה threads, בניגוד לSimpleDateFormat
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    public static final int DEFAULT_DURATION_MINUTES = 30;
+    public static final int MAX_DURATION_MINUTES = 8 * 60;
+
+    private final AppointmentsRepository appointmentsRepository;
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+    private final ScheduleIndex scheduleIndex;
+    private final SchedulingService schedulingService;
+    private final StripedLocks doctorLocks;
+    private final StripedLocks patientLocks;
+    private final long lockTimeoutMillis;
+
+    public AppointmentService(AppointmentsRepository appointmentsRepository,
+                              DoctorRepository doctorRepository,
+                              PatientRepository patientRepository,
+                              ScheduleIndex scheduleIndex,
+                              SchedulingService schedulingService,
+                              @Value("${appointments.booking.lock-stripes:64}") int lockStripes,
+                              @Value("${appointments.booking.lock-timeout-millis:5000}") long lockTimeoutMillis) {
+        this.appointmentsRepository = appointmentsRepository;
+        this.doctorRepository = doctorRepository;
+        this.patientRepository = patientRepository;
+        this.scheduleIndex = scheduleIndex;
+        this.schedulingService = schedulingService;
+        this.doctorLocks = new StripedLocks(lockStripes);
+        this.patientLocks = new StripedLocks(lockStripes);
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    //התאריכים מגיעים בשעון המקומי של השרת, כמו שהיה עם SimpleDateFormat
+    public static Instant parseDate(String date) {
+        return LocalDateTime.parse(date, DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    public static String formatDate(Instant instant) {
+        return DATE_FORMAT.format(instant.atZone(ZoneId.systemDefault()));
+    }
+
+    //יוצר ושומר את התור אם אין חפיפה. הוספת התור לרשימות של הרופא והמטופל נשארת אצל מי שקרא,
+    //שפותח את הטרנזקציה בREAD COMMITTED (ראו PatientService.addAppointmentToPatient)
+    @Transactional
+    public Appointments book(Doctor doctor, Patient patient, String date, Integer durationMinutes) {
+        Instant startsAt;
+        try {
+            startsAt = parseDate(date);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid appointment date: " + date);
+        }
+        int duration = durationMinutes == null ? DEFAULT_DURATION_MINUTES : durationMinutes;
+        if (duration <= 0 || duration > MAX_DURATION_MINUTES) {
+            throw new IllegalArgumentException("Invalid appointment duration: " + duration);
+        }
+        if (!startsAt.isAfter(Instant.now())) {
+            throw new NoSuchElementException("The date has already passed");
+        }
+        Instant endsAt = startsAt.plus(duration, ChronoUnit.MINUTES);
+        Instant earliestStart = startsAt.minus(MAX_DURATION_MINUTES, ChronoUnit.MINUTES);
+
+        lockUntilCompletion(doctorLocks.forKey(doctor.getId()), "doctor");
+        lockUntilCompletion(patientLocks.forKey(patient.getId()), "patient");
+        doctorRepository.lockById(doctor.getId())
+                .orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + doctor.getId()));
+        patientRepository.lockById(patient.getId())
+                .orElseThrow(() -> new NoSuchElementException("Patient not found with id: " + patient.getId()));
+
+        schedulingService.requireWithinWorkingHours(doctor.getId(), startsAt, endsAt);
+        if (!appointmentsRepository.lockPatientOverlaps(patient.getId(), earliestStart, startsAt, endsAt).isEmpty()) {
+            throw new NoSuchElementException("The patient already has an appointment on this date");
+        }
+        if (!appointmentsRepository.lockDoctorOverlaps(doctor.getId(), earliestStart, startsAt, endsAt).isEmpty()) {
+            throw new NoSuchElementException("You already have an appointment on this date");
+        }
+
+        Appointments appointment = new Appointments();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patient);
+        appointment.setDate(formatDate(startsAt));
+        appointment.setStartsAt(startsAt);
+        appointment.setDurationMinutes(duration);
+        appointment.setEndsAt(endsAt);
+        Appointments saved;
+        try {
+            //flush כדי שהפרה של האילוצים הייחודיים תתגלה כאן ולא רק בcommit
+            saved = appointmentsRepository.saveAndFlush(appointment);
+        } catch (DataIntegrityViolationException e) {
+            throw new NoSuchElementException("This time is no longer available");
+        }
+        scheduleIndex.addBusyAfterCommit(doctor.getId(), startsAt, endsAt);
+        return saved;
+    }
+
+    //המנעול משתחרר רק אחרי commit/rollback, אחרת בקשה אחרת עלולה לבדוק חפיפה לפני שהתור שלנו נשמר
+    private void lockUntilCompletion(ReentrantLock lock, String owner) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Appointments can only be booked inside a transaction");
+        }
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the " + owner + " schedule");
+        }
+        if (!acquired) {
+            throw new IllegalStateException("The " + owner + " schedule is busy, please try again");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    //נקרא כשתור נמחק, כדי שהזמן יחזור להיות פנוי באינדקס
+    public void onAppointmentDeleted(Appointments appointment) {
+        if (appointment.getStartsAt() != null && appointment.getDoctor() != null) {
+            scheduleIndex.removeBusyAfterCommit(appointment.getDoctor().getId(), appointment.getStartsAt());
+        }
+    }
+
+    //ממלא startsAt/endsAt לתורים ישנים שנשמרו רק כמחרוזת
+    //רץ לפני טעינת ScheduleIndex כדי שהתורים הישנים ייכנסו אליו
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    @Transactional
+    public void backfillLegacyAppointments() {
+        List<Object[]> legacy = appointmentsRepository.findLegacyDates();
+        int updated = 0;
+        for (Object[] row : legacy) {
+            Long id = (Long) row[0];
+            String date = (String) row[1];
+            try {
+                Instant startsAt = parseDate(date);
+                appointmentsRepository.setSchedule(id, startsAt,
+                        startsAt.plus(DEFAULT_DURATION_MINUTES, ChronoUnit.MINUTES), DEFAULT_DURATION_MINUTES);
+                updated++;
+            } catch (DateTimeParseException e) {
+                LOGGER.warn(String.format("Appointment %d has an invalid date: %s", id, date));
+            }
+        }
+        if (updated > 0) {
+            LOGGER.info(String.format("Backfilled start/end times of %d appointments", updated));
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.example.symply_care.service;
 
 import com.example.symply_care.dto.AuthenticationRequest;
 import com.example.symply_care.dto.AuthenticationResponse;
-import com.example.symply_care.entity.RefreshToken;
 import com.example.symply_care.exceptions.AuthenticationServiceException;
 import com.example.symply_care.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
@@ -21,7 +20,6 @@ public class AuthenticationService {
 
     private final CustomUserDetailsService customUserDetailsService;
     private final JwtUtil jwtUtil;
-    private final TokenBlackListService tokenBlacklistService;
     private final RefreshTokenService refreshTokenService;
 
 
@@ -34,14 +32,10 @@ public class AuthenticationService {
 
         String jwtToken = jwtUtil.generateToken(authenticationRequest, userDetails);
 
-        if (tokenBlacklistService.isBlacklisted(jwtToken)) {
-            throw new AuthenticationServiceException("Invalid credentials");
-        }
-
-        RefreshToken refreshToken = refreshTokenService.createRefreshToken(userDetails.getUsername());
+        String refreshToken = refreshTokenService.createRefreshToken(userDetails.getUsername());
         Collection<? extends GrantedAuthority> roles = userDetails.getAuthorities();
 
-        return new AuthenticationResponse(jwtToken, refreshToken.getToken(), roles);
+        return new AuthenticationResponse(jwtToken, refreshToken, roles);
     }
 }
 
@@ -0,0 +1,136 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.TokenRevocationMessage;
+import com.example.symply_care.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//רשימה שחורה שמשותפת לכמה שרתים: כל ביטול נשמר מקומית ונשלח לשאר השרתים, וכל שרת מחזיק עותק מלא בזיכרון
+//לפני הרשימה עצמה יש Bloom filter, כך שרוב הבקשות (tokens שלא בוטלו) נענות בלי לגעת במפה
+//באותה דרך עוברים גם שינויי סיסמה/הרשאות, כדי שכל שרת ימחק את המשתמש מהמטמונים שלו (userRevocationListener)
+//שרת שעולה מקבל רק הודעות חדשות, לכן הוא מבקש מהשאר לשלוח שוב את הביטולים שעוד בתוקף (requestSync).
+//הרשימה נשמרת רק בזיכרון: אם כל השרתים יורדים יחד, tokens שבוטלו יתקבלו שוב עד שיפוג תוקפם (JwtProperties.EXPIRATION_TIME)
+public class ClusteredTokenRevocationStore implements TokenRevocationStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusteredTokenRevocationStore.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final InMemoryTokenRevocationStore local = new InMemoryTokenRevocationStore();
+    private final RevocationBroadcaster broadcaster;
+    private final Consumer<String> userRevocationListener;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final AtomicLong liveCount = new AtomicLong();
+    private final Object bloomLock = new Object();
+    private volatile BloomFilter bloomFilter;
+
+    public ClusteredTokenRevocationStore(RevocationBroadcaster broadcaster, Consumer<String> userRevocationListener,
+                                         long expectedInsertions, double falsePositiveRate) {
+        this.broadcaster = broadcaster;
+        this.userRevocationListener = userRevocationListener;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    @Override
+    public void revoke(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        applyLocally(tokenId, expiresAtMillis);
+        try {
+            broadcaster.broadcast(TokenRevocationMessage.token(tokenId, expiresAtMillis, nodeId));
+        } catch (RuntimeException e) {
+            //הביטול כבר תקף בשרת הזה. בשאר השרתים הtoken יפוג מעצמו או יבוטל שוב ב logout הבא
+            LOGGER.error("Failed to broadcast token revocation: " + e.getMessage());
+        }
+    }
+
+    //השרת הזה כבר עדכן את המטמונים שלו אחרי הcommit. אם ההודעה לא נשלחה, בשאר השרתים המשתמש יתעדכן כשיפוג מהמטמון
+    @Override
+    public void revokeUser(String email) {
+        try {
+            broadcaster.broadcast(TokenRevocationMessage.user(email, nodeId));
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to broadcast credentials change: " + e.getMessage());
+        }
+    }
+
+    public void requestSync() {
+        try {
+            broadcaster.broadcast(TokenRevocationMessage.syncRequest(nodeId));
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to request token revocations from other nodes: " + e.getMessage());
+        }
+    }
+
+    //נקרא כשמגיעה הודעה משרת אחר
+    public void onRemoteRevocation(TokenRevocationMessage message) {
+        if (nodeId.equals(message.getOriginNode())) {
+            return;
+        }
+        if (message.getKind() == TokenRevocationMessage.Kind.USER) {
+            userRevocationListener.accept(message.getUserEmail());
+        } else if (message.getKind() == TokenRevocationMessage.Kind.SYNC_REQUEST) {
+            resendLiveRevocations();
+        } else if (message.getExpiresAtMillis() > System.currentTimeMillis()) {
+            applyLocally(message.getTokenId(), message.getExpiresAtMillis());
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        return bloomFilter.mightContain(tokenId) && local.isRevoked(tokenId);
+    }
+
+    //אי אפשר למחוק מBloom filter, לכן אחרי הניקוי בונים אותו מחדש מהtokens שנשארו
+    @Override
+    public void removeExpiredTokens() {
+        synchronized (bloomLock) {
+            local.removeExpiredTokens();
+            long[] remaining = new long[1];
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedInsertions, liveCount.get() * 2), falsePositiveRate);
+            local.forEachRevoked((tokenId, expiresAtMillis) -> {
+                rebuilt.put(tokenId);
+                remaining[0]++;
+            });
+            liveCount.set(remaining[0]);
+            bloomFilter = rebuilt;
+        }
+    }
+
+    //כל שרת שומע את ההודעות האלה, והכפילויות לא משנות כי ביטול של אותו token שוב לא עושה כלום
+    private void resendLiveRevocations() {
+        long now = System.currentTimeMillis();
+        int[] sent = new int[1];
+        try {
+            local.forEachRevoked((tokenId, expiresAtMillis) -> {
+                if (expiresAtMillis > now) {
+                    broadcaster.broadcast(TokenRevocationMessage.token(tokenId, expiresAtMillis, nodeId));
+                    sent[0]++;
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to resend token revocations: " + e.getMessage());
+        }
+        LOGGER.info(String.format("Resent %d token revocations to a new node", sent[0]));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    //הכתיבה נעולה מול הבנייה מחדש כדי שביטול לא ילך לאיבוד בזמן החלפת הפילטר. הקריאה לא נועלת
+    private void applyLocally(String tokenId, long expiresAtMillis) {
+        synchronized (bloomLock) {
+            local.revoke(tokenId, expiresAtMillis);
+            bloomFilter.put(tokenId);
+            liveCount.incrementAndGet();
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.symply_care.service;
 
 
+import com.example.symply_care.exceptions.TokenValidationException;
 import com.example.symply_care.util.JwtProperties;
+import com.example.symply_care.util.JwtUtil;
+import com.example.symply_care.util.VerifiedToken;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -18,6 +21,7 @@ import java.io.IOException;
 public class CustomLogoutHandler implements LogoutSuccessHandler {
 
     final private TokenBlackListService tokenBlacklistService;
+    final private JwtUtil jwtUtil;
 
 
     @Override
@@ -26,10 +30,16 @@ public class CustomLogoutHandler implements LogoutSuccessHandler {
                                 Authentication authentication) throws
             IOException, ServletException {
 
-        String token = request.getHeader(JwtProperties.HEADER_STRING).
-                substring(JwtProperties.HEADER_STRING.length());
+        String header = request.getHeader(JwtProperties.HEADER_STRING);
         System.out.println("--------------------------------------LOGOUT");
-        tokenBlacklistService.addToBlacklist(token);
+        if (header != null && header.startsWith(JwtProperties.TOKEN_PREFIX)) {
+            try {
+                VerifiedToken verifiedToken = jwtUtil.verify(header.substring(JwtProperties.TOKEN_PREFIX.length()));
+                tokenBlacklistService.addToBlacklist(verifiedToken.getId(), verifiedToken.getExpiration().getTime());
+            } catch (TokenValidationException e) {
+                //token לא תקין או שפג תוקפו - אין מה לבטל
+            }
+        }
 
         if (authentication != null)
             System.out.println("User logged out: " + authentication.getName());
@@ -2,45 +2,79 @@ package com.example.symply_care.service;
 
 
 import com.example.symply_care.entity.*;
-import com.example.symply_care.repository.DoctorRepository;
-import com.example.symply_care.repository.PatientRepository;
 import com.example.symply_care.repository.UsersRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Duration;
 import java.util.Collection;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 //מחלקה זו הכרחית למימוש האימות כיוון שתהליך האימות בspring משתמש במחלקה זו לכן העדפתי לממש אותה בעצמי
+//המשתמשים נשמרים במטמון מוגבל בגודל ובזמן, והמטמון מתעדכן בכל שינוי סיסמה/הרשאות דרך UserCredentialsChangedEvent
+//בכמה שרתים (token.revocation.store=rabbit) השינוי נשלח לשאר השרתים דרך ClusteredTokenRevocationStore, שקורא לevict
 @Service
-@RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UsersRepository usersRepository;
-    private final DoctorRepository doctorRepository;
-    private final PatientRepository patientRepository;
+    private final Cache<String, UserDetails> userDetailsCache;
+
+    public CustomUserDetailsService(UsersRepository usersRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${user-details.cache.ttl-seconds:300}") long ttlSeconds,
+                                    @Value("${user-details.cache.max-size:10000}") long maxSize) {
+        this.usersRepository = usersRepository;
+        this.userDetailsCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        //מונים של hit/miss/eviction זמינים ב /actuator/metrics/cache.gets ו cache.evictions
+        CaffeineCacheMetrics.monitor(meterRegistry, userDetailsCache, "userDetails");
+    }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        Optional<Users> usersOptional = usersRepository.findByEmail(email);
-        Users user = usersOptional.get();
-        if (user != null) {
-            return new org.springframework.security.core.userdetails.User(
-                    user.getEmail(),
-                    user.getPassword(),
-                    mapRolesToAuthorities(user.getRoles())
-            );
-        } else {
-            System.out.println("Invalid username or password, or logged out.");
-            return null;
-        }
+        UserDetails cached = userDetailsCache.get(email, this::loadFromDatabase);
+        //מחזירים עותק כי spring security מוחק את הסיסמה מהעצם אחרי אימות, ואסור שזה יפגע במטמון
+        return org.springframework.security.core.userdetails.User.withUserDetails(cached).build();
+    }
+
+    private UserDetails loadFromDatabase(String email) {
+        Users user = usersRepository.findByEmail(email)
+                .orElseThrow(() -> new UsernameNotFoundException("Invalid username or password, or logged out."));
+        return new org.springframework.security.core.userdetails.User(
+                user.getEmail(),
+                user.getPassword(),
+                mapRolesToAuthorities(user.getRoles())
+        );
+    }
+
+    //מתבצע רק אחרי שהשינוי נשמר, כדי שבקשה מקבילה לא תטען שוב את הנתונים הישנים
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        evict(event.email());
     }
+
+    public void evict(String email) {
+        userDetailsCache.invalidate(email);
+    }
+
+    public CacheStats cacheStats() {
+        return userDetailsCache.stats();
+    }
+
     private Collection<? extends GrantedAuthority> mapRolesToAuthorities(Collection<Role> roles) {
         return roles.stream()
                 .map(role -> new SimpleGrantedAuthority(role.getRole()))
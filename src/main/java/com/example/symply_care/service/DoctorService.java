@@ -2,14 +2,26 @@ package com.example.symply_care.service;
 
 import com.example.symply_care.controller.RabbitMQController;
 import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.DoctorDirectoryDTO;
+import com.example.symply_care.dto.DoctorDirectoryPageDTO;
 import com.example.symply_care.dto.DoctorShortDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.dto.PageDTO;
 import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
 import com.example.symply_care.entity.*;
+import com.example.symply_care.mapper.DoctorMapper;
 import com.example.symply_care.repository.*;
+import com.example.symply_care.util.CountRows;
+import com.example.symply_care.util.Paging;
 import jakarta.transaction.Transactional;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -17,6 +29,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
@@ -24,8 +37,10 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -33,13 +48,22 @@ import java.util.stream.Collectors;
 @Service
 public class DoctorService {
 
+    private static final int DIRECTORY_DEFAULT_PAGE_SIZE = 20;
+    private static final int DIRECTORY_MAX_PAGE_SIZE = 100;
+    static final int SUMMARY_RECENT_ITEMS = 5;
+
     private final DoctorRepository doctorRepository;
     private final PatientRepository patientRepository;
     private final UsersRepository usersRepository;
     private final RoleRepository roleRepository;
     private final InquiriesRepository inquiriesRepository;
     private final RabbitMQController rabbitMQController;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProfileImageService profileImageService;
     private final AppointmentsRepository appointmentsRepository;
+    private final AppointmentService appointmentService;
+    private final ScheduleIndex scheduleIndex;
+    private final DoctorMapper doctorMapper;
     @Autowired
     @Lazy
     private PatientService patientService;
@@ -47,85 +71,25 @@ public class DoctorService {
     private final RestTemplate restTemplate = new RestTemplate();
     private final PasswordEncoder passwordEncoder=  new BCryptPasswordEncoder();
 
-    public DoctorService(DoctorRepository doctorRepository, PatientRepository patientRepository, UsersRepository usersRepository, RoleRepository roleRepository, InquiriesRepository inquiriesRepository, RabbitMQController rabbitMQController, AppointmentsRepository appointmentsRepository, PasswordEncoder passwordEncoder) {
+    public DoctorService(DoctorRepository doctorRepository, PatientRepository patientRepository, UsersRepository usersRepository, RoleRepository roleRepository, InquiriesRepository inquiriesRepository, RabbitMQController rabbitMQController, AppointmentsRepository appointmentsRepository, AppointmentService appointmentService, ScheduleIndex scheduleIndex, ApplicationEventPublisher eventPublisher, ProfileImageService profileImageService, DoctorMapper doctorMapper, PasswordEncoder passwordEncoder) {
         this.doctorRepository = doctorRepository;
         this.patientRepository = patientRepository;
         this.usersRepository = usersRepository;
         this.roleRepository = roleRepository;
         this.inquiriesRepository = inquiriesRepository;
         this.rabbitMQController = rabbitMQController;
+        this.eventPublisher = eventPublisher;
+        this.profileImageService = profileImageService;
         this.appointmentsRepository = appointmentsRepository;
-    }
-
-
-    @Transactional
-    public DoctorDTO mapDoctorToDoctorDTO(Doctor doctor) {
-        if (doctor != null) {
-            DoctorDTO doctorDTO = new DoctorDTO();
-            doctorDTO.setId(doctor.getId());
-            doctorDTO.setFirstName(doctor.getFirstName());
-            doctorDTO.setLastName(doctor.getLastName());
-            doctorDTO.setEmail(doctor.getEmail());
-            doctorDTO.setCity(doctor.getCity());
-            doctorDTO.setStreet(doctor.getStreet());
-            doctorDTO.setCountry(doctor.getCountry());
-            doctorDTO.setHmo(doctor.getHmo());
-            doctorDTO.setExperience(doctor.getExperience());
-            doctorDTO.setHospital(doctor.getHospital());
-            doctorDTO.setSpecialization(doctor.getSpecialization().toString());
-            doctorDTO.setBirthDay(doctor.getBirthDay());
-            doctorDTO.setImageData(doctor.getImageData());
-            doctorDTO.setInquiriesList(doctor.getInquiries());
-            doctorDTO.setPatients(doctor.getPatients());
-            doctorDTO.setAppointments(doctor.getAppointments());
-            return doctorDTO;
-        }
-        return null;
-    }
-
-    @Transactional
-    public DoctorShortDTO mapDoctorToDoctorShortDTO(Doctor doctor) {
-        if (doctor != null) {
-            DoctorShortDTO doctorShortDTO = new DoctorShortDTO();
-            doctorShortDTO.setFirstName(doctor.getFirstName());
-            doctorShortDTO.setLastName(doctor.getLastName());
-            doctorShortDTO.setEmail(doctor.getEmail());
-            doctorShortDTO.setHmo(doctor.getHmo());
-            doctorShortDTO.setExperience(doctor.getExperience());
-            doctorShortDTO.setHospital(doctor.getHospital());
-            doctorShortDTO.setSpecialization(doctor.getSpecialization().toString());
-            doctorShortDTO.setImageData(doctor.getImageData());
-            return doctorShortDTO;
-        }
-        return null;
-    }
-
-    @Transactional
-    public Doctor mapDoctorDTOToDoctor(DoctorDTO doctorDTO) {
-        Doctor doctor = new Doctor();
-        doctor.setId(doctorDTO.getId());
-        doctor.setPassword(doctorDTO.getPassword());
-        doctor.setFirstName(doctorDTO.getFirstName());
-        doctor.setLastName(doctorDTO.getLastName());
-        doctor.setEmail(doctorDTO.getEmail());
-        doctor.setCity(doctorDTO.getCity());
-        doctor.setCountry(doctorDTO.getCountry());
-        doctor.setStreet(doctorDTO.getStreet());
-        doctor.setHmo(doctorDTO.getHmo());
-        doctor.setExperience(doctorDTO.getExperience());
-        doctor.setHospital(doctorDTO.getHospital());
-        doctor.setSpecialization(Specialization.valueOf(doctorDTO.getSpecialization()));
-        doctor.setBirthDay(doctorDTO.getBirthDay());
-        doctor.setInquiries(doctorDTO.getInquiriesList());
-        doctor.setPatients(doctorDTO.getPatients());
-        doctor.setAppointments(doctorDTO.getAppointments());
-        return doctor;
+        this.appointmentService = appointmentService;
+        this.scheduleIndex = scheduleIndex;
+        this.doctorMapper = doctorMapper;
     }
 
 
     @Transactional
     public DoctorDTO createDoctor(DoctorDTO doctorDTO) {
-        Doctor doctor = mapDoctorDTOToDoctor(doctorDTO);
+        Doctor doctor = doctorMapper.toDoctor(doctorDTO);
         doctorRepository.save(doctor);
         Users user = new Users();
         user.setId(doctor.getId());
@@ -140,34 +104,168 @@ public class DoctorService {
 
     @Transactional
     public List<DoctorShortDTO> getAllShortDoctors() {
-        List<Doctor> doctors = doctorRepository.findAll();
-        List<DoctorShortDTO> doctorShortDTOS = new ArrayList<>();
-        for (int i = 0; i < doctors.size(); i++) {
-            doctorShortDTOS.add(mapDoctorToDoctorShortDTO(doctors.get(i)));
+        return doctorMapper.toDoctorShortDTOs(doctorRepository.findAll());
+    }
+
+    //רשימת רופאים ציבורית בעמודים. קוראת רק את העמודות של הרשימה, בלי התמונות ובלי לטעון את הרופאים עצמם
+    //sort: id (ברירת מחדל) או name. cursor הוא הnextCursor מהעמוד הקודם
+    public DoctorDirectoryPageDTO getDoctorDirectory(String specialization, String hmo, String hospital,
+                                                     String sort, String cursor, Integer size) {
+        int pageSize = size == null ? DIRECTORY_DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, DIRECTORY_MAX_PAGE_SIZE));
+        Specialization specializationFilter = specialization == null || specialization.isBlank()
+                ? null : Specialization.valueOf(specialization.trim().toUpperCase());
+        String hmoFilter = hmo == null || hmo.isBlank() ? null : hmo;
+        String hospitalFilter = hospital == null || hospital.isBlank() ? null : hospital;
+        boolean byName = "name".equalsIgnoreCase(sort);
+        String sortKey = byName ? "name" : "id";
+        //מבקשים שורה אחת יותר מהעמוד כדי לדעת אם יש עמוד הבא
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+
+        String[] position = decodeDirectoryCursor(cursor, sortKey);
+
+        List<DoctorDirectoryDTO> doctors;
+        if (byName) {
+            doctors = doctorRepository.findDirectoryByLastName(specializationFilter, hmoFilter, hospitalFilter,
+                    position == null ? null : position[1],
+                    position == null ? null : Long.valueOf(position[2]),
+                    limit);
+        } else {
+            doctors = doctorRepository.findDirectoryById(specializationFilter, hmoFilter, hospitalFilter,
+                    position == null ? null : Long.valueOf(position[2]),
+                    limit);
+        }
+
+        String nextCursor = null;
+        if (doctors.size() > pageSize) {
+            doctors = doctors.subList(0, pageSize);
+            DoctorDirectoryDTO last = doctors.get(pageSize - 1);
+            nextCursor = encodeDirectoryCursor(sortKey, byName ? last.getLastName() : "", last.getId());
+        }
+        return new DoctorDirectoryPageDTO(new ArrayList<>(doctors), nextCursor);
+    }
+
+    //הcursor שומר גם את המיון שבו נוצר, כי המיקום שבו אין משמעות במיון אחר
+    private static String encodeDirectoryCursor(String sortKey, String lastName, Long id) {
+        String position = sortKey + "\n" + lastName + "\n" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeDirectoryCursor(String cursor, String sortKey) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
         }
-        return doctorShortDTOS;
+        String[] position;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int first = decoded.indexOf('\n');
+            int last = decoded.lastIndexOf('\n');
+            if (first < 0 || first == last) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Long.parseLong(decoded.substring(last + 1));
+            //מיון, שם משפחה, מזהה
+            position = new String[]{decoded.substring(0, first), decoded.substring(first + 1, last), decoded.substring(last + 1)};
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!sortKey.equals(position[0])) {
+            throw new IllegalArgumentException("The cursor was created for sort=" + position[0] + ", not sort=" + sortKey);
+        }
+        return position;
     }
 
     @Transactional
     public List<DoctorDTO> getAllDoctors() {
-        List<Doctor> doctors = doctorRepository.findAll();
-        List<DoctorDTO> doctorDTOS = new ArrayList<>();
-        for (int i = 0; i < doctors.size(); i++) {
-            doctorDTOS.add(mapDoctorToDoctorDTO(doctors.get(i)));
+        return mapDoctorsToDoctorDTOs(doctorRepository.findAll());
+    }
+
+    @Transactional
+    public List<DoctorSummaryDTO> getAllDoctorSummaries() {
+        return mapDoctorsToSummaries(doctorRepository.findAll());
+    }
+
+    public List<DoctorDTO> mapDoctorsToDoctorDTOs(List<Doctor> doctors) {
+        return doctors.stream().map(doctorMapper::toDoctorDTO).collect(Collectors.toList());
+    }
+
+    //המספרים של כל הרופאים ברשימה נטענים בשלוש שאילתות, בלי לטעון את האוספים עצמם
+    public List<DoctorSummaryDTO> mapDoctorsToSummaries(List<Doctor> doctors) {
+        if (doctors.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> ids = doctors.stream().map(Doctor::getId).toList();
+        Map<Long, Object[]> patients = CountRows.byId(doctorRepository.countPatients(ids));
+        Map<Long, Object[]> inquiries = CountRows.byId(doctorRepository.countInquiries(ids));
+        Map<Long, Object[]> appointments = CountRows.byId(appointmentsRepository.countByDoctorIds(ids, Instant.now()));
+        List<DoctorSummaryDTO> summaries = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            DoctorSummaryDTO summary = doctorMapper.toSummary(doctor);
+            Object[] patientCounts = patients.get(doctor.getId());
+            summary.setPatientsCount(patientCounts == null ? 0 : (Long) patientCounts[1]);
+            Object[] inquiryCounts = inquiries.get(doctor.getId());
+            if (inquiryCounts != null) {
+                summary.setInquiriesCount((Long) inquiryCounts[1]);
+                summary.setLastInquiryAt((LocalDateTime) inquiryCounts[2]);
+            }
+            Object[] appointmentCounts = appointments.get(doctor.getId());
+            if (appointmentCounts != null) {
+                summary.setAppointmentsCount((Long) appointmentCounts[1]);
+                summary.setNextAppointmentAt((Instant) appointmentCounts[2]);
+            }
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    //פרטי הרופא עם מספרים, הפניות האחרונות והתורים הקרובים
+    @Transactional
+    public DoctorSummaryDTO getDoctorSummary(Long id) {
+        Doctor doctor = doctorRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
+        DoctorSummaryDTO summary = mapDoctorsToSummaries(List.of(doctor)).get(0);
+        summary.setRecentInquiries(doctorRepository.findRecentInquiries(id, PageRequest.of(0, SUMMARY_RECENT_ITEMS)));
+        summary.setUpcomingAppointments(appointmentsRepository.findUpcomingByDoctorId(id, Instant.now(),
+                PageRequest.of(0, SUMMARY_RECENT_ITEMS)));
+        return summary;
+    }
+
+    @Transactional
+    public PageDTO<PatientSummaryDTO> getPatientsOfDoctor(Long id, Integer page, Integer size) {
+        requireDoctor(id);
+        Page<Patient> patients = doctorRepository.findPatientsPage(id,
+                Paging.of(page, size, null, Sort.Direction.ASC, "lastName"));
+        return PageDTO.of(patients, patientService.mapPatientsToSummaries(patients.getContent()));
+    }
+
+    //direction הוא asc או desc, ברירת המחדל מהחדש לישן
+    public PageDTO<Inquiries> getInquiriesOfDoctor(Long id, Integer page, Integer size, String direction) {
+        requireDoctor(id);
+        return PageDTO.of(doctorRepository.findInquiriesPage(id,
+                Paging.of(page, size, direction, Sort.Direction.DESC, "createdAt")));
+    }
+
+    public PageDTO<Appointments> getAppointmentsOfDoctor(Long id, Integer page, Integer size, String direction) {
+        requireDoctor(id);
+        return PageDTO.of(appointmentsRepository.findPageByDoctorId(id,
+                Paging.of(page, size, direction, Sort.Direction.DESC, "startsAt")));
+    }
+
+    private void requireDoctor(Long id) {
+        if (!doctorRepository.existsById(id)) {
+            throw new NoSuchElementException("Doctor not found with id: " + id);
         }
-        return doctorDTOS;
     }
 
     @Transactional
     public DoctorDTO getDoctorByID(Long id) {
-        DoctorDTO doctorDTO = mapDoctorToDoctorDTO(doctorRepository.findById(id).orElse(null));
+        DoctorDTO doctorDTO = doctorMapper.toDoctorDTO(doctorRepository.findWithAppointmentsById(id).orElse(null));
         if (doctorDTO != null) return doctorDTO;
         throw new IllegalArgumentException("Doctor not found");
     }
 
     @Transactional
     public DoctorDTO getDoctorByEmail(String email) {
-        DoctorDTO doctorDTO = mapDoctorToDoctorDTO(doctorRepository.findByEmail(email).orElse(null));
+        DoctorDTO doctorDTO = doctorMapper.toDoctorDTO(doctorRepository.findWithAppointmentsByEmail(email).orElse(null));
         if (doctorDTO != null) return doctorDTO;
         throw new IllegalArgumentException("Doctor not found");
     }
@@ -191,7 +289,7 @@ public class DoctorService {
         Doctor doctor = doctorRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("Doctor not found"));
         doctor = updateDoctorDetails(doctor, doctorDTO);
         doctor = doctorRepository.save(doctor);
-        return mapDoctorToDoctorDTO(doctor);
+        return doctorMapper.toDoctorDTO(doctor);
     }
 
     @Transactional
@@ -205,22 +303,30 @@ public class DoctorService {
         Optional<Users> user = usersRepository.findByEmail(doctor.getEmail());
         usersRepository.delete(user.get());
         doctorRepository.delete(doctor);
+        scheduleIndex.removeDoctorAfterCommit(id);
+        eventPublisher.publishEvent(new UserCredentialsChangedEvent(doctor.getEmail()));
     }
 
     @Transactional
     public List<PatientDTO> getPatientsOfDoctor(Long id) {
-        Doctor doctor = doctorRepository.findById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
+        Doctor doctor = doctorRepository.findWithPatientsById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
 
         List<Patient> patients = doctor.getPatients();
 
 
-        return patients.stream().map(patientService::mapPatientToPatientDTO).collect(Collectors.toList());
+        return patientService.mapPatientsToPatientDTOs(patients);
+    }
+
+    @Transactional
+    public List<PatientSummaryDTO> getPatientSummariesOfDoctor(Long id) {
+        Doctor doctor = doctorRepository.findWithPatientsById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
+        return patientService.mapPatientsToSummaries(doctor.getPatients());
     }
 
     @Transactional
 
     public List<Inquiries> getInquiriesOfDoctor(Long id) {
-        Doctor doctor = doctorRepository.findById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
+        Doctor doctor = doctorRepository.findWithInquiriesById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
 
         return doctor.getInquiries();
     }
@@ -228,7 +334,7 @@ public class DoctorService {
     @Transactional
 
     public List<Appointments> getAppointmentsOfDoctor(Long id) {
-        Doctor doctor = doctorRepository.findById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
+        Doctor doctor = doctorRepository.findWithAppointmentsById(id).orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + id));
 
         return doctor.getAppointments();
     }
@@ -248,6 +354,7 @@ public class DoctorService {
         doctorAppointments.remove(optionalAppointment.get());
         doctor.setAppointments(doctorAppointments);
         appointmentsRepository.delete(optionalAppointment.get());
+        appointmentService.onAppointmentDeleted(optionalAppointment.get());
         return "Appointment deleted successfully";
     }
 
@@ -261,12 +368,7 @@ public class DoctorService {
         List<Doctor> patientDoctors = patient.getDoctors();
         patientDoctors.add(doctor);
         patient.setDoctors(patientDoctors);
-        return patients.stream().map(patientService::mapPatientToPatientDTO).collect(Collectors.toList());
-    }
-
-    public Date convertStringToDate(String dateString) throws ParseException {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-        return sdf.parse(dateString);
+        return patientService.mapPatientsToPatientDTOs(patients);
     }
 
     @Transactional
@@ -304,10 +406,12 @@ public class DoctorService {
                 patientRepository.save(patient);
                 RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
                 rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+                rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
                 rabbitMQMessage.setSenderInquiryEmail(doctor.getEmail());
                 rabbitMQMessage.setQuestion(inquiry.getSymptoms());
                 if (inquiry.getPatient() != null) {
                     rabbitMQMessage.setPatientEmail(inquiry.getPatient().getEmail());
+                    rabbitMQMessage.setPatientName(RabbitMQMessage.displayName(inquiry.getPatient().getFirstName(), inquiry.getPatient().getLastName()));
                 }
                 rabbitMQController.sendMessage(rabbitMQMessage);
                 return patientInquiries;
@@ -360,9 +464,11 @@ public class DoctorService {
                 doctorRepository.save(doctor2);
                 RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
                 rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+                rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
                 rabbitMQMessage.setSenderInquiryEmail(doctor.getEmail());
                 rabbitMQMessage.setQuestion(inquiry.getSymptoms());
                 rabbitMQMessage.setDoctor2Email(doctor2.getEmail());
+                rabbitMQMessage.setDoctor2Name(RabbitMQMessage.displayName(doctor2.getFirstName(), doctor2.getLastName()));
                 rabbitMQController.sendMessage(rabbitMQMessage);
                 return doctor.getInquiries();
             } else {
@@ -373,12 +479,15 @@ public class DoctorService {
         }
     }
 
-    @Transactional
+    //READ COMMITTED: הרופא והמטופל נקראים לפני הנעילות של AppointmentService.book. בREPEATABLE READ (ברירת המחדל בMySQL)
+    //הקריאה הראשונה קובעת snapshot, ובדיקת החפיפה אחרי הנעילה לא הייתה רואה תור שנשמר בינתיים בטרנזקציה אחרת
+    @org.springframework.transaction.annotation.Transactional(isolation = Isolation.READ_COMMITTED)
     public List<Appointments> addAppointmentToDoctor(Long doctorID, Map<String, Object> appointmentData) throws ParseException {
         Map<String, Object> patientData = (Map<String, Object>) appointmentData.get("patient");
         Long patientID = ((Number) patientData.get("id")).longValue();
 
         String date = (String) appointmentData.get("date");
+        Integer durationMinutes = appointmentData.get("durationMinutes") instanceof Number number ? number.intValue() : null;
 
         Optional<Doctor> optionalDoctor = doctorRepository.findById(doctorID);
         if (optionalDoctor.isPresent()) {
@@ -386,41 +495,21 @@ public class DoctorService {
             Optional<Patient> optionalPatient = patientRepository.findById(patientID);
             if (optionalPatient.isPresent()) {
                 Patient patient = optionalPatient.get();
-                Date now = new Date();
-                Date date2 = convertStringToDate(date);
-                List<Appointments> doctorAppointments = doctor.getAppointments();
-                List<Appointments> patientAppointments = patient.getAppointments();
-                for (Appointments patientAppointment : patientAppointments) {
-                    if (convertStringToDate(patientAppointment.getDate()).equals(date2)) {
-                        throw new NoSuchElementException("The patient already has an appointment on this date");
-                    }
-                }
-                for (Appointments doctorAppointment : doctorAppointments) {
-                    if (convertStringToDate(doctorAppointment.getDate()).equals(date2)) {
-                        throw new NoSuchElementException("You already have an appointment on this date");
-                    }
-                }
-                if (date2.after(now)) {
-                    Appointments appointment = new Appointments();
-                    appointment.setPatient(patient);
-                    appointment.setDoctor(doctor);
-                    appointment.setDate(date);
-                    List<Appointments> appointments = patient.getAppointments();
-                    appointments.add(appointment);
-                    patient.setAppointments(appointments);
-                    List<Appointments> appointments2 = doctor.getAppointments();
-                    appointments2.add(appointment);
-                    doctor.setAppointments(appointments2);
-                    appointmentsRepository.save(appointment);
-                    RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
-                    rabbitMQMessage.setAppointmentDate(date);
-                    rabbitMQMessage.setDoctorEmail(doctor.getEmail());
-                    rabbitMQMessage.setPatientEmail(patient.getEmail());
-                    rabbitMQController.sendMessage(rabbitMQMessage);
-                    return appointments;
-                } else {
-                    throw new NoSuchElementException("The date has already passed");
-                }
+                Appointments appointment = appointmentService.book(doctor, patient, date, durationMinutes);
+                List<Appointments> appointments = patient.getAppointments();
+                appointments.add(appointment);
+                patient.setAppointments(appointments);
+                List<Appointments> appointments2 = doctor.getAppointments();
+                appointments2.add(appointment);
+                doctor.setAppointments(appointments2);
+                RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
+                rabbitMQMessage.setAppointmentDate(appointment.getDate());
+                rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+                rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
+                rabbitMQMessage.setPatientEmail(patient.getEmail());
+                rabbitMQMessage.setPatientName(RabbitMQMessage.displayName(patient.getFirstName(), patient.getLastName()));
+                rabbitMQController.sendMessage(rabbitMQMessage);
+                return appointments;
             } else {
                 throw new NoSuchElementException("Patient not found with id: " + optionalPatient.get().getId());
             }
@@ -474,6 +563,7 @@ public class DoctorService {
 
     @Transactional
     public Users addRoleToDoctor(Long id, String roleName) {
+        AdminRoleProvisioner.requireAssignable(roleName);
         Role role = roleRepository.findByRole(roleName);
         Optional<Doctor> doctor = doctorRepository.findById(id);
         Optional<Users> user = usersRepository.findByEmail(doctor.get().getEmail());
@@ -483,6 +573,7 @@ public class DoctorService {
         Users userNew = user.get();
         if (user.isPresent()) {
             usersRepository.save(userNew);
+            eventPublisher.publishEvent(new UserCredentialsChangedEvent(userNew.getEmail()));
         }
         return userNew;
     }
@@ -491,7 +582,7 @@ public class DoctorService {
         Optional<Doctor> doctor = doctorRepository.findById(id);
         try {
             if (!file.isEmpty()) {
-                doctor.get().setImageData(file.getBytes());
+                profileImageService.applyImage(doctor.get(), file.getBytes());
                 doctorRepository.save(doctor.get());
                 System.out.println("File uploaded successfully");
             }
@@ -515,15 +606,18 @@ public class DoctorService {
         rabbitMQMessage.setDoctorAnswer(answer);
         Doctor doctor = inquiry.getDoctor().get(0);
         rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+        rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
         if (!inquiry.getDoctor2().isEmpty()) {
             Doctor doctor2 = inquiry.getDoctor2().get(0);
             inquiry.setSenderId(doctor2.getId());
             rabbitMQMessage.setSenderInquiryEmail(doctor2.getEmail());
             rabbitMQMessage.setDoctor2Email(doctor2.getEmail());
+            rabbitMQMessage.setDoctor2Name(RabbitMQMessage.displayName(doctor2.getFirstName(), doctor2.getLastName()));
         } else if (inquiry.getPatient() != null) {
             Patient patient = inquiry.getPatient();
             rabbitMQMessage.setSenderInquiryEmail(doctor.getEmail());
             rabbitMQMessage.setPatientEmail(patient.getEmail());
+            rabbitMQMessage.setPatientName(RabbitMQMessage.displayName(patient.getFirstName(), patient.getLastName()));
         }
         inquiriesRepository.save(inquiry);
         rabbitMQController.sendMessage(rabbitMQMessage);
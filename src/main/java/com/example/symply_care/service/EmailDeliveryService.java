@@ -0,0 +1,204 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.util.Partitions;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+//שלב שליחת המיילים: כמה threads ששולחים דרך SmtpTransportPool, והגבלה של כמה מיילים במקביל לכל דומיין של נמען
+//(שרתי דואר חוסמים זמנית שולח שפותח יותר מדי חיבורים). submit מחזיר מיד, והתוצאה מגיעה בfuture אחרי שהשרת קיבל את המייל.
+//לכל thread תור חסום משלו, וכל נמען שייך תמיד לאותו תור - כך המיילים לאותו נמען נשלחים בסדר שבו הוגשו
+@Service
+public class EmailDeliveryService implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailDeliveryService.class);
+    private static final long POLL_MILLIS = 100;
+
+    private record Delivery(String to, String domain, String subject, String body, CompletableFuture<Void> result) {
+    }
+
+    private final SmtpTransportPool transportPool;
+    private final JavaMailSender mailSender;
+    private final MeterRegistry meterRegistry;
+    private final String from;
+    private final int workerCount;
+    private final int perDomainLimit;
+    private final long enqueueTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long shutdownTimeoutMillis;
+    private final List<BlockingQueue<Delivery>> lanes = new ArrayList<>();
+    private final ConcurrentMap<String, Semaphore> domainPermits = new ConcurrentHashMap<>();
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    public EmailDeliveryService(SmtpTransportPool transportPool,
+                                JavaMailSender mailSender,
+                                MeterRegistry meterRegistry,
+                                @Value("${spring.mail.username}") String from,
+                                @Value("${email.delivery.workers:4}") int workerCount,
+                                @Value("${email.delivery.queue-capacity:200}") int queueCapacity,
+                                @Value("${email.delivery.per-domain-limit:2}") int perDomainLimit,
+                                @Value("${email.delivery.enqueue-timeout-millis:5000}") long enqueueTimeoutMillis,
+                                @Value("${email.delivery.borrow-timeout-millis:30000}") long borrowTimeoutMillis,
+                                @Value("${email.delivery.shutdown-timeout-millis:10000}") long shutdownTimeoutMillis) {
+        this.transportPool = transportPool;
+        this.mailSender = mailSender;
+        this.meterRegistry = meterRegistry;
+        this.from = from;
+        this.workerCount = workerCount;
+        this.perDomainLimit = perDomainLimit;
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        for (int i = 0; i < workerCount; i++) {
+            lanes.add(new ArrayBlockingQueue<>(Math.max(1, queueCapacity / workerCount)));
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        meterRegistry.gauge("email.delivery.queue", lanes, all -> all.stream().mapToInt(BlockingQueue::size).sum());
+        running = true;
+        workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("email-delivery-"));
+        for (BlockingQueue<Delivery> lane : lanes) {
+            workers.execute(() -> work(lane));
+        }
+    }
+
+    //המיילים שכבר בתור נשלחים לפני הסגירה. מה שלא הספיק נכשל, וההודעה חוזרת לRabbitMQ כי לא קיבלה ack
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            workers.shutdownNow();
+        }
+        for (BlockingQueue<Delivery> lane : lanes) {
+            Delivery delivery;
+            while ((delivery = lane.poll()) != null) {
+                delivery.result().completeExceptionally(new RejectedExecutionException("Email delivery is shutting down"));
+            }
+        }
+    }
+
+    public CompletableFuture<Void> submit(String to, String subject, String body) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        int at = to == null ? -1 : to.lastIndexOf('@');
+        if (at < 0) {
+            result.completeExceptionally(new AddressException("Missing recipient domain", to));
+            return result;
+        }
+        Delivery delivery = new Delivery(to, to.substring(at + 1).toLowerCase(Locale.ROOT), subject, body, result);
+        BlockingQueue<Delivery> lane = lanes.get(Partitions.of(to, lanes.size()));
+        try {
+            if (!running || !lane.offer(delivery, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                result.completeExceptionally(new RejectedExecutionException("Email delivery queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    //כתובת שהשרת דחה לצמיתות (5xx) או כתובת לא תקינה - אין טעם לנסות שוב
+    public static boolean isPermanent(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AddressException) {
+            return true;
+        }
+        return cause instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null && sendFailed.getInvalidAddresses().length > 0;
+    }
+
+    //כשהדומיין תפוס הthread מחכה, ורק התור שלו מתעכב - שאר התורים ממשיכים לשלוח
+    private void work(BlockingQueue<Delivery> lane) {
+        while (running || !lane.isEmpty()) {
+            try {
+                Delivery delivery = lane.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (delivery == null) {
+                    continue;
+                }
+                Semaphore permits = domainPermits.computeIfAbsent(delivery.domain(), domain -> new Semaphore(perDomainLimit));
+                permits.acquire();
+                try {
+                    deliver(delivery);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliver(Delivery delivery) throws InterruptedException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "sent";
+        try {
+            send(build(delivery));
+            delivery.result().complete(null);
+        } catch (MessagingException | RuntimeException e) {
+            outcome = isPermanent(e) ? "rejected" : "failed";
+            LOGGER.warn(String.format("Email to %s %s: %s", delivery.to(), outcome, e.getMessage()));
+            delivery.result().completeExceptionally(e);
+        } finally {
+            sample.stop(meterRegistry.timer("email.delivery.duration", "outcome", outcome));
+        }
+    }
+
+    private MimeMessage build(Delivery delivery) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        helper.setFrom(from);
+        helper.setTo(delivery.to());
+        helper.setSubject(delivery.subject());
+        helper.setText(delivery.body(), true);
+        message.setSentDate(new Date());
+        message.saveChanges();
+        return message;
+    }
+
+    private void send(MimeMessage message) throws MessagingException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            SmtpTransportPool.PooledTransport pooled = transportPool.borrow(borrowTimeoutMillis);
+            if (pooled == null) {
+                throw new MessagingException("No SMTP connection available");
+            }
+            try {
+                pooled.transport().sendMessage(message, message.getAllRecipients());
+                transportPool.release(pooled);
+                return;
+            } catch (SendFailedException e) {
+                //השרת דחה את הנמען, החיבור עצמו תקין
+                transportPool.release(pooled);
+                throw e;
+            } catch (MessagingException e) {
+                transportPool.invalidate(pooled);
+                //ייתכן שהשרת סגר את החיבור בזמן שחיכה במאגר - מנסים פעם אחת עם חיבור חדש
+                if (attempt >= 2) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
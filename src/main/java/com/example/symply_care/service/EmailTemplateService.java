@@ -0,0 +1,85 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.util.HtmlTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+//תבניות המיילים נטענות ומקומפלות פעם אחת בעלייה, מהתיקייה של הגרסה שבהגדרות (email-templates/<version>/<name>.html).
+//שינוי בתבנית נעשה בתיקיית גרסה חדשה, כך שאפשר לחזור לגרסה הקודמת רק בשינוי של email.templates.version.
+//הרינדור כותב לStringBuilder אחד לכל thread במקום ליצור מחרוזות ביניים לכל הודעה
+@Service
+public class EmailTemplateService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailTemplateService.class);
+    //buffer שגדל מעבר לזה (מייל חריג) לא נשמר, כדי שלא יחזיק זיכרון לאורך זמן
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(4 * 1024));
+
+    private final String version;
+    private final Map<String, HtmlTemplate> templates;
+
+    public EmailTemplateService(@Value("${email.templates.version:v1}") String version) throws IOException {
+        this.version = version;
+        Map<String, HtmlTemplate> compiled = new HashMap<>();
+        Resource[] resources;
+        try {
+            resources = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath:email-templates/" + version + "/*.html");
+        } catch (FileNotFoundException e) {
+            //אין תיקייה לגרסה הזאת
+            resources = new Resource[0];
+        }
+        for (Resource resource : resources) {
+            String fileName = resource.getFilename();
+            try (InputStream input = resource.getInputStream()) {
+                compiled.put(fileName.substring(0, fileName.length() - ".html".length()),
+                        HtmlTemplate.compile(new String(input.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+        }
+        if (compiled.isEmpty()) {
+            throw new IllegalStateException("No email templates found for version " + version);
+        }
+        this.templates = Map.copyOf(compiled);
+        LOGGER.info(String.format("Loaded email templates %s (%s)", templates.keySet(), version));
+    }
+
+    //נקרא בעלייה ע"י מי שמרנדר את התבנית (RabbitMQConsumer): משבצת שאף אחד לא ממלא הייתה נשארת ריקה בכל מייל,
+    //וערך שאין לו משבצת הוא כנראה שם שהשתנה בתבנית. בשני המקרים השרת לא עולה עם גרסת התבניות הזו
+    public void requireParameters(String name, Set<String> supplied) {
+        HtmlTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalStateException("Missing email template: " + name + " (" + version + ")");
+        }
+        if (!template.parameters().equals(supplied)) {
+            throw new IllegalStateException(String.format("Email template %s (%s) expects %s but is rendered with %s",
+                    name, version, template.parameters(), supplied));
+        }
+    }
+
+    public String render(String name, Map<String, String> values) {
+        HtmlTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown email template: " + name + " (" + version + ")");
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        template.render(values, buffer);
+        String body = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return body;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.dto.HistoryPageDTO;
+import com.example.symply_care.dto.HistoryRecordDTO;
+import com.example.symply_care.entity.ArchiveKind;
+import com.example.symply_care.entity.HistoryArchive;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.HistoryArchiveRepository;
+import com.example.symply_care.repository.InquiriesRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//העברת תורים ופניות ישנים לארכיון (history_archive) וקריאה של ההיסטוריה בעמודים
+//הכתיבה נקראת מהניקוי הלילי בתוך הטרנזקציה של כל מנה, כך שרשומה נמחקת רק אם היא נשמרה בארכיון
+@Service
+@RequiredArgsConstructor
+public class HistoryArchiveService {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final TypeReference<LinkedHashMap<String, Object>> DETAILS_TYPE = new TypeReference<>() {
+    };
+
+    private final HistoryArchiveRepository historyArchiveRepository;
+    private final AppointmentsRepository appointmentsRepository;
+    private final InquiriesRepository inquiriesRepository;
+    private final ObjectMapper objectMapper;
+
+    public void archiveAppointments(List<Long> ids) {
+        Instant now = Instant.now();
+        List<HistoryArchive> records = new ArrayList<>();
+        for (Object[] row : appointmentsRepository.findForArchive(ids)) {
+            Instant startsAt = (Instant) row[4];
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("date", row[3]);
+            details.put("startsAt", startsAt);
+            details.put("endsAt", row[5]);
+            details.put("durationMinutes", row[6]);
+            records.add(record(ArchiveKind.APPOINTMENT, (Long) row[0], (Long) row[1], (Long) row[2],
+                    startsAt != null ? startsAt : now, now, details));
+        }
+        historyArchiveRepository.saveAll(inOccurrenceOrder(records));
+    }
+
+    public void archiveInquiries(List<Long> ids) {
+        Instant now = Instant.now();
+        Map<Long, Long> doctors = new HashMap<>();
+        Map<Long, Long> referringDoctors = new HashMap<>();
+        for (Object[] link : inquiriesRepository.findDoctorLinksForArchive(ids)) {
+            Long inquiryId = ((Number) link[0]).longValue();
+            Long doctorId = ((Number) link[1]).longValue();
+            (((Number) link[2]).intValue() == 1 ? doctors : referringDoctors).putIfAbsent(inquiryId, doctorId);
+        }
+        List<HistoryArchive> records = new ArrayList<>();
+        for (Object[] row : inquiriesRepository.findForArchive(ids)) {
+            Long id = (Long) row[0];
+            LocalDateTime createdAt = (LocalDateTime) row[6];
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("senderId", row[2]);
+            details.put("symptoms", row[3]);
+            details.put("answer", row[4]);
+            details.put("hasAnswered", row[5]);
+            details.put("createdAt", createdAt);
+            details.put("answeredAt", row[7]);
+            details.put("matchingDisease", row[8]);
+            details.put("matchingRow", row[9]);
+            details.put("maxIndex", row[10]);
+            details.put("predictionRowNumber", row[11]);
+            details.put("referringDoctorId", referringDoctors.get(id));
+            records.add(record(ArchiveKind.INQUIRY, id, doctors.get(id), (Long) row[1],
+                    createdAt != null ? createdAt.atZone(ZoneId.systemDefault()).toInstant() : now, now, details));
+        }
+        historyArchiveRepository.saveAll(inOccurrenceOrder(records));
+    }
+
+    //month בפורמט yyyy-MM (לא חובה), cursor הוא הערך nextCursor מהעמוד הקודם
+    public HistoryPageDTO getPatientHistory(Long patientId, String month, String cursor, Integer size) {
+        int pageSize = pageSize(size);
+        HistoryCursor position = HistoryCursor.decode(cursor);
+        List<HistoryArchive> rows = historyArchiveRepository.findPatientHistory(patientId, parseMonth(month),
+                position == null ? null : position.occurredAt(), position == null ? null : position.id(),
+                PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize);
+    }
+
+    public HistoryPageDTO getDoctorHistory(Long doctorId, String month, String cursor, Integer size) {
+        int pageSize = pageSize(size);
+        HistoryCursor position = HistoryCursor.decode(cursor);
+        List<HistoryArchive> rows = historyArchiveRepository.findDoctorHistory(doctorId, parseMonth(month),
+                position == null ? null : position.occurredAt(), position == null ? null : position.id(),
+                PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize);
+    }
+
+    //מזהים עוקבים באותו סדר כמו ההיסטוריה, גם כשfindForArchive מחזיר את המנה בסדר אחר
+    private static List<HistoryArchive> inOccurrenceOrder(List<HistoryArchive> records) {
+        records.sort(Comparator.comparing(HistoryArchive::getOccurredAt).thenComparing(HistoryArchive::getSourceId));
+        return records;
+    }
+
+    private HistoryArchive record(ArchiveKind kind, Long sourceId, Long doctorId, Long patientId,
+                                  Instant occurredAt, Instant archivedAt, Map<String, Object> details) {
+        YearMonth month = YearMonth.from(occurredAt.atZone(ZoneId.systemDefault()));
+        return new HistoryArchive(null, kind, sourceId, doctorId, patientId,
+                month.getYear() * 100 + month.getMonthValue(), occurredAt, archivedAt, compress(details));
+    }
+
+    //הpayload נפתח רק לרשומות של העמוד שמוחזר
+    private HistoryPageDTO toPage(List<HistoryArchive> rows, int pageSize) {
+        boolean hasMore = rows.size() > pageSize;
+        List<HistoryArchive> page = hasMore ? rows.subList(0, pageSize) : rows;
+        List<HistoryRecordDTO> records = page.stream()
+                .map(row -> new HistoryRecordDTO(row.getKind(), row.getSourceId(), row.getDoctorId(), row.getPatientId(),
+                        String.format("%04d-%02d", row.getArchiveMonth() / 100, row.getArchiveMonth() % 100),
+                        row.getOccurredAt(), decompress(row.getPayload())))
+                .toList();
+        String nextCursor = null;
+        if (hasMore) {
+            HistoryArchive last = page.get(page.size() - 1);
+            nextCursor = new HistoryCursor(last.getOccurredAt(), last.getId()).encode();
+        }
+        return new HistoryPageDTO(records, nextCursor);
+    }
+
+    private byte[] compress(Map<String, Object> details) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, details);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress archive record", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Map<String, Object> decompress(byte[] payload) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return objectMapper.readValue(gzip, DETAILS_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive record", e);
+        }
+    }
+
+    private static int pageSize(Integer size) {
+        return size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    private static Integer parseMonth(String month) {
+        if (month == null || month.isBlank()) {
+            return null;
+        }
+        try {
+            YearMonth yearMonth = YearMonth.parse(month.trim(), MONTH_FORMAT);
+            return yearMonth.getYear() * 100 + yearMonth.getMonthValue();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid month: " + month);
+        }
+    }
+
+    //המיקום בהיסטוריה: הרשומה האחרונה שנשלחה
+    record HistoryCursor(Instant occurredAt, Long id) {
+
+        String encode() {
+            String position = occurredAt + "\n" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('\n');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+                }
+                return new HistoryCursor(Instant.parse(decoded.substring(0, separator)),
+                        Long.parseLong(decoded.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
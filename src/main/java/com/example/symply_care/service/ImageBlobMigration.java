@@ -0,0 +1,128 @@
+package com.example.symply_care.service;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+//מעביר תמונות שעדיין שמורות בעמודות image_data / thumbnail_data של doctors ו patients לImageBlobStore,
+//ואז מאפס את העמודות. רץ ברקע אחרי עליית השרת, במנות לפי id, וכל שורה מתעדכנת בנפרד
+//העמודות הישנות כבר לא ממופות בentity ולכן העבודה נעשית ישירות בJDBC
+@Service
+public class ImageBlobMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageBlobMigration.class);
+    private static final String[] TABLES = {"doctors", "patients"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageBlobStore imageBlobStore;
+    private final ProfileImageService profileImageService;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public ImageBlobMigration(JdbcTemplate jdbcTemplate,
+                              ImageBlobStore imageBlobStore,
+                              ProfileImageService profileImageService,
+                              @Value("${image-store.migration.enabled:true}") boolean enabled,
+                              @Value("${image-store.migration.batch-size:50}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.imageBlobStore = imageBlobStore;
+        this.profileImageService = profileImageService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        for (String table : TABLES) {
+            try {
+                int migrated = migrateTable(table);
+                if (migrated > 0) {
+                    LOGGER.info(String.format("Moved %d images from %s to the image store", migrated, table));
+                }
+            } catch (DataAccessException e) {
+                //התקנה חדשה - העמודות הישנות לא קיימות בכלל
+                LOGGER.debug(String.format("Skipping image migration for %s: %s", table, e.getMessage()));
+            }
+        }
+    }
+
+    int migrateTable(String table) {
+        int migrated = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM " + table + " WHERE id > ? AND image_data IS NOT NULL ORDER BY id LIMIT ?",
+                    Long.class, lastId, batchSize);
+            if (ids.isEmpty()) {
+                return migrated;
+            }
+            for (Long id : ids) {
+                try {
+                    migrateRow(table, id);
+                    migrated++;
+                } catch (RuntimeException e) {
+                    //השורה נשארת כמו שהיא ותנסה שוב בעלייה הבאה
+                    LOGGER.error(String.format("Could not migrate image of %s %d: %s", table, id, e.getMessage()));
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+    }
+
+    private void migrateRow(String table, Long id) {
+        //הקובץ נכתב לפני עדכון השורה - אם השרת נופל באמצע, השורה עדיין מחזיקה את התמונה
+        String imageHash = storeColumn(table, "image_data", id);
+        if (imageHash == null) {
+            return;
+        }
+        String thumbnailHash = storeColumn(table, "thumbnail_data", id);
+        String contentType = null;
+        try {
+            byte[] image = imageBlobStore.read(imageHash);
+            contentType = ProfileImageService.detectContentType(image);
+            if (thumbnailHash == null) {
+                byte[] thumbnail = profileImageService.createThumbnail(image);
+                thumbnailHash = thumbnail != null ? imageBlobStore.store(thumbnail) : null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        jdbcTemplate.update("UPDATE " + table + " SET image_hash = ?, thumbnail_hash = ?, " +
+                        "image_content_type = COALESCE(image_content_type, ?), image_updated_at = COALESCE(image_updated_at, ?), " +
+                        "image_data = NULL, thumbnail_data = NULL WHERE id = ?",
+                imageHash, thumbnailHash, contentType,
+                Timestamp.from(Instant.now().truncatedTo(ChronoUnit.SECONDS)), id);
+    }
+
+    //קורא את הblob כstream ישירות לקובץ, בלי להחזיק עותק נוסף שלו בזיכרון
+    private String storeColumn(String table, String column, Long id) {
+        return jdbcTemplate.query("SELECT " + column + " FROM " + table + " WHERE id = ?", resultSet -> {
+            if (!resultSet.next()) {
+                return null;
+            }
+            try (InputStream data = resultSet.getBinaryStream(1)) {
+                return data != null ? imageBlobStore.store(data) : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, id);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.symply_care.service;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+//אחסון תמונות בקבצים לפי הhash (SHA-256) של התוכן. תמונה זהה נשמרת פעם אחת בלבד,
+//וקובץ שנכתב לא משתנה לעולם - ולכן אפשר להגיש אותו ישירות מהדיסק ולשמור אותו בcache לתמיד
+//מבנה התיקיות: <directory>/ab/cd/abcd... כדי שלא יהיו יותר מדי קבצים בתיקייה אחת
+@Component
+public class ImageBlobStore {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private final Path root;
+    private final Path tmp;
+
+    public ImageBlobStore(@Value("${image-store.directory:data/images}") String directory) throws IOException {
+        this.root = Paths.get(directory).toAbsolutePath().normalize();
+        this.tmp = root.resolve("tmp");
+        Files.createDirectories(tmp);
+    }
+
+    public String store(byte[] data) {
+        try {
+            return store(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store image", e);
+        }
+    }
+
+    //כותב לקובץ זמני תוך כדי חישוב הhash, ואז מעביר אותו למקומו בפעולה אטומית.
+    //קורא אף פעם לא רואה קובץ חלקי, ושתי כתיבות מקבילות של אותה תמונה לא מפריעות זו לזו
+    public String store(InputStream data) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(tmp, "image-", ".part");
+        try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(data, digest));
+             FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = target.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+            target.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path target = path(hash);
+        if (Files.exists(target)) {
+            Files.delete(temp);
+            return hash;
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return hash;
+    }
+
+    public Path path(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Invalid image hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    public boolean exists(String hash) {
+        return Files.isRegularFile(path(hash));
+    }
+
+    public byte[] read(String hash) throws IOException {
+        return Files.readAllBytes(path(hash));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.symply_care.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+//המפתח הוא הjti של הtoken ולא הtoken המלא. כל token נכנס גם ל"דלי" לפי הדקה שבה הוא פג,
+//והניקוי מוחק דליים שלמים שעבר זמנם במקום לסרוק את כל הרשימה בכל logout
+public class InMemoryTokenRevocationStore implements TokenRevocationStore {
+
+    private static final long BUCKET_MILLIS = 60 * 1000;
+
+    private final ConcurrentHashMap<String, Long> blacklist = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Set<String>> expiryBuckets = new ConcurrentSkipListMap<>();
+
+    @Override
+    public void revoke(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        blacklist.put(tokenId, expiresAtMillis);
+        expiryBuckets.computeIfAbsent(expiresAtMillis / BUCKET_MILLIS, bucket -> ConcurrentHashMap.newKeySet())
+                .add(tokenId);
+    }
+
+    //ללא נעילות וללא יצירת עצמים חדשים
+    @Override
+    public boolean isRevoked(String tokenId) {
+        Long expiresAt = blacklist.get(tokenId);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    @Override
+    public void removeExpiredTokens() {
+        long currentBucket = System.currentTimeMillis() / BUCKET_MILLIS;
+        Map.Entry<Long, Set<String>> bucket;
+        while ((bucket = expiryBuckets.firstEntry()) != null && bucket.getKey() < currentBucket) {
+            expiryBuckets.remove(bucket.getKey());
+            for (String tokenId : bucket.getValue()) {
+                blacklist.remove(tokenId);
+            }
+        }
+    }
+
+    void forEachRevoked(BiConsumer<String, Long> action) {
+        blacklist.forEach(action);
+    }
+}
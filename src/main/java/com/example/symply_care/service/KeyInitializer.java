@@ -2,6 +2,7 @@ package com.example.symply_care.service;
 
 
 import com.example.symply_care.repository.RSAKeysRepository;
+import com.example.symply_care.util.RSAKeyRing;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
@@ -12,12 +13,14 @@ public class KeyInitializer implements InitializingBean {
 
     private final KeyRotationService keyRotationService;
     private final RSAKeysRepository RSAKeysRepository;
+    private final RSAKeyRing keyRing;
 
-    //פונה לפעולה שיוצרת מפתחות במידה ואין
+    //פונה לפעולה שיוצרת מפתחות במידה ואין, ואז טוען אותם לזיכרון
     @Override
     public void afterPropertiesSet() {
         if (RSAKeysRepository.count() == 0) {
             keyRotationService.rotateKeys();
         }
+        keyRing.reload();
     }
 }
@@ -2,14 +2,19 @@ package com.example.symply_care.service;
 
 import com.example.symply_care.entity.RSAKeysEntity;
 import com.example.symply_care.repository.RSAKeysRepository;
-import com.example.symply_care.util.JwtUtil;
 import com.example.symply_care.util.RSAKeyGenerator;
+import com.example.symply_care.util.RSAKeyRing;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.Optional;
 
 
@@ -17,7 +22,9 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class KeyRotationService {
 
-    private final JwtUtil jwtUtil;
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyRotationService.class);
+
+    private final RSAKeyRing keyRing;
     private final com.example.symply_care.repository.RSAKeysRepository RSAKeysRepository;
     private final com.example.symply_care.util.RSAKeyGenerator RSAKeyGenerator;
 
@@ -26,17 +33,10 @@ public class KeyRotationService {
         try {
             KeyPair newKeyPair = RSAKeyGenerator.generateKeyPair();
 
-            System.out.println("New private key: " + newKeyPair.getPrivate());
-            System.out.println("New public key: " + newKeyPair.getPublic());
-
             Optional<RSAKeysEntity> currentKeysOptional = RSAKeysRepository.findById(1);
             if (currentKeysOptional.isPresent()) {
                 RSAKeysEntity currentRSAKeysEntity = currentKeysOptional.get();
 
-                System.out.println("Current keys before rotation - Private: " +
-                        currentRSAKeysEntity.getPrivate_key() + ", Public: " +
-                        currentRSAKeysEntity.getPublic_key());
-
                 RSAKeysEntity oldRSAKeysEntity = new RSAKeysEntity(2,
                         currentRSAKeysEntity.getPrivate_key(),
                         currentRSAKeysEntity.getPublic_key());
@@ -47,24 +47,36 @@ public class KeyRotationService {
                 currentRSAKeysEntity.setPublic_key(newKeyPair.getPublic().getEncoded());
                 RSAKeysRepository.save(currentRSAKeysEntity);
 
-                System.out.println("New keys after rotation - Private: " +
-                        newKeyPair.getPrivate().getEncoded() + ", Public: " +
-                        newKeyPair.getPublic().getEncoded());
-
-                if (jwtUtil.fetchTheCurrentKeyFormDatabase())
-                    System.out.println("Key fetched from database");
-                else {
-                    throw new RuntimeException("No RSA keys found in the database");
-                }
+                //רק המזהים (kid) - אף פעם לא החומר של המפתחות עצמם
+                LOGGER.info(String.format("Rotated signing keys at %s: kid %s replaces %s", Instant.now(),
+                        RSAKeyRing.kidOf(currentRSAKeysEntity.getPublic_key()), RSAKeyRing.kidOf(oldRSAKeysEntity.getPublic_key())));
+                updateKeyRingAfterCommit(currentRSAKeysEntity, oldRSAKeysEntity);
 
             } else {
                 RSAKeysEntity newRSAKeysEntity = new RSAKeysEntity(1,
                         newKeyPair.getPrivate().getEncoded(),
                         newKeyPair.getPublic().getEncoded());
                 RSAKeysRepository.save(newRSAKeysEntity);
+                LOGGER.info(String.format("Created signing keys at %s: kid %s", Instant.now(),
+                        RSAKeyRing.kidOf(newRSAKeysEntity.getPublic_key())));
+                updateKeyRingAfterCommit(newRSAKeysEntity, null);
             }
         } catch (NoSuchAlgorithmException e) {
         }
     }
+
+    //מעדכן את המפתחות שבזיכרון רק אחרי שהשמירה בבסיס הנתונים הצליחה
+    private void updateKeyRingAfterCommit(RSAKeysEntity current, RSAKeysEntity previous) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            keyRing.update(current, previous);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                keyRing.update(current, previous);
+            }
+        });
+    }
 }
 
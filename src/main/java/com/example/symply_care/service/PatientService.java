@@ -2,27 +2,43 @@ package com.example.symply_care.service;
 
 import com.example.symply_care.controller.RabbitMQController;
 import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.dto.PageDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
 import com.example.symply_care.dto.PatientDTO;
 import com.example.symply_care.entity.*;
+import com.example.symply_care.mapper.PatientMapper;
 import com.example.symply_care.repository.*;
+import com.example.symply_care.util.CountRows;
+import com.example.symply_care.util.Paging;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class PatientService {
+    private static final int SUMMARY_RECENT_ITEMS = 5;
+    private static final Sort INQUIRIES_ORDER = Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "id"));
+    private static final Sort APPOINTMENTS_ORDER = Sort.by(Sort.Direction.ASC, "startsAt").and(Sort.by(Sort.Direction.ASC, "id"));
+
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
 
@@ -30,65 +46,53 @@ public class PatientService {
     private final RoleRepository roleRepository;
     private final InquiriesRepository inquiriesRepository;
     private final AppointmentsRepository appointmentsRepository;
+    private final AppointmentService appointmentService;
     private final RabbitMQController rabbitMQController;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProfileImageService profileImageService;
+    private final PatientMapper patientMapper;
     @Autowired
     @Lazy
     private DoctorService doctorService;
     private final PasswordEncoder passwordEncoder=  new BCryptPasswordEncoder();
 
 
-    public PatientService(PatientRepository patientRepository, DoctorRepository doctorRepository, UsersRepository usersRepository, RoleRepository roleRepository, InquiriesRepository inquiriesRepository, AppointmentsRepository appointmentsRepository, RabbitMQController rabbitMQController, PasswordEncoder passwordEncoder) {
+    public PatientService(PatientRepository patientRepository, DoctorRepository doctorRepository, UsersRepository usersRepository, RoleRepository roleRepository, InquiriesRepository inquiriesRepository, AppointmentsRepository appointmentsRepository, AppointmentService appointmentService, RabbitMQController rabbitMQController, ApplicationEventPublisher eventPublisher, ProfileImageService profileImageService, PatientMapper patientMapper, PasswordEncoder passwordEncoder) {
         this.patientRepository = patientRepository;
         this.doctorRepository = doctorRepository;
         this.usersRepository = usersRepository;
         this.roleRepository = roleRepository;
         this.inquiriesRepository = inquiriesRepository;
         this.appointmentsRepository = appointmentsRepository;
+        this.appointmentService = appointmentService;
         this.rabbitMQController = rabbitMQController;
+        this.eventPublisher = eventPublisher;
+        this.profileImageService = profileImageService;
+        this.patientMapper = patientMapper;
     }
 
-    @Transactional
-    public PatientDTO mapPatientToPatientDTO(Patient patient) {
-        if (patient != null) {
-            PatientDTO patientDTO = new PatientDTO();
-            patientDTO.setId(patient.getId());
-            patientDTO.setFirstName(patient.getFirstName());
-            patientDTO.setLastName(patient.getLastName());
-            patientDTO.setEmail(patient.getEmail());
-            patientDTO.setCity(patient.getCity());
-            patientDTO.setCountry(patient.getCountry());
-            patientDTO.setStreet(patient.getStreet());
-            System.out.println(patient.getFirstName());
-            patientDTO.setBirthDay(patient.getBirthDay());
-            patientDTO.setImageData(patient.getImageData());
-            patientDTO.setDoctors(patient.getDoctors());
-            patientDTO.setInquiriesList(getInquiriesOfPatient(patient.getId()));
-            patientDTO.setAppointments(getAppointmentsOfPatient(patient.getId()));
-            return patientDTO;
-        }
-        return null;
-    }
-    public Date convertStringToDate(String dateString) throws ParseException {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-        return sdf.parse(dateString);
+    private PatientDTO mapPatientToPatientDTO(Patient patient) {
+        return patient == null ? null : mapPatientsToPatientDTOs(List.of(patient)).get(0);
     }
-    @Transactional
-    public Patient mapPatientDTOToPatient(PatientDTO patientDTO) {
-        Patient patient = new Patient();
-        patient.setId(patientDTO.getId());
-        patient.setFirstName(patientDTO.getFirstName());
-        patient.setLastName(patientDTO.getLastName());
-        patient.setEmail(patientDTO.getEmail());
-        patient.setCity(patientDTO.getCity());
-        patient.setCountry(patientDTO.getCountry());
-        patient.setStreet(patientDTO.getStreet());
-        patient.setBirthDay(patientDTO.getBirthDay());
-        patient.setImageData(patientDTO.getImageData());
-        patient.setPassword(patientDTO.getPassword());
-        patient.setInquiries(getInquiriesOfPatient(patientDTO.getId()));
-        patient.setDoctors(patientDTO.getDoctors());
-        patient.setAppointments(getAppointmentsOfPatient(patientDTO.getId()));
-        return patient;
+
+    //הפניות והתורים של כל המטופלים נטענים בשתי שאילתות, והרופאים של כל מטופל נטענים במנות
+    public List<PatientDTO> mapPatientsToPatientDTOs(List<Patient> patients) {
+        if (patients.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> ids = patients.stream().map(Patient::getId).toList();
+        Map<Long, List<Inquiries>> inquiries = inquiriesRepository.findAllByPatientIdIn(ids, INQUIRIES_ORDER).stream()
+                .collect(Collectors.groupingBy(inquiry -> inquiry.getPatient().getId()));
+        Map<Long, List<Appointments>> appointments = appointmentsRepository.findAllByPatientIdIn(ids, APPOINTMENTS_ORDER).stream()
+                .collect(Collectors.groupingBy(appointment -> appointment.getPatient().getId()));
+        List<PatientDTO> patientDTOS = new ArrayList<>();
+        for (Patient patient : patients) {
+            PatientDTO patientDTO = patientMapper.toPatientDTO(patient);
+            patientDTO.setInquiriesList(inquiries.getOrDefault(patient.getId(), new ArrayList<>()));
+            patientDTO.setAppointments(appointments.getOrDefault(patient.getId(), new ArrayList<>()));
+            patientDTOS.add(patientDTO);
+        }
+        return patientDTOS;
     }
 
     @Transactional
@@ -118,12 +122,12 @@ public class PatientService {
     @Transactional
 
     public List<PatientDTO> getAllPatients() {
-        List<Patient> patients = patientRepository.findAll();
-        List<PatientDTO> patientDTOS = new ArrayList<>();
-        for (int i = 0; i < patients.size(); i++) {
-            patientDTOS.add(mapPatientToPatientDTO(patients.get(i)));
-        }
-        return patientDTOS;
+        return mapPatientsToPatientDTOs(patientRepository.findAll());
+    }
+
+    @Transactional
+    public List<PatientSummaryDTO> getAllPatientSummaries() {
+        return mapPatientsToSummaries(patientRepository.findAll());
     }
     @Transactional
 
@@ -178,6 +182,7 @@ public class PatientService {
         Optional<Users> user = usersRepository.findByEmail(patient.getEmail());
         usersRepository.delete(user.get());
         patientRepository.delete(patient);
+        eventPublisher.publishEvent(new UserCredentialsChangedEvent(patient.getEmail()));
     }
     @Transactional
     public String deleteAppointment(Long id) throws Exception {
@@ -194,48 +199,106 @@ public class PatientService {
         doctorAppointments.remove(optionalAppointment.get());
         doctor.setAppointments(doctorAppointments);
         appointmentsRepository.delete(optionalAppointment.get());
+        appointmentService.onAppointmentDeleted(optionalAppointment.get());
         return "Appointment deleted successfully";
     }
     @Transactional
 
     public List<DoctorDTO> getDoctorsOfPatient(Long id) {
-        Patient patient = patientRepository.findById(id)
+        Patient patient = patientRepository.findWithDoctorsById(id)
                 .orElseThrow(() -> new NoSuchElementException("Patient not found with id: " + id));
 
         List<Doctor> doctors = patient.getDoctors();
 
-        return doctors.stream()
-                .map(doctorService::mapDoctorToDoctorDTO)
-                .collect(Collectors.toList());
+        return doctorService.mapDoctorsToDoctorDTOs(doctors);
     }
+
     @Transactional
-    public List<Inquiries> getInquiriesOfPatient(Long id) {
-        List<Inquiries> userInquiries = new ArrayList<>();
+    public List<DoctorSummaryDTO> getDoctorSummariesOfPatient(Long id) {
+        Patient patient = patientRepository.findWithDoctorsById(id)
+                .orElseThrow(() -> new NoSuchElementException("Patient not found with id: " + id));
+        return doctorService.mapDoctorsToSummaries(patient.getDoctors());
+    }
+
+    @Transactional
+    public PageDTO<DoctorSummaryDTO> getDoctorsOfPatient(Long id, Integer page, Integer size) {
+        requirePatient(id);
+        Page<Doctor> doctors = patientRepository.findDoctorsPage(id,
+                Paging.of(page, size, null, Sort.Direction.ASC, "lastName"));
+        return PageDTO.of(doctors, doctorService.mapDoctorsToSummaries(doctors.getContent()));
+    }
+
+    //פרטי המטופל עם מספרים, הפניות האחרונות והתורים הקרובים
+    @Transactional
+    public PatientSummaryDTO getPatientSummary(Long id) {
         Patient patient = patientRepository.findById(id)
                 .orElseThrow(() -> new NoSuchElementException("Patient not found with id: " + id));
-        List<Inquiries> patientInquiries = patient.getInquiries();
-        for (Inquiries inquiry : patientInquiries) {
-            Inquiries masterInquiry = inquiriesRepository.findById(inquiry.getId())
-                    .orElseThrow(() -> new NoSuchElementException("Inquiry not found with id: " + inquiry.getId()));
-            userInquiries.add(masterInquiry);
+        PatientSummaryDTO summary = mapPatientsToSummaries(List.of(patient)).get(0);
+        summary.setRecentInquiries(inquiriesRepository.findRecentByPatientId(id, PageRequest.of(0, SUMMARY_RECENT_ITEMS)));
+        summary.setUpcomingAppointments(appointmentsRepository.findUpcomingByPatientId(id, Instant.now(),
+                PageRequest.of(0, SUMMARY_RECENT_ITEMS)));
+        return summary;
+    }
+
+    //המספרים של כל המטופלים ברשימה נטענים בשלוש שאילתות, בלי לטעון את האוספים עצמם
+    public List<PatientSummaryDTO> mapPatientsToSummaries(List<Patient> patients) {
+        if (patients.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> ids = patients.stream().map(Patient::getId).toList();
+        Map<Long, Object[]> doctors = CountRows.byId(patientRepository.countDoctors(ids));
+        Map<Long, Object[]> inquiries = CountRows.byId(inquiriesRepository.countByPatientIds(ids));
+        Map<Long, Object[]> appointments = CountRows.byId(appointmentsRepository.countByPatientIds(ids, Instant.now()));
+        List<PatientSummaryDTO> summaries = new ArrayList<>();
+        for (Patient patient : patients) {
+            PatientSummaryDTO summary = patientMapper.toSummary(patient);
+            Object[] doctorCounts = doctors.get(patient.getId());
+            summary.setDoctorsCount(doctorCounts == null ? 0 : (Long) doctorCounts[1]);
+            Object[] inquiryCounts = inquiries.get(patient.getId());
+            if (inquiryCounts != null) {
+                summary.setInquiriesCount((Long) inquiryCounts[1]);
+                summary.setLastInquiryAt((LocalDateTime) inquiryCounts[2]);
+            }
+            Object[] appointmentCounts = appointments.get(patient.getId());
+            if (appointmentCounts != null) {
+                summary.setAppointmentsCount((Long) appointmentCounts[1]);
+                summary.setNextAppointmentAt((Instant) appointmentCounts[2]);
+            }
+            summaries.add(summary);
         }
-        System.out.println(userInquiries);
-        return userInquiries;
+        return summaries;
+    }
+
+    @Transactional
+    public List<Inquiries> getInquiriesOfPatient(Long id) {
+        requirePatient(id);
+        return inquiriesRepository.findAllByPatientId(id, INQUIRIES_ORDER);
     }
 
     public List<Appointments> getAppointmentsOfPatient(Long id) {
-        List<Appointments> userAppointments = new ArrayList<>();
-        Patient patient = patientRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("Patient not found with id: " + id));
-        List<Appointments> patientAppointments = patient.getAppointments();
-        for (Appointments appointment : patientAppointments) {
-            Appointments masterAppointment = appointmentsRepository.findById(appointment.getId())
-                    .orElseThrow(() -> new NoSuchElementException("Appointment not found with id: " + appointment.getId()));
-            userAppointments.add(masterAppointment);
+        requirePatient(id);
+        return appointmentsRepository.findAllByPatientId(id, APPOINTMENTS_ORDER);
+    }
+
+    //direction הוא asc או desc, ברירת המחדל מהחדש לישן
+    public PageDTO<Inquiries> getInquiriesOfPatient(Long id, Integer page, Integer size, String direction) {
+        requirePatient(id);
+        return PageDTO.of(inquiriesRepository.findPageByPatientId(id,
+                Paging.of(page, size, direction, Sort.Direction.DESC, "createdAt")));
+    }
+
+    public PageDTO<Appointments> getAppointmentsOfPatient(Long id, Integer page, Integer size, String direction) {
+        requirePatient(id);
+        return PageDTO.of(appointmentsRepository.findPageByPatientId(id,
+                Paging.of(page, size, direction, Sort.Direction.DESC, "startsAt")));
+    }
+
+    private void requirePatient(Long id) {
+        if (!patientRepository.existsById(id)) {
+            throw new NoSuchElementException("Patient not found with id: " + id);
         }
-        System.out.println(userAppointments);
-        return userAppointments;
     }
+
     public List<Appointments> getAppointments() {
         return appointmentsRepository.findAll();    }
 
@@ -251,17 +314,18 @@ public class PatientService {
        List<Patient> patients = doctor.getPatients();
        patients.add(patient);
        doctor.setPatients(patients);
-        return doctors.stream().
-                map(doctorService::mapDoctorToDoctorDTO)
-                .collect(Collectors.toList());
+        return doctorService.mapDoctorsToDoctorDTOs(doctors);
     }
 
-    @Transactional
+    //READ COMMITTED: הרופא והמטופל נקראים לפני הנעילות של AppointmentService.book. בREPEATABLE READ (ברירת המחדל בMySQL)
+    //הקריאה הראשונה קובעת snapshot, ובדיקת החפיפה אחרי הנעילה לא הייתה רואה תור שנשמר בינתיים בטרנזקציה אחרת
+    @org.springframework.transaction.annotation.Transactional(isolation = Isolation.READ_COMMITTED)
     public List<Appointments> addAppointmentToPatient(Long patientID, Map<String, Object> appointmentData) throws ParseException {
         Map<String, Object> doctorData = (Map<String, Object>) appointmentData.get("doctor");
         Long doctorID = ((Number) doctorData.get("id")).longValue();
 
         String date = (String) appointmentData.get("date");
+        Integer durationMinutes = appointmentData.get("durationMinutes") instanceof Number number ? number.intValue() : null;
 
         Optional<Patient> optionalPatient = patientRepository.findById(patientID);
         if (optionalPatient.isPresent()) {
@@ -269,41 +333,21 @@ public class PatientService {
             Optional<Doctor> optionalDoctor = doctorRepository.findById(doctorID);
             if (optionalDoctor.isPresent()) {
                 Doctor doctor = optionalDoctor.get();
-                Date now = new Date();
-                Date date2 = convertStringToDate(date);
-                List<Appointments> doctorAppointments = doctor.getAppointments();
-                List<Appointments> patientAppointments = patient.getAppointments();
-                for (Appointments patientAppointment : patientAppointments) {
-                    if (convertStringToDate(patientAppointment.getDate()).equals(date2)) {
-                        throw new NoSuchElementException("The patient already has an appointment on this date");
-                    }
-                }
-                for (Appointments doctorAppointment : doctorAppointments) {
-                    if (convertStringToDate(doctorAppointment.getDate()).equals(date2)) {
-                        throw new NoSuchElementException("You already have an appointment on this date");
-                    }
-                }
-                if (date2.after(now)) {
-                    Appointments appointment = new Appointments();
-                    appointment.setPatient(patient);
-                    appointment.setDoctor(doctor);
-                    appointment.setDate(date);
-                    List<Appointments> appointments = patient.getAppointments();
-                    appointments.add(appointment);
-                    patient.setAppointments(appointments);
-                    List<Appointments> appointments2 = doctor.getAppointments();
-                    appointments2.add(appointment);
-                    doctor.setAppointments(appointments2);
-                    appointmentsRepository.save(appointment);
-                    RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
-                    rabbitMQMessage.setAppointmentDate(date);
-                    rabbitMQMessage.setDoctorEmail(doctor.getEmail());
-                    rabbitMQMessage.setPatientEmail(patient.getEmail());
-                    rabbitMQController.sendMessage(rabbitMQMessage);
-                    return appointments;
-                } else {
-                    throw new NoSuchElementException("The date has already passed");
-                }
+                Appointments appointment = appointmentService.book(doctor, patient, date, durationMinutes);
+                List<Appointments> appointments = patient.getAppointments();
+                appointments.add(appointment);
+                patient.setAppointments(appointments);
+                List<Appointments> appointments2 = doctor.getAppointments();
+                appointments2.add(appointment);
+                doctor.setAppointments(appointments2);
+                RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
+                rabbitMQMessage.setAppointmentDate(appointment.getDate());
+                rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+                rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
+                rabbitMQMessage.setPatientEmail(patient.getEmail());
+                rabbitMQMessage.setPatientName(RabbitMQMessage.displayName(patient.getFirstName(), patient.getLastName()));
+                rabbitMQController.sendMessage(rabbitMQMessage);
+                return appointments;
             } else {
                 throw new NoSuchElementException("Doctor not found with id: " + optionalDoctor.get().getId());
             }
@@ -380,9 +424,11 @@ public class PatientService {
                 patientRepository.save(patient);
                 RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
                 rabbitMQMessage.setDoctorEmail(doctor.getEmail());
+                rabbitMQMessage.setDoctorName(RabbitMQMessage.displayName(doctor.getFirstName(), doctor.getLastName()));
                 rabbitMQMessage.setSenderInquiryEmail(patient.getEmail());
                 rabbitMQMessage.setQuestion(inquiry.getSymptoms());
                 rabbitMQMessage.setPatientEmail(patient.getEmail());
+                rabbitMQMessage.setPatientName(RabbitMQMessage.displayName(patient.getFirstName(), patient.getLastName()));
                 rabbitMQController.sendMessage(rabbitMQMessage);
                 return patientInquiries;
             }else{
@@ -422,6 +468,7 @@ public class PatientService {
     }
     @Transactional
     public Users addRoleToPatient(Long id, String roleName){
+        AdminRoleProvisioner.requireAssignable(roleName);
         Role role = roleRepository.findByRole(roleName);
         System.out.println(roleRepository.findByRole(roleName));
         Optional<Patient> patient = patientRepository.findById(id);
@@ -432,6 +479,7 @@ public class PatientService {
         userNew.setRoles(roles);
         if(userNew != null){
             usersRepository.save(userNew);
+            eventPublisher.publishEvent(new UserCredentialsChangedEvent(userNew.getEmail()));
         }
         return userNew;
     }
@@ -439,7 +487,7 @@ public class PatientService {
         Optional<Patient> patient = patientRepository.findById(id);
         try {
             if (!file.isEmpty()) {
-                patient.get().setImageData(file.getBytes());
+                profileImageService.applyImage(patient.get(), file.getBytes());
                 patientRepository.save(patient.get());
                 System.out.println("File uploaded successfully");
             }
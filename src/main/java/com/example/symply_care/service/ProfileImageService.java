@@ -0,0 +1,235 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.dto.ImageMetadata;
+import com.example.symply_care.entity.User;
+import com.example.symply_care.repository.DoctorRepository;
+import com.example.symply_care.repository.PatientRepository;
+import com.example.symply_care.util.ProfileImageUrls;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+//תמונות הפרופיל של רופאים ומטופלים: שמירה בהעלאה (כולל תמונה מוקטנת) והגשה עם ETag/Last-Modified ותמיכה בRange
+@Service
+public class ProfileImageService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProfileImageService.class);
+    private static final String THUMBNAIL_CONTENT_TYPE = MediaType.IMAGE_JPEG_VALUE;
+    //הפורמטים שמתקבלים, לפי השם שמחזיר הImageReader. סוג התוכן נקבע רק מכאן ולא ממה שהלקוח הצהיר,
+    //כדי שקובץ HTML/SVG לא יוגש כדף מהדומיין של הAPI (התמונות של הרופאים פתוחות לכולם)
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpeg", MediaType.IMAGE_JPEG_VALUE,
+            "png", MediaType.IMAGE_PNG_VALUE,
+            "gif", MediaType.IMAGE_GIF_VALUE,
+            "bmp", "image/bmp");
+
+    //Tomcat שולח את הקובץ ישירות מהדיסק לsocket (sendfile) אם מגדירים את השדות האלה בבקשה
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+    private final ImageBlobStore imageBlobStore;
+    private final int thumbnailSize;
+    //קובץ קטן יכול להצהיר על תמונה ענקית, והפענוח מקצה width*height פיקסלים בזיכרון. לכן בודקים את הגודל לפני הפענוח
+    private final long maxPixels;
+
+    public ProfileImageService(DoctorRepository doctorRepository,
+                               PatientRepository patientRepository,
+                               ImageBlobStore imageBlobStore,
+                               @Value("${profile-image.thumbnail-size:200}") int thumbnailSize,
+                               @Value("${profile-image.max-pixels:25000000}") long maxPixels) {
+        this.doctorRepository = doctorRepository;
+        this.patientRepository = patientRepository;
+        this.imageBlobStore = imageBlobStore;
+        this.thumbnailSize = thumbnailSize;
+        this.maxPixels = maxPixels;
+    }
+
+    //שומר את התמונה ואת התמונה המוקטנת בImageBlobStore ומעדכן את ההפניות. השמירה של המשתמש נעשית על ידי מי שקרא
+    public void applyImage(User user, byte[] data) {
+        ImageHeader header = readHeader(data);
+        if (header == null) {
+            throw new IllegalArgumentException("Not a supported image, expected one of " + CONTENT_TYPES.keySet());
+        }
+        if (exceedsPixelLimit(header.size())) {
+            throw new IllegalArgumentException(String.format("Image is too large: %dx%d", header.size().width, header.size().height));
+        }
+        user.setImageHash(imageBlobStore.store(data));
+        user.setImageContentType(header.contentType());
+        //Last-Modified נשלח ברמת שניות, לכן שומרים באותה רמה כדי שההשוואה תעבוד
+        user.setImageUpdatedAt(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        byte[] thumbnail = createThumbnail(data);
+        user.setThumbnailHash(thumbnail != null ? imageBlobStore.store(thumbnail) : null);
+    }
+
+    public ResponseEntity<Resource> getDoctorImage(Long id, boolean thumbnail, String version, WebRequest request) {
+        //תמונות של רופאים מוצגות ברשימה הציבורית ולכן מותר לשמור אותן גם בcache משותף
+        return serve(doctorRepository.findImageMetadataById(id), thumbnail, version, true, request);
+    }
+
+    public ResponseEntity<Resource> getPatientImage(Long id, boolean thumbnail, String version, WebRequest request) {
+        return serve(patientRepository.findImageMetadataById(id), thumbnail, version, false, request);
+    }
+
+    private ResponseEntity<Resource> serve(Optional<ImageMetadata> metadata, boolean thumbnail,
+                                           String version, boolean publicImage, WebRequest request) {
+        if (metadata.isEmpty() || metadata.get().getHash() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        ImageMetadata image = metadata.get();
+        //תמונה שלא ניתן היה להקטין - מחזירים את המקורית
+        boolean useThumbnail = thumbnail && image.getThumbnailHash() != null;
+        String hash = useThumbnail ? image.getThumbnailHash() : image.getHash();
+        //סוג שנשמר לפני הבדיקה (או שלא נשמר בכלל) לא מוגש כמו שהוא, אלא כקובץ להורדה
+        String contentType = useThumbnail ? THUMBNAIL_CONTENT_TYPE : image.getContentType();
+        boolean knownImage = contentType != null && CONTENT_TYPES.containsValue(contentType);
+        String eTag = "\"" + hash + "\"";
+        long lastModified = image.getUpdatedAt() != null ? image.getUpdatedAt().toEpochMilli() : -1;
+
+        if (request.checkNotModified(eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        Path file = imageBlobStore.path(hash);
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            LOGGER.error("Image file is missing: " + hash);
+            return ResponseEntity.notFound().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(cacheControl(image, version, publicImage))
+                .contentType(knownImage ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, (knownImage
+                        ? ContentDisposition.inline().filename(hash + "." + MediaType.parseMediaType(contentType).getSubtype())
+                        : ContentDisposition.attachment().filename(hash)).build().toString())
+                .header("X-Content-Type-Options", "nosniff");
+
+        //בקשה לכל הקובץ: Tomcat שולח אותו בsendfile בלי להעתיק לזיכרון של הJVM
+        //בקשת Range (או שרת בלי sendfile) עוברת דרך spring שיודע להחזיר 206 עם החלק המבוקש
+        HttpServletRequest servletRequest = request instanceof ServletWebRequest servletWebRequest ? servletWebRequest.getRequest() : null;
+        if (servletRequest != null
+                && Boolean.TRUE.equals(servletRequest.getAttribute(SENDFILE_SUPPORT))
+                && servletRequest.getHeader(HttpHeaders.RANGE) == null
+                && "GET".equals(servletRequest.getMethod())) {
+            servletRequest.setAttribute(SENDFILE_FILENAME, file.toString());
+            servletRequest.setAttribute(SENDFILE_START, 0L);
+            servletRequest.setAttribute(SENDFILE_END, size);
+            return response.contentLength(size).build();
+        }
+        return response.body(new FileSystemResource(file));
+    }
+
+    //כתובת עם הגרסה הנוכחית (?v=) לא משתנה לעולם. בלי גרסה הדפדפן חייב לבדוק מחדש (ומקבל 304)
+    private static CacheControl cacheControl(ImageMetadata image, String version, boolean publicImage) {
+        CacheControl cacheControl = version != null && version.equals(ProfileImageUrls.version(image.getHash()))
+                ? CacheControl.maxAge(Duration.ofDays(365)).immutable()
+                : CacheControl.noCache();
+        return publicImage ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+    }
+
+    byte[] createThumbnail(byte[] data) {
+        ImageHeader header = readHeader(data);
+        if (header == null || exceedsPixelLimit(header.size())) {
+            return null;
+        }
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(data));
+            if (source == null) {
+                return null;
+            }
+            double scale = Math.min(1.0, (double) thumbnailSize / Math.max(source.getWidth(), source.getHeight()));
+            int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+            BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = target.createGraphics();
+            //JPEG לא תומך בשקיפות, לכן רקע לבן
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+            graphics.dispose();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(target, "jpg", out);
+            return out.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not create thumbnail: " + e.getMessage());
+            return null;
+        }
+    }
+
+    record ImageHeader(Dimension size, String contentType) {
+    }
+
+    //קורא רק את הheader של התמונה, בלי לפענח את הפיקסלים. null אם זה לא אחד מהפורמטים בCONTENT_TYPES
+    static ImageHeader readHeader(byte[] data) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                String contentType = CONTENT_TYPES.get(reader.getFormatName().toLowerCase(Locale.ROOT));
+                if (contentType == null) {
+                    return null;
+                }
+                reader.setInput(input, true, true);
+                return new ImageHeader(new Dimension(reader.getWidth(0), reader.getHeight(0)), contentType);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private boolean exceedsPixelLimit(Dimension size) {
+        return (long) size.width * size.height > maxPixels;
+    }
+
+    //סוג התוכן לפי הפורמט שזוהה, או null אם זה לא פורמט תמונה מוכר
+    static String detectContentType(byte[] data) {
+        ImageHeader header = readHeader(data);
+        return header != null ? header.contentType() : null;
+    }
+}
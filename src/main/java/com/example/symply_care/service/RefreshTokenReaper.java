@@ -0,0 +1,56 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+//מוחק ברקע refresh tokens שפג תוקפם, במנות קטנות לפי expiry_date (יש עליו אינדקס)
+//כמות השורות שנמחקו זמינה ב /actuator/metrics/refresh_tokens.reaped
+@Service
+public class RefreshTokenReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenReaper.class);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final Counter reapedCounter;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    public RefreshTokenReaper(RefreshTokenRepository refreshTokenRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${refresh-token.reaper.batch-size:1000}") int batchSize,
+                              @Value("${refresh-token.reaper.max-batches-per-run:100}") int maxBatchesPerRun) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.reapedCounter = Counter.builder("refresh_tokens.reaped")
+                .description("Expired refresh tokens deleted by the background reaper")
+                .register(meterRegistry);
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${refresh-token.reaper.interval-millis:600000}")
+    public int reapExpiredTokens() {
+        Instant now = Instant.now();
+        int total = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            int deleted = refreshTokenRepository.deleteExpiredBatch(now, batchSize);
+            total += deleted;
+            if (deleted < batchSize) {
+                break;
+            }
+        }
+        if (total > 0) {
+            reapedCounter.increment(total);
+            LOGGER.info(String.format("Reaped %d expired refresh tokens", total));
+        }
+        return total;
+    }
+}
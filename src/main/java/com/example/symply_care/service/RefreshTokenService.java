@@ -3,55 +3,44 @@ package com.example.symply_care.service;
 
 import com.example.symply_care.dto.AuthenticationResponse;
 import com.example.symply_care.entity.RefreshToken;
-import com.example.symply_care.entity.User;
 import com.example.symply_care.entity.Users;
 import com.example.symply_care.exceptions.TokenRefreshException;
 import com.example.symply_care.repository.RefreshTokenRepository;
 import com.example.symply_care.repository.UsersRepository;
 import com.example.symply_care.util.JwtProperties;
 import com.example.symply_care.util.JwtUtil;
+import com.example.symply_care.util.TokenHashing;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
+import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
+//הtoken עצמו נשלח רק ללקוח. בבסיס הנתונים נשמר הhash שלו, ולכן החיפוש וההחלפה נעשים לפי הhash
 @Service
 @RequiredArgsConstructor
 public class RefreshTokenService {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     final private RefreshTokenRepository refreshTokenRepository;
     final private UsersRepository usersRepository;
-    final private CustomUserDetailsService customUserDetailsService;
     final private JwtUtil jwtUtil;
 
+    //מחזיר את הtoken שיש לשלוח ללקוח
     @Transactional
-    public RefreshToken createRefreshToken(String email) {
-
-        Optional<Users> user = usersRepository.findByEmail(email);
-        if (user.isEmpty()) {
-            throw new RuntimeException("User not found with email: " + email);
-        }
-
-        Optional<RefreshToken> refreshTokenOptional = refreshTokenRepository.findByUser(user.get());
-        if (refreshTokenOptional.isPresent()) {
-            deleteRefreshTokenForUser(email);
-        }
+    public String createRefreshToken(String email) {
+        Long userId = usersRepository.findIdByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found with email: " + email));
 
-        try {
-            RefreshToken newRefreshToken = RefreshToken.builder()
-                    .user(user.get())
-                    .token(UUID.randomUUID().toString())
-                    .expiryDate(Instant.now().plusMillis(JwtProperties.EXPIRATION_TIME_FOR_REFRESH_TOKEN))
-                    .build();
-
-            return refreshTokenRepository.save(newRefreshToken);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Error creating refresh token");
-        }
+        String token = newTokenValue();
+        refreshTokenRepository.upsertForUser(userId, TokenHashing.sha256Hex(token), newExpiryDate());
+        return token;
     }
 
    @Transactional
@@ -61,37 +50,44 @@ public class RefreshTokenService {
         refreshTokenRepository.flush();
     }
 
-    public Optional<RefreshToken> findByToken(String token) {
-        return refreshTokenRepository.findByToken(token);
-    }
-
-    public boolean verifyExpiration(RefreshToken refreshToken) {
+    //שתי פקודות: SELECT אחד של הtoken עם המשתמש וההרשאות (בשביל הJWT החדש), ו UPDATE אחד שמחליף אותו רק אם הגרסה לא השתנתה
+    //tokens שפג תוקפם לא נמחקים כאן - ההתחברות הבאה דורסת אותם
+    @Transactional
+    public AuthenticationResponse refresh(String refreshToken) {
+        RefreshToken current = refreshTokenRepository.findWithUserByToken(TokenHashing.sha256Hex(refreshToken))
+                .orElseThrow(() -> new TokenRefreshException("Refresh token is invalid"));
 
-        if (refreshToken.getExpiryDate().compareTo(Instant.now()) < 0) {
-            refreshTokenRepository.delete(refreshToken);
-            refreshTokenRepository.flush();
+        if (current.getExpiryDate().isBefore(Instant.now())) {
             System.out.println("Refresh Token has expired. Please login again");
-            return false;
+            throw new TokenRefreshException("Refresh token has expired. Please log in again");
+        }
+
+        String newRefreshToken = newTokenValue();
+        int rotated = refreshTokenRepository.rotate(current.getId(), current.getVersion(),
+                TokenHashing.sha256Hex(newRefreshToken), newExpiryDate());
+        if (rotated == 0) {
+            //אותו token כבר הוחלף בבקשה מקבילה
+            throw new TokenRefreshException("Refresh token is invalid");
         }
 
-        return true;
+        Users user = current.getUser();
+        String newJwtToken = jwtUtil.generateToken(user);
+        return new AuthenticationResponse(newJwtToken, newRefreshToken, mapRolesToAuthorities(user));
     }
 
-    @Transactional
-    public AuthenticationResponse refresh(String refreshToken) {
-        Optional<RefreshToken> refreshTokenEntity = findByToken(refreshToken);
-        refreshTokenEntity.orElseThrow(() -> new TokenRefreshException("Refresh token is invalid"));
+    private static String newTokenValue() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
 
-        RefreshToken validRefreshToken = refreshTokenEntity.get();
-        if (!verifyExpiration(validRefreshToken)) {
-            throw new TokenRefreshException("Refresh token has expired. Please log in again");
-        }
+    private static Instant newExpiryDate() {
+        return Instant.now().plusMillis(JwtProperties.EXPIRATION_TIME_FOR_REFRESH_TOKEN);
+    }
 
-        String userEmail = validRefreshToken.getUser().getEmail();
-        UserDetails userDetails = customUserDetailsService.loadUserByUsername(userEmail);
-        String newJwtToken = jwtUtil.generateTokenFromUsername(userDetails.getUsername());
-        RefreshToken newRefreshToken = createRefreshToken(userEmail);
-        return new AuthenticationResponse(newJwtToken, newRefreshToken.getToken(), userDetails.getAuthorities());
+    private static List<GrantedAuthority> mapRolesToAuthorities(Users user) {
+        return user.getRoles().stream()
+                .map(role -> (GrantedAuthority) new SimpleGrantedAuthority(role.getRole()))
+                .toList();
     }
 }
-
@@ -0,0 +1,10 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.TokenRevocationMessage;
+
+//שולח ביטול token לשאר השרתים. בפועל RabbitMQProducer, ובבדיקות אפשר להעביר את ההודעות ישירות בזיכרון
+@FunctionalInterface
+public interface RevocationBroadcaster {
+
+    void broadcast(TokenRevocationMessage message);
+}
@@ -0,0 +1,278 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorAvailabilityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+//לוח זמנים בזיכרון לכל רופא: שעות העבודה שלו ומפה ממוינת של התורים העתידיים (התחלה -> סיום).
+//חיפוש תורים פנויים עובר רק על החלונות של שעות העבודה ובודק כל חלון מול המפה, בלי לגשת לבסיס הנתונים
+//בסיס הנתונים הוא המקור הקובע: שינויים מגיעים לכאן רק אחרי commit, והאינדקס נבנה מחדש מדי פעם כדי לקלוט שינויים משרתים אחרים
+@Component
+public class ScheduleIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleIndex.class);
+
+    public record Template(DayOfWeek dayOfWeek, LocalTime startTime, LocalTime endTime, int slotMinutes) {
+    }
+
+    public record Slot(Long doctorId, Instant startsAt, Instant endsAt) {
+    }
+
+    private static final class Calendar {
+        private volatile Specialization specialization;
+        private volatile List<Template> templates = List.of();
+        private final ConcurrentSkipListMap<Instant, Instant> busy = new ConcurrentSkipListMap<>();
+    }
+
+    private final DoctorAvailabilityRepository doctorAvailabilityRepository;
+    private final AppointmentsRepository appointmentsRepository;
+    private final TaskScheduler taskScheduler;
+    private final Duration reloadInterval;
+
+    private volatile Map<Long, Calendar> calendars = new ConcurrentHashMap<>();
+    //בזמן בנייה מחדש כל שינוי נרשם גם כאן, ומופעל שוב על האינדקס החדש לפני ההחלפה. נקרא ונכתב רק תחת swapLock
+    private Queue<Consumer<Map<Long, Calendar>>> journal;
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Object reloadMonitor = new Object();
+
+    public ScheduleIndex(DoctorAvailabilityRepository doctorAvailabilityRepository,
+                         AppointmentsRepository appointmentsRepository,
+                         TaskScheduler taskScheduler,
+                         @Value("${scheduling.index.reload-interval-millis:300000}") long reloadIntervalMillis) {
+        this.doctorAvailabilityRepository = doctorAvailabilityRepository;
+        this.appointmentsRepository = appointmentsRepository;
+        this.taskScheduler = taskScheduler;
+        this.reloadInterval = Duration.ofMillis(reloadIntervalMillis);
+    }
+
+    //הטריגר היחיד: טעינה ראשונה כשהאפליקציה מוכנה (אחרי AppointmentService.backfillLegacyAppointments), ומשם כל reloadInterval
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reload();
+        taskScheduler.scheduleWithFixedDelay(this::reload, Instant.now().plus(reloadInterval), reloadInterval);
+    }
+
+    //הבנייה וההחלפה הן צעד אחד מבחינת מי שמשנה את האינדקס: מרגע שהjournal נפתח (תחת הנעילה) כל שינוי נרשם בו,
+    //והוא מופעל על האינדקס החדש ומוחלף באותה נעילה. כך שינוי שהגיע אחרי הקריאה מבסיס הנתונים לא הולך לאיבוד
+    public void reload() {
+        synchronized (reloadMonitor) {
+            Queue<Consumer<Map<Long, Calendar>>> pending = new ConcurrentLinkedQueue<>();
+            swapLock.writeLock().lock();
+            try {
+                journal = pending;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            Map<Long, Calendar> fresh = null;
+            try {
+                fresh = load();
+            } finally {
+                swapLock.writeLock().lock();
+                try {
+                    //אם הטעינה נכשלה נשארים עם האינדקס הקיים, שכבר כולל את כל השינויים
+                    if (fresh != null) {
+                        for (Consumer<Map<Long, Calendar>> change : pending) {
+                            change.accept(fresh);
+                        }
+                        calendars = fresh;
+                    }
+                    journal = null;
+                } finally {
+                    swapLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private Map<Long, Calendar> load() {
+        Map<Long, Calendar> fresh = new ConcurrentHashMap<>();
+        Map<Long, List<Template>> templates = new HashMap<>();
+        for (Object[] row : doctorAvailabilityRepository.findAllForIndex()) {
+            Long doctorId = (Long) row[0];
+            fresh.computeIfAbsent(doctorId, id -> new Calendar()).specialization = (Specialization) row[1];
+            templates.computeIfAbsent(doctorId, id -> new ArrayList<>())
+                    .add(new Template((DayOfWeek) row[2], (LocalTime) row[3], (LocalTime) row[4], (Integer) row[5]));
+        }
+        templates.forEach((doctorId, list) -> fresh.get(doctorId).templates = sorted(list));
+        int appointments = 0;
+        for (Object[] row : appointmentsRepository.findUpcomingForIndex(Instant.now())) {
+            fresh.computeIfAbsent((Long) row[0], id -> new Calendar()).busy.put((Instant) row[1], (Instant) row[2]);
+            appointments++;
+        }
+        LOGGER.debug(String.format("Schedule index loaded: %d doctors, %d upcoming appointments", fresh.size(), appointments));
+        return fresh;
+    }
+
+    public void setTemplatesAfterCommit(Long doctorId, Specialization specialization, List<Template> templates) {
+        List<Template> sortedTemplates = sorted(templates);
+        afterCommit(() -> mutate(map -> {
+            Calendar calendar = map.computeIfAbsent(doctorId, id -> new Calendar());
+            calendar.specialization = specialization;
+            calendar.templates = sortedTemplates;
+        }));
+    }
+
+    public void addBusyAfterCommit(Long doctorId, Instant startsAt, Instant endsAt) {
+        afterCommit(() -> mutate(map -> map.computeIfAbsent(doctorId, id -> new Calendar()).busy.put(startsAt, endsAt)));
+    }
+
+    public void removeBusyAfterCommit(Long doctorId, Instant startsAt) {
+        afterCommit(() -> mutate(map -> {
+            Calendar calendar = map.get(doctorId);
+            if (calendar != null) {
+                calendar.busy.remove(startsAt);
+            }
+        }));
+    }
+
+    public void removeDoctorAfterCommit(Long doctorId) {
+        afterCommit(() -> mutate(map -> map.remove(doctorId)));
+    }
+
+    public List<Template> templates(Long doctorId) {
+        Calendar calendar = calendars.get(doctorId);
+        return calendar == null ? List.of() : calendar.templates;
+    }
+
+    //התור צריך להיות כולו בתוך אחד מחלונות שעות העבודה של אותו יום.
+    //רופא שלא הגדיר שעות עבודה מקבל תורים בכל שעה, כמו לפני שנוספו שעות העבודה
+    public static boolean withinWorkingHours(List<Template> templates, Instant startsAt, Instant endsAt) {
+        if (templates.isEmpty()) {
+            return true;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        ZonedDateTime start = startsAt.atZone(zone);
+        ZonedDateTime end = endsAt.atZone(zone);
+        if (!start.toLocalDate().equals(end.toLocalDate())) {
+            return false;
+        }
+        for (Template template : templates) {
+            if (template.dayOfWeek() == start.getDayOfWeek()
+                    && !start.toLocalTime().isBefore(template.startTime())
+                    && !end.toLocalTime().isAfter(template.endTime())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //עד limit תורים פנויים של רופא בטווח [from, to), לפי הסדר
+    public List<Slot> freeSlots(Long doctorId, Instant from, Instant to, int limit) {
+        Calendar calendar = calendars.get(doctorId);
+        List<Slot> slots = new ArrayList<>();
+        if (calendar != null) {
+            collectFreeSlots(doctorId, calendar, from, to, limit, slots);
+        }
+        return slots;
+    }
+
+    //תורים פנויים של כל הרופאים בהתמחות, ממוינים לפי שעה
+    public List<Slot> freeSlotsBySpecialization(Specialization specialization, Instant from, Instant to, int limit) {
+        List<Slot> slots = new ArrayList<>();
+        for (Map.Entry<Long, Calendar> entry : calendars.entrySet()) {
+            if (entry.getValue().specialization == specialization) {
+                collectFreeSlots(entry.getKey(), entry.getValue(), from, to, limit, slots);
+            }
+        }
+        slots.sort(Comparator.comparing(Slot::startsAt).thenComparing(Slot::doctorId));
+        return slots.size() > limit ? new ArrayList<>(slots.subList(0, limit)) : slots;
+    }
+
+    private static void collectFreeSlots(Long doctorId, Calendar calendar, Instant from, Instant to, int limit, List<Slot> slots) {
+        List<Template> templates = calendar.templates;
+        if (templates.isEmpty() || !from.isBefore(to)) {
+            return;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate lastDay = to.atZone(zone).toLocalDate();
+        int found = 0;
+        for (LocalDate day = from.atZone(zone).toLocalDate(); !day.isAfter(lastDay); day = day.plusDays(1)) {
+            for (Template template : templates) {
+                if (template.dayOfWeek() != day.getDayOfWeek()) {
+                    continue;
+                }
+                int endMinute = template.endTime().toSecondOfDay() / 60;
+                for (int minute = template.startTime().toSecondOfDay() / 60;
+                     minute + template.slotMinutes() <= endMinute;
+                     minute += template.slotMinutes()) {
+                    Instant startsAt = day.atStartOfDay(zone).plusMinutes(minute).toInstant();
+                    if (startsAt.isBefore(from)) {
+                        continue;
+                    }
+                    if (!startsAt.isBefore(to)) {
+                        return;
+                    }
+                    Instant endsAt = startsAt.plus(template.slotMinutes(), ChronoUnit.MINUTES);
+                    if (!isBusy(calendar, startsAt, endsAt)) {
+                        slots.add(new Slot(doctorId, startsAt, endsAt));
+                        if (++found >= limit) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //התורים לא חופפים זה לזה, אבל בודקים את כל מה שהתחיל עד MAX_DURATION לפני החלון כדי לא לסמוך על זה
+    private static boolean isBusy(Calendar calendar, Instant startsAt, Instant endsAt) {
+        Instant earliestStart = startsAt.minus(AppointmentService.MAX_DURATION_MINUTES, ChronoUnit.MINUTES);
+        for (Instant busyEnd : calendar.busy.subMap(earliestStart, true, endsAt, false).values()) {
+            if (busyEnd.isAfter(startsAt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Template> sorted(List<Template> templates) {
+        List<Template> copy = new ArrayList<>(templates);
+        copy.sort(Comparator.comparing(Template::dayOfWeek).thenComparing(Template::startTime));
+        return List.copyOf(copy);
+    }
+
+    private void mutate(Consumer<Map<Long, Calendar>> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(calendars);
+            Queue<Consumer<Map<Long, Calendar>>> pending = journal;
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
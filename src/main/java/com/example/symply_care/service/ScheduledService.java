@@ -1,104 +1,111 @@
 package com.example.symply_care.service;
 
-import com.example.symply_care.entity.Appointments;
-import com.example.symply_care.entity.Doctor;
-import com.example.symply_care.entity.Inquiries;
-import com.example.symply_care.entity.Patient;
 import com.example.symply_care.repository.AppointmentsRepository;
-import com.example.symply_care.repository.DoctorRepository;
 import com.example.symply_care.repository.InquiriesRepository;
-import com.example.symply_care.repository.PatientRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
+//העברה לילית של תורים שעברו ופניות ישנות שלא נענו לארכיון (HistoryArchiveService), כדי שהטבלאות הפעילות יישארו קטנות
+//העבודה נעשית במנות: בוחרים מנה של מזהים לפי אינדקס, שומרים אותם בארכיון, מוחקים אותם מטבלאות הקישור ומהטבלה עצמה,
+//וכל מנה נשמרת בטרנזקציה משלה. כך לא טוענים את כל הטבלה לזיכרון ולא מחזיקים מנעולים לאורך כל הריצה
+//הניקוי רץ בכל השרתים באותו זמן: המזהים של מנה נבחרים עם FOR UPDATE SKIP LOCKED, כך ששני שרתים לא לוקחים את אותן שורות,
+//והאינדקס הייחודי על (kind, source_id) בhistory_archive מונע רשומה כפולה גם אם זה קורה בכל זאת
+//כמות השורות שהועברו ומשך הריצה זמינים ב /actuator/metrics/cleanup.archived ו cleanup.duration
 @Service
 @EnableScheduling
 public class ScheduledService {
-    AppointmentsRepository appointmentsRepository;
-    PatientRepository patientRepository;
-    DoctorRepository doctorRepository;
-    InquiriesRepository inquiriesRepository;
 
-    public ScheduledService(AppointmentsRepository appointmentsRepository, PatientRepository patientRepository, DoctorRepository doctorRepository, InquiriesRepository inquiriesRepository) {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledService.class);
+
+    private final AppointmentsRepository appointmentsRepository;
+    private final InquiriesRepository inquiriesRepository;
+    private final HistoryArchiveService historyArchiveService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    public ScheduledService(AppointmentsRepository appointmentsRepository,
+                            InquiriesRepository inquiriesRepository,
+                            HistoryArchiveService historyArchiveService,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${cleanup.batch-size:500}") int batchSize,
+                            @Value("${cleanup.max-batches-per-run:2000}") int maxBatchesPerRun) {
         this.appointmentsRepository = appointmentsRepository;
-        this.patientRepository = patientRepository;
-        this.doctorRepository = doctorRepository;
         this.inquiriesRepository = inquiriesRepository;
+        this.historyArchiveService = historyArchiveService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
     }
 
-    @Transactional
     @Scheduled(cron = "0 0 0 * * ?")
-    public void deleteOldAppointments() {
-        LocalDateTime currentDateTime = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-
-        List<Appointments> allAppointments = appointmentsRepository.findAll();
-        List<Appointments> oldAppointments = new ArrayList<>();
-
-        for (Appointments appointment : allAppointments) {
-            LocalDateTime appointmentDateTime = LocalDateTime.parse(appointment.getDate(), formatter);
-            if (appointmentDateTime.isBefore(currentDateTime)) {
-                oldAppointments.add(appointment);
-            }
-        }
-        for (Appointments appointment : oldAppointments) {
-            Patient patient = appointment.getPatient();
-            List<Appointments> patientAppointments = patient.getAppointments();
-            patientAppointments.remove(appointment);
-            patient.setAppointments(patientAppointments);
-            patientRepository.save(patient);
-
-            Doctor doctor = appointment.getDoctor();
-            List<Appointments> doctorAppointments = doctor.getAppointments();
-            doctorAppointments.remove(appointment);
-            doctor.setAppointments(doctorAppointments);
-            doctorRepository.save(doctor);
-
-            appointmentsRepository.delete(appointment);
-        }
+    public int archiveOldAppointments() {
+        Instant now = Instant.now();
+        return archiveInBatches("appointments",
+                limit -> appointmentsRepository.findIdsStartingBefore(now, limit),
+                ids -> {
+                    historyArchiveService.archiveAppointments(ids);
+                    appointmentsRepository.deleteDoctorLinks(ids);
+                    appointmentsRepository.deletePatientLinks(ids);
+                    return appointmentsRepository.deleteByIds(ids);
+                });
     }
-    @Transactional
+
     @Scheduled(cron = "0 0 0 * * ?")
-    public void deleteOldInquiries() {
+    public int archiveOldInquiries() {
         LocalDateTime threeWeeksAgo = LocalDateTime.now().minus(3, ChronoUnit.WEEKS);
+        return archiveInBatches("inquiries",
+                limit -> inquiriesRepository.findUnansweredIdsCreatedBefore(threeWeeksAgo, limit),
+                ids -> {
+                    historyArchiveService.archiveInquiries(ids);
+                    inquiriesRepository.deleteDoctorLinks(ids);
+                    inquiriesRepository.deleteInquiryDoctorLinks(ids);
+                    inquiriesRepository.deleteInquiryDoctor2Links(ids);
+                    inquiriesRepository.deletePatientLinks(ids);
+                    return inquiriesRepository.deleteByIds(ids);
+                });
+    }
 
-        List<Inquiries> oldInquiries = inquiriesRepository.findByCreatedAtBefore(threeWeeksAgo);
-
-        for (Inquiries inquiry : oldInquiries) {
-            if (!inquiry.getHasAnswered()) {
-                if (inquiry.getPatient() != null) {
-                    Patient patient = inquiry.getPatient();
-                    List<Inquiries> patientInquiries = patient.getInquiries();
-                    patientInquiries.remove(inquiry);
-                    patient.setInquiries(patientInquiries);
-                    patientRepository.save(patient);
-                } else if (inquiry.getDoctor2() != null) {
-                    List<Doctor> doctor2List = inquiry.getDoctor2();
-                    Doctor doctor2 = doctor2List.get(0);
-                    List<Inquiries> doctor2Inquiries = doctor2.getInquiries();
-                    doctor2Inquiries.remove(inquiry);
-                    doctor2.setInquiries(doctor2Inquiries);
-                    doctorRepository.save(doctor2);
-                }
-                List<Doctor> doctorList = inquiry.getDoctor();
-                Doctor doctor = doctorList.get(0);
-                List<Inquiries> doctorInquiries = doctor.getInquiries();
-                doctorInquiries.remove(inquiry);
-                doctor.setInquiries(doctorInquiries);
-                doctorRepository.save(doctor);
-                inquiriesRepository.delete(inquiry);
+    private int archiveInBatches(String table, Function<Integer, List<Long>> nextBatch, ToIntFunction<List<Long>> archiveBatch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int total = 0;
+        int batches = 0;
+        while (batches < maxBatchesPerRun) {
+            Integer deleted = transactionTemplate.execute(status -> {
+                List<Long> ids = nextBatch.apply(batchSize);
+                return ids.isEmpty() ? 0 : archiveBatch.applyAsInt(ids);
+            });
+            batches++;
+            total += deleted == null ? 0 : deleted;
+            if (deleted == null || deleted < batchSize) {
+                break;
             }
         }
+        sample.stop(meterRegistry.timer("cleanup.duration", "table", table));
+        Counter.builder("cleanup.archived")
+                .description("Rows moved to the history archive by the nightly cleanup")
+                .tag("table", table)
+                .register(meterRegistry)
+                .increment(total);
+        LOGGER.info(String.format("Nightly cleanup archived %d %s in %d batches", total, table, batches));
+        return total;
     }
-
-
-
 }
@@ -0,0 +1,151 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.dto.AvailabilityDTO;
+import com.example.symply_care.dto.FreeSlotDTO;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.DoctorAvailability;
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.repository.DoctorAvailabilityRepository;
+import com.example.symply_care.repository.DoctorRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//שעות עבודה של רופאים וחיפוש תורים פנויים. החיפוש נעשה מול ScheduleIndex בזיכרון
+@Service
+@RequiredArgsConstructor
+public class SchedulingService {
+
+    private static final int MAX_SLOTS = 200;
+    private static final Duration MAX_SEARCH_RANGE = Duration.ofDays(60);
+    private static final Duration DEFAULT_SPECIALIZATION_SEARCH_RANGE = Duration.ofDays(7);
+
+    private final DoctorRepository doctorRepository;
+    private final DoctorAvailabilityRepository doctorAvailabilityRepository;
+    private final ScheduleIndex scheduleIndex;
+
+    //מחליף את כל שעות העבודה של הרופא. השורה של הרופא ננעלת כמו בקביעת תור, כך שתור לא נקבע מול שעות שבדיוק מוחלפות
+    @Transactional
+    public List<AvailabilityDTO> setAvailability(Long doctorId, List<AvailabilityDTO> availability) {
+        Doctor doctor = doctorRepository.lockById(doctorId)
+                .orElseThrow(() -> new NoSuchElementException("Doctor not found with id: " + doctorId));
+        List<DoctorAvailability> rows = new ArrayList<>();
+        List<ScheduleIndex.Template> templates = new ArrayList<>();
+        for (AvailabilityDTO dto : availability) {
+            DoctorAvailability row = mapAvailabilityDTOToAvailability(dto);
+            row.setDoctor(doctor);
+            rows.add(row);
+            templates.add(toTemplate(row));
+        }
+        doctorAvailabilityRepository.deleteByDoctorId(doctorId);
+        doctorAvailabilityRepository.saveAll(rows);
+        scheduleIndex.setTemplatesAfterCommit(doctorId, doctor.getSpecialization(), templates);
+        return rows.stream().map(SchedulingService::mapAvailabilityToAvailabilityDTO).toList();
+    }
+
+    //נקרא מAppointmentService.book אחרי נעילת הרופא. שעות העבודה נקראות מבסיס הנתונים ולא מScheduleIndex,
+    //שיכול לפגר אחרי שינוי שנעשה בשרת אחר
+    public void requireWithinWorkingHours(Long doctorId, Instant startsAt, Instant endsAt) {
+        List<ScheduleIndex.Template> templates = doctorAvailabilityRepository.lockByDoctorId(doctorId).stream()
+                .map(SchedulingService::toTemplate)
+                .toList();
+        if (!ScheduleIndex.withinWorkingHours(templates, startsAt, endsAt)) {
+            throw new NoSuchElementException("The doctor does not work at this time");
+        }
+    }
+
+    public List<AvailabilityDTO> getAvailability(Long doctorId) {
+        return doctorAvailabilityRepository.findByDoctorId(doctorId).stream()
+                .map(SchedulingService::mapAvailabilityToAvailabilityDTO)
+                .toList();
+    }
+
+    //from בפורמט של תאריך התור (yyyy-MM-dd HH:mm), ברירת מחדל - עכשיו
+    public List<FreeSlotDTO> nextFreeSlots(Long doctorId, String from, Integer count) {
+        Instant start = searchStart(from);
+        return scheduleIndex.freeSlots(doctorId, start, start.plus(MAX_SEARCH_RANGE), limit(count))
+                .stream().map(SchedulingService::mapSlotToFreeSlotDTO).toList();
+    }
+
+    //ברירת מחדל: השבוע הקרוב
+    public List<FreeSlotDTO> freeSlotsBySpecialization(String specialization, String from, String to, Integer count) {
+        Specialization value = Specialization.valueOf(specialization.trim().toUpperCase());
+        Instant start = searchStart(from);
+        Instant end = to == null || to.isBlank() ? start.plus(DEFAULT_SPECIALIZATION_SEARCH_RANGE) : parse(to);
+        if (end.isAfter(start.plus(MAX_SEARCH_RANGE))) {
+            end = start.plus(MAX_SEARCH_RANGE);
+        }
+        return scheduleIndex.freeSlotsBySpecialization(value, start, end, limit(count))
+                .stream().map(SchedulingService::mapSlotToFreeSlotDTO).toList();
+    }
+
+    private static Instant searchStart(String from) {
+        Instant now = Instant.now();
+        if (from == null || from.isBlank()) {
+            return now;
+        }
+        Instant start = parse(from);
+        return start.isBefore(now) ? now : start;
+    }
+
+    private static Instant parse(String date) {
+        try {
+            return AppointmentService.parseDate(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+    }
+
+    private static int limit(Integer count) {
+        return count == null ? 10 : Math.max(1, Math.min(count, MAX_SLOTS));
+    }
+
+    private static DoctorAvailability mapAvailabilityDTOToAvailability(AvailabilityDTO dto) {
+        DoctorAvailability availability = new DoctorAvailability();
+        try {
+            availability.setDayOfWeek(DayOfWeek.valueOf(dto.getDayOfWeek().trim().toUpperCase()));
+            availability.setStartTime(LocalTime.parse(dto.getStartTime()));
+            availability.setEndTime(LocalTime.parse(dto.getEndTime()));
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid availability: " + dto);
+        }
+        int slotMinutes = dto.getSlotMinutes() == null ? AppointmentService.DEFAULT_DURATION_MINUTES : dto.getSlotMinutes();
+        if (slotMinutes <= 0 || slotMinutes > AppointmentService.MAX_DURATION_MINUTES
+                || !availability.getStartTime().isBefore(availability.getEndTime())) {
+            throw new IllegalArgumentException("Invalid availability: " + dto);
+        }
+        availability.setSlotMinutes(slotMinutes);
+        return availability;
+    }
+
+    private static ScheduleIndex.Template toTemplate(DoctorAvailability availability) {
+        return new ScheduleIndex.Template(availability.getDayOfWeek(), availability.getStartTime(),
+                availability.getEndTime(), availability.getSlotMinutes());
+    }
+
+    private static AvailabilityDTO mapAvailabilityToAvailabilityDTO(DoctorAvailability availability) {
+        AvailabilityDTO dto = new AvailabilityDTO();
+        dto.setDayOfWeek(availability.getDayOfWeek().name());
+        dto.setStartTime(availability.getStartTime().toString());
+        dto.setEndTime(availability.getEndTime().toString());
+        dto.setSlotMinutes(availability.getSlotMinutes());
+        return dto;
+    }
+
+    private static FreeSlotDTO mapSlotToFreeSlotDTO(ScheduleIndex.Slot slot) {
+        return new FreeSlotDTO(slot.doctorId(),
+                AppointmentService.formatDate(slot.startsAt()),
+                AppointmentService.formatDate(slot.endsAt()),
+                (int) Duration.between(slot.startsAt(), slot.endsAt()).toMinutes());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.symply_care.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//מאגר של חיבורי SMTP פתוחים ומאומתים. פתיחת חיבור (TCP, STARTTLS, AUTH) לוקחת יותר זמן משליחת המייל עצמו,
+//ולכן כל חיבור משמש להרבה מיילים. חיבור שלא היה בשימוש זמן מה נבדק (NOOP) לפני שמחזירים אותו,
+//וחיבור שנכשל או ששלח יותר מדי מיילים נסגר ומוחלף בחדש
+@Component
+public class SmtpTransportPool implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    public static final class PooledTransport {
+        private final Transport transport;
+        private long lastUsedAt;
+        private int messagesSent;
+
+        public PooledTransport(Transport transport) {
+            this.transport = transport;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+
+        public Transport transport() {
+            return transport;
+        }
+    }
+
+    private final JavaMailSenderImpl mailSender;
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    //כמה חיבורים מותר לפתוח בסך הכל, כולל אלה שבשימוש כרגע
+    private final Semaphore capacity;
+    private final long validateAfterIdleMillis;
+    private final int maxMessagesPerConnection;
+    private volatile boolean closed;
+
+    public SmtpTransportPool(JavaMailSenderImpl mailSender,
+                             @Value("${email.delivery.smtp-pool-size:4}") int poolSize,
+                             @Value("${email.delivery.validate-after-idle-millis:10000}") long validateAfterIdleMillis,
+                             @Value("${email.delivery.max-messages-per-connection:100}") int maxMessagesPerConnection) {
+        this.mailSender = mailSender;
+        this.capacity = new Semaphore(poolSize);
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    //מחזיר null אם לא התפנה חיבור בזמן שהוקצב
+    public PooledTransport borrow(long timeoutMillis) throws MessagingException, InterruptedException {
+        if (closed || !capacity.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - pooled.lastUsedAt < validateAfterIdleMillis || pooled.transport.isConnected()) {
+                    return pooled;
+                }
+                close(pooled);
+            }
+            return connect();
+        } catch (MessagingException | RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    //החיבור חוזר לראש התור, כך שמשתמשים קודם בחיבורים החמים ושאר החיבורים נסגרים אחרי שהשרת מנתק אותם
+    public void release(PooledTransport pooled) {
+        pooled.lastUsedAt = System.currentTimeMillis();
+        pooled.messagesSent++;
+        if (closed || pooled.messagesSent >= maxMessagesPerConnection) {
+            close(pooled);
+        } else {
+            idle.offerFirst(pooled);
+        }
+        capacity.release();
+    }
+
+    //אחרי שגיאה לא יודעים באיזה מצב החיבור, ולכן סוגרים אותו
+    public void invalidate(PooledTransport pooled) {
+        close(pooled);
+        capacity.release();
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = mailSender.getSession().getTransport(mailSender.getProtocol());
+        transport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+        LOGGER.debug(String.format("Opened SMTP connection to %s:%d", mailSender.getHost(), mailSender.getPort()));
+        return new PooledTransport(transport);
+    }
+
+    private static void close(PooledTransport pooled) {
+        try {
+            pooled.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.debug(String.format("Failed to close SMTP connection: %s", e.getMessage()));
+        }
+    }
+}
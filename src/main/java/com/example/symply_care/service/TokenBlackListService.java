@@ -1,41 +1,34 @@
 package com.example.symply_care.service;
 
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.time.Instant;
-import java.util.concurrent.ConcurrentHashMap;
-
+//רשימה שחורה של tokens שבוטלו (logout) עד לזמן התפוגה שלהם. השמירה עצמה נעשית בTokenRevocationStore שנבחר בהגדרות
 @Service
+@RequiredArgsConstructor
 public class TokenBlackListService {
-    //TODO ConcurrentHashMap להוסיף למצגת על
-    private final ConcurrentHashMap<String, Instant> blacklist = new ConcurrentHashMap<>();
-    public void addToBlacklist(String token) {
-        blacklist.put(token, Instant.now().plusMillis(10000));//10 שניות
-        /*
-        הוספת 10 שניות לזמן כדי למנוע מתקפת brute force כלומר שתוקף לא יוכל להתחבר עם אותו משתמש ב10 שניות בהן התחבר וכך כדי למנוע מהמערכת קריסה
-         */
-        System.out.println("Token added to blacklist: " + token);
-        removeExpiredTokens();
+
+    private final TokenRevocationStore tokenRevocationStore;
+
+    public void addToBlacklist(String tokenId, long expiresAtMillis) {
+        tokenRevocationStore.revoke(tokenId, expiresAtMillis);
+    }
+
+    public boolean isBlacklisted(String tokenId) {
+        return tokenRevocationStore.isRevoked(tokenId);
     }
 
-    private void removeExpiredTokens() {
-        for (String token : blacklist.keySet()) {
-            if (Instant.now().isAfter(blacklist.get(token))) {
-                blacklist.remove(token);
-            }
-        }
+    //רק אחרי הcommit, כדי ששרת אחר שטוען את המשתמש מחדש יקבל את הנתונים החדשים
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        tokenRevocationStore.revokeUser(event.email());
     }
 
-    public boolean isBlacklisted(String token) {
-        Instant expiration = blacklist.get(token);
-        if (expiration == null) {
-            return false;
-        }
-        if (Instant.now().isAfter(expiration)) {
-            blacklist.remove(token);
-            return false;
-        }
-        return true;
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void removeExpiredTokens() {
+        tokenRevocationStore.removeExpiredTokens();
     }
 }
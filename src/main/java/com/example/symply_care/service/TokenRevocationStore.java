@@ -0,0 +1,17 @@
+package com.example.symply_care.service;
+
+//מקום השמירה של tokens שבוטלו. ברירת המחדל היא זיכרון מקומי (InMemoryTokenRevocationStore),
+//ובפריסה של כמה שרתים אפשר לבחור ב ClusteredTokenRevocationStore שמפיץ את הביטולים דרך RabbitMQ
+public interface TokenRevocationStore {
+
+    void revoke(String tokenId, long expiresAtMillis);
+
+    //נקרא בכל בקשה ולכן אסור לו לחסום
+    boolean isRevoked(String tokenId);
+
+    void removeExpiredTokens();
+
+    //נקרא אחרי שינוי סיסמה/הרשאות של משתמש. בשרת יחיד אין מה לעשות - המטמונים המקומיים כבר התעדכנו
+    default void revokeUser(String email) {
+    }
+}
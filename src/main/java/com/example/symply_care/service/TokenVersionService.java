@@ -0,0 +1,71 @@
+package com.example.symply_care.service;
+
+
+import com.example.symply_care.repository.UsersRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+//בודק שגרסת הtoken עדיין זהה לגרסה של המשתמש. הגרסאות נשמרות במטמון קטן כדי שלא נפנה לבסיס הנתונים בכל בקשה
+@Service
+public class TokenVersionService {
+
+    private static final int MISSING_USER = -1;
+
+    private final UsersRepository usersRepository;
+    private final boolean enabled;
+    private final Cache<String, Integer> versions;
+
+    public TokenVersionService(UsersRepository usersRepository,
+                               @Value("${jwt.revocation-check.enabled:true}") boolean enabled,
+                               @Value("${jwt.revocation-check.cache-ttl-seconds:60}") long ttlSeconds,
+                               @Value("${jwt.revocation-check.cache-max-entries:10000}") long maxEntries) {
+        this.usersRepository = usersRepository;
+        this.enabled = enabled;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public boolean isCurrent(String email, int tokenVersion) {
+        if (!enabled) {
+            return true;
+        }
+        int version = versions.get(email, key -> usersRepository.findTokenVersionByEmail(key).orElse(MISSING_USER));
+        return version != MISSING_USER && version == tokenVersion;
+    }
+
+    //מבטל את כל הtokens הקיימים של המשתמש (שינוי סיסמה, הוספת הרשאה, מחיקה)
+    //רץ בתוך הטרנזקציה של מי ששלח את האירוע, כך שהעלאת הגרסה נשמרת יחד עם השינוי עצמו
+    @EventListener
+    @Transactional
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        usersRepository.incrementTokenVersion(event.email());
+        evictAfterCommit(event.email());
+    }
+
+    //שינוי שנעשה בשרת אחר
+    public void evict(String email) {
+        versions.invalidate(email);
+    }
+
+    private void evictAfterCommit(String email) {
+        versions.invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    versions.invalidate(email);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.symply_care.service;
+
+//נשלח בכל שינוי של סיסמה, הרשאות או מחיקת משתמש, כדי שכל המטמונים שמחזיקים את פרטי המשתמש יתעדכנו
+public record UserCredentialsChangedEvent(String email) {
+}
@@ -0,0 +1,20 @@
+package com.example.symply_care.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//שורות משאילתות המונים (מזהה, count, ...) לפי המזהה שבעמודה הראשונה
+public final class CountRows {
+
+    private CountRows() {
+    }
+
+    public static Map<Long, Object[]> byId(List<Object[]> rows) {
+        Map<Long, Object[]> byId = new HashMap<>();
+        for (Object[] row : rows) {
+            byId.put((Long) row[0], row);
+        }
+        return byId;
+    }
+}
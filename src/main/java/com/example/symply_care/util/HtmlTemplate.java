@@ -0,0 +1,89 @@
+package com.example.symply_care.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//תבנית HTML מקומפלת: הטקסט מחולק פעם אחת לקטעים קבועים ולמשבצות {{name}}, וכל רינדור רק מוסיף אותם לbuffer.
+//כל ערך עובר escaping, כך שתוכן מהמשתמש (הודעה, שם) לא יכול להוסיף HTML למייל
+public final class HtmlTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String[] literals;
+    private final String[] slots;
+
+    private HtmlTemplate(String[] literals, String[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    public static HtmlTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int position = 0;
+        int open;
+        while ((open = source.indexOf(OPEN, position)) >= 0) {
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at offset " + open);
+            }
+            String name = source.substring(open + OPEN.length(), close).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty placeholder at offset " + open);
+            }
+            literals.add(source.substring(position, open));
+            slots.add(name);
+            position = close + CLOSE.length();
+        }
+        literals.add(source.substring(position));
+        return new HtmlTemplate(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    public Set<String> parameters() {
+        Set<String> parameters = new LinkedHashSet<>();
+        Collections.addAll(parameters, slots);
+        return parameters;
+    }
+
+    //משבצת בלי ערך (מפתח חסר, או null במפה שמרשה null) נשארת ריקה.
+    //Map.of לא מקבל null, ולכן מי שבונה את הערכים עם Map.of אחראי להחליף null בערך ברירת מחדל (RabbitMQConsumer.nameOf)
+    public void render(Map<String, String> values, StringBuilder out) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            escape(values.get(slots[i]), out);
+        }
+        out.append(literals[slots.length]);
+    }
+
+    public static void escape(String value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            //כל התווים שצריך להחליף קטנים מ'>', ורוב הטקסט (אותיות) גדול ממנו
+            if (c > '>') {
+                continue;
+            }
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (replacement != null) {
+                out.append(value, start, i).append(replacement);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, value.length());
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.symply_care.util;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+//בניית PageRequest מהפרמטרים של ה-endpoints: page מתחיל מ0, size מוגבל ל100, direction הוא asc או desc
+public final class Paging {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private Paging() {
+    }
+
+    //ממיין לפי property ואחר כך לפי id, כדי שהסדר יהיה יציב בין עמודים
+    public static PageRequest of(Integer page, Integer size, String direction, Sort.Direction defaultDirection, String property) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageNumber = page == null ? 0 : Math.max(0, page);
+        Sort.Direction sortDirection = direction == null || direction.isBlank()
+                ? defaultDirection : Sort.Direction.fromString(direction.trim());
+        return PageRequest.of(pageNumber, pageSize, Sort.by(sortDirection, property).and(Sort.by(sortDirection, "id")));
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.symply_care.util;
+
+import java.util.Locale;
+
+//ממפה מפתח (כתובת מייל) למספר מחיצה קבוע. String.hashCode מוגדר בשפה, כך שכל השרתים מקבלים אותה מחיצה לאותו מפתח.
+//הביטים הנמוכים של String.hashCode כמעט לא משתנים בין כתובות שנבדלות רק בספרות (patient1@..., patient2@...),
+//ולכן הhash מעורבב (fmix32 של MurmurHash3) לפני המודולו - אחרת רוב הכתובות נופלות על אותן מחיצות.
+//שינוי הפונקציה מזיז מפתחות בין מחיצות, בדיוק כמו שינוי rabbitmq.partitions
+public final class Partitions {
+
+    private Partitions() {
+    }
+
+    public static int of(String key, int partitions) {
+        if (key == null) {
+            return 0;
+        }
+        return Math.floorMod(mix(key.toLowerCase(Locale.ROOT).hashCode()), partitions);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
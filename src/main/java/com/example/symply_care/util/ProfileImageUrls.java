@@ -0,0 +1,34 @@
+package com.example.symply_care.util;
+
+//כתובות התמונות שנשלחות בDTO. הפרמטר v משתנה בכל העלאה, ולכן הדפדפן יכול לשמור את התמונה בcache לתמיד
+public final class ProfileImageUrls {
+
+    private static final int VERSION_LENGTH = 16;
+
+    private ProfileImageUrls() {
+    }
+
+    public static String doctorImage(Long id, String imageHash) {
+        return url("/doctors/doctor/" + id + "/image", imageHash);
+    }
+
+    public static String doctorThumbnail(Long id, String imageHash) {
+        return url("/doctors/doctor/" + id + "/thumbnail", imageHash);
+    }
+
+    public static String patientImage(Long id, String imageHash) {
+        return url("/patients/patient/" + id + "/image", imageHash);
+    }
+
+    public static String patientThumbnail(Long id, String imageHash) {
+        return url("/patients/patient/" + id + "/thumbnail", imageHash);
+    }
+
+    public static String version(String imageHash) {
+        return imageHash.substring(0, Math.min(VERSION_LENGTH, imageHash.length()));
+    }
+
+    private static String url(String path, String imageHash) {
+        return imageHash == null ? null : path + "?v=" + version(imageHash);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.symply_care.util;
+
+import com.example.symply_care.entity.RSAKeysEntity;
+import com.example.symply_care.repository.RSAKeysRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReference;
+
+//מחזיק בזיכרון את המפתחות הנוכחיים והקודמים אחרי פענוח, כך שאין צורך לגשת לבסיס הנתונים בכל בקשה
+//ההחלפה נעשית באופן אטומי - כל קורא רואה תמיד זוג שלם (נוכחי + קודם)
+@Component
+@RequiredArgsConstructor
+public class RSAKeyRing {
+
+    public static final int CURRENT_KEY_ROW = 1;
+    public static final int PREVIOUS_KEY_ROW = 2;
+    private static final long MIN_RELOAD_INTERVAL_MILLIS = 30 * 1000;
+
+    private final RSAKeysRepository RSAKeysRepository;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private volatile long lastReloadMillis;
+
+    public record RingKey(String kid, PublicKey publicKey, PrivateKey privateKey) {
+    }
+
+    private record Snapshot(RingKey current, RingKey previous) {
+    }
+
+    //טוען את המפתחות מבסיס הנתונים. נקרא פעם אחת בעליית השרת
+    public void reload() {
+        RSAKeysEntity current = RSAKeysRepository.findById(CURRENT_KEY_ROW)
+                .orElseThrow(() -> new IllegalStateException("No RSA keys found in the database"));
+        RSAKeysEntity previous = RSAKeysRepository.findById(PREVIOUS_KEY_ROW).orElse(null);
+        update(current, previous);
+        lastReloadMillis = System.currentTimeMillis();
+    }
+
+    //נקרא כשמגיע token עם kid לא מוכר - כנראה שרת אחר החליף מפתחות. מוגבל לפעם ב30 שניות כדי שtokens מזויפים לא יציפו את בסיס הנתונים
+    public synchronized boolean reloadIfStale() {
+        if (System.currentTimeMillis() - lastReloadMillis < MIN_RELOAD_INTERVAL_MILLIS) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    public void update(RSAKeysEntity current, RSAKeysEntity previous) {
+        RingKey currentKey = toRingKey(current);
+        RingKey previousKey = previous != null ? toRingKey(previous) : null;
+        snapshot.set(new Snapshot(currentKey, previousKey));
+    }
+
+    public RingKey current() {
+        Snapshot keys = snapshot.get();
+        if (keys == null) {
+            throw new IllegalStateException("RSA key ring has not been loaded");
+        }
+        return keys.current();
+    }
+
+    //יכול להיות null אם עדיין לא התבצעה החלפת מפתחות
+    public RingKey previous() {
+        Snapshot keys = snapshot.get();
+        if (keys == null) {
+            throw new IllegalStateException("RSA key ring has not been loaded");
+        }
+        return keys.previous();
+    }
+
+    //מחזיר את המפתח הציבורי לפי kid, או null אם הוא לא מוכר
+    public PublicKey publicKey(String kid) {
+        RingKey current = current();
+        if (current.kid().equals(kid)) {
+            return current.publicKey();
+        }
+        RingKey previous = previous();
+        if (previous != null && previous.kid().equals(kid)) {
+            return previous.publicKey();
+        }
+        return null;
+    }
+
+    private static RingKey toRingKey(RSAKeysEntity entity) {
+        return new RingKey(kidOf(entity.getPublic_key()),
+                convertBytesToPublicKey(entity.getPublic_key()),
+                convertBytesToPrivateKey(entity.getPrivate_key()));
+    }
+
+    //מזהה יציב למפתח, נגזר מהמפתח הציבורי עצמו ולכן זהה בכל השרתים
+    public static String kidOf(byte[] publicKeyBytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKeyBytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static PrivateKey convertBytesToPrivateKey(byte[] keyBytes) {
+        try {
+            PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(keyBytes);
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            return keyFactory.generatePrivate(keySpec);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Failed to convert byte array to PrivateKey", e);
+        }
+    }
+
+    private static PublicKey convertBytesToPublicKey(byte[] keyBytes) {
+        try {
+            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            return keyFactory.generatePublic(keySpec);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Failed to convert byte array to PublicKey", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.symply_care.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+//מספר קבוע של מנעולים שמחולקים לפי מפתח, כדי לא להחזיק מנעול לכל רופא/מטופל בזיכרון
+//שני מפתחות יכולים לקבל את אותו מנעול - זה רק מאט אותם, לא פוגע בנכונות
+public final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock forKey(long key) {
+        //מערבבים את הביטים כדי שמזהים עוקבים לא ייפלו על אותו מנעול
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return locks[(int) ((mixed >>> 32) % locks.length)];
+    }
+}
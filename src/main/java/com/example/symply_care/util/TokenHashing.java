@@ -0,0 +1,22 @@
+package com.example.symply_care.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+//טביעת אצבע קצרה לtoken, כדי שלא נשמור את הtoken המלא בזיכרון או בבסיס הנתונים
+public final class TokenHashing {
+
+    private TokenHashing() {
+    }
+
+    public static String sha256Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.symply_care.util;
+
+import io.jsonwebtoken.Claims;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+//התוצאה של אימות token - נוצרת פעם אחת בפילטר ומשמשת את שאר הבקשה, כך שאין צורך לפענח ולאמת שוב
+@Getter
+public final class VerifiedToken {
+
+    public static final String REQUEST_ATTRIBUTE = VerifiedToken.class.getName();
+    public static final String VERSION_CLAIM = "ver";
+
+    private final String kid;
+    //הjti של הtoken, או hash שלו עבור tokens ישנים שנוצרו בלי jti. משמש כמפתח ברשימה השחורה
+    private final String id;
+    private final String subject;
+    private final List<String> roles;
+    private final Date issuedAt;
+    private final Date expiration;
+    private final int tokenVersion;
+
+    VerifiedToken(String kid, Claims claims, String token) {
+        this.kid = kid;
+        this.id = claims.getId() != null ? claims.getId() : TokenHashing.sha256Hex(token);
+        this.subject = claims.getSubject();
+        this.roles = extractRoles(claims);
+        this.issuedAt = claims.getIssuedAt();
+        this.expiration = claims.getExpiration();
+        //tokens שנוצרו לפני הוספת הגרסה נחשבים כגרסה 0
+        Integer version = claims.get(VERSION_CLAIM, Integer.class);
+        this.tokenVersion = version != null ? version : 0;
+    }
+
+    private static List<String> extractRoles(Claims claims) {
+        Object roles = claims.get("roles");
+        if (!(roles instanceof List<?> list)) {
+            return Collections.emptyList();
+        }
+        return list.stream().map(String::valueOf).toList();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.symply_care.Consumer;
+
+import com.example.symply_care.Publisher.RabbitMQProducer;
+import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.service.EmailDeliveryService;
+import com.example.symply_care.service.EmailTemplateService;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+//השמות מגיעים בהודעה עצמה (גרסה 2) ונכנסים לגוף המייל בלי גישה למסד.
+//הודעה מגרסה 1 שעדיין בתור לא כוללת שמות, ובמקומם מוצגת כתובת המייל
+class NotificationContentTest {
+
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+    private final EmailDeliveryService emailDeliveryService = mock(EmailDeliveryService.class);
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private RabbitMQConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        consumer = new RabbitMQConsumer(emailDeliveryService, new EmailTemplateService("v1"), converter, mock(RabbitMQProducer.class), 4);
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            bodies.put(invocation.getArgument(0), invocation.getArgument(2));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void appointmentShowsTheNamesFromTheMessage() throws Exception {
+        RabbitMQMessage message = appointment();
+        message.setDoctorName("Dana Levi");
+        message.setPatientName("Avi Cohen");
+
+        consume(message);
+
+        for (String recipient : List.of("patient@domain.com", "doctor@clinic.com")) {
+            assertTrue(bodies.get(recipient).contains("<strong>Doctor:</strong> Dana Levi</li>"), bodies.get(recipient));
+            assertTrue(bodies.get(recipient).contains("<strong>Patient:</strong> Avi Cohen</li>"), bodies.get(recipient));
+        }
+    }
+
+    @Test
+    void appointmentFromVersionOneShowsTheEmails() throws Exception {
+        RabbitMQMessage message = appointment();
+        message.setSchemaVersion(1);
+
+        consume(message);
+
+        String body = bodies.get("patient@domain.com");
+        assertTrue(body.contains("<strong>Doctor:</strong> doctor@clinic.com</li>"), body);
+        assertTrue(body.contains("<strong>Patient:</strong> patient@domain.com</li>"), body);
+    }
+
+    @Test
+    void inquiryBetweenDoctorsUsesTheSecondDoctorName() throws Exception {
+        RabbitMQMessage message = new RabbitMQMessage();
+        message.setDoctorEmail("doctor@clinic.com");
+        message.setDoctorName("Dana Levi");
+        message.setDoctor2Email("doctor2@clinic.com");
+        message.setDoctor2Name("Ruth Katz");
+        message.setSenderInquiryEmail("doctor@clinic.com");
+        message.setQuestion("?");
+
+        consume(message);
+
+        String body = bodies.get("doctor2@clinic.com");
+        assertTrue(body.contains("From Doctor: Dana Levi</p>"), body);
+        assertTrue(body.contains("To you: Ruth Katz</p>"), body);
+    }
+
+    @Test
+    void answerFromVersionOneShowsTheEmails() throws Exception {
+        RabbitMQMessage message = new RabbitMQMessage();
+        message.setSchemaVersion(1);
+        message.setDoctorEmail("doctor@clinic.com");
+        message.setPatientEmail("patient@domain.com");
+        message.setSenderInquiryEmail("doctor@clinic.com");
+        message.setDoctorAnswer("!");
+
+        consume(message);
+
+        String body = bodies.get("patient@domain.com");
+        assertTrue(body.contains("Doctor: doctor@clinic.com</p>"), body);
+        assertTrue(body.contains("To you: patient@domain.com</p>"), body);
+    }
+
+    @Test
+    void contactFormWithoutMessageIsSentEmpty() throws Exception {
+        RabbitMQMessage message = new RabbitMQMessage();
+        message.setEmail("visitor@example.com");
+
+        consume(message);
+
+        String body = bodies.get(message.getAdminEmail());
+        assertTrue(body.contains("visitor@example.com"), body);
+        assertFalse(body.contains("null"), body);
+    }
+
+    private void consume(RabbitMQMessage rabbitMQMessage) throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(1);
+        Message message = converter.toMessage(rabbitMQMessage, properties);
+        Channel channel = mock(Channel.class);
+
+        consumer.onMessageBatch(List.of(message), channel);
+
+        verify(channel).basicAck(1L, false);
+    }
+
+    private static RabbitMQMessage appointment() {
+        RabbitMQMessage message = new RabbitMQMessage();
+        message.setPatientEmail("patient@domain.com");
+        message.setDoctorEmail("doctor@clinic.com");
+        message.setAppointmentDate("2030-01-01 10:00");
+        return message;
+    }
+}
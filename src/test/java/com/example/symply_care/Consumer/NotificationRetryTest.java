@@ -0,0 +1,130 @@
+package com.example.symply_care.Consumer;
+
+import com.example.symply_care.Publisher.RabbitMQProducer;
+import com.example.symply_care.config.RabbitMQConfig;
+import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.service.EmailDeliveryService;
+import com.example.symply_care.service.EmailTemplateService;
+import com.rabbitmq.client.Channel;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+//הודעה שנכשלה עוברת לתור ההמתנה של הנסיון הבא או לparking lot, ותמיד מקבלת ack - לא חוזרת מיד לאותו תור
+class NotificationRetryTest {
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+    private final EmailDeliveryService emailDeliveryService = mock(EmailDeliveryService.class);
+    private final RabbitMQProducer producer = mock(RabbitMQProducer.class);
+    private final Channel channel = mock(Channel.class);
+    private RabbitMQConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        consumer = new RabbitMQConsumer(emailDeliveryService, new EmailTemplateService("v1"), converter, producer, MAX_ATTEMPTS);
+    }
+
+    @Test
+    void failedComposeIsRetriedLater() throws Exception {
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString())).thenThrow(new IllegalStateException("not started"));
+        Message message = message(0);
+
+        consumer.onMessageBatch(List.of(message), channel);
+
+        verify(producer).sendToRetry(message, 1);
+        verify(channel).basicAck(7L, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void lastAttemptIsParked() throws Exception {
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new MessagingException("Connection refused")));
+        Message message = message(MAX_ATTEMPTS - 1);
+
+        consumer.onMessageBatch(List.of(message), channel);
+
+        verify(producer).sendToParkingLot(eq(message), contains("Connection refused"));
+        verify(producer, never()).sendToRetry(any(), anyInt());
+        verify(channel).basicAck(7L, false);
+    }
+
+    @Test
+    void permanentFailureIsParkedWithoutRetrying() throws Exception {
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new AddressException("Missing recipient domain")));
+        Message message = message(0);
+
+        consumer.onMessageBatch(List.of(message), channel);
+
+        verify(producer).sendToParkingLot(eq(message), anyString());
+        verify(producer, never()).sendToRetry(any(), anyInt());
+    }
+
+    @Test
+    void unreadableMessageIsParked() throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(7);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message message = new Message("{not json".getBytes(), properties);
+
+        consumer.onMessageBatch(List.of(message), channel);
+
+        verify(producer).sendToParkingLot(eq(message), anyString());
+        verify(channel).basicAck(7L, false);
+    }
+
+    @Test
+    void messageIsRequeuedWhenTheRetryCannotBePublished() throws Exception {
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString())).thenThrow(new IllegalStateException("not started"));
+        doThrow(new AmqpConnectException(new ConnectException("broker down"))).when(producer).sendToRetry(any(), anyInt());
+
+        consumer.onMessageBatch(List.of(message(0)), channel);
+
+        verify(channel).basicNack(7L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void acknowledgementsAreSentFromTheListenerThread() throws Exception {
+        //המיילים מסתיימים בthread אחר, אחרי שonMessageBatch כבר הגיש את כולם
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString())).thenAnswer(invocation ->
+                CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)));
+        List<Thread> ackThreads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> ackThreads.add(Thread.currentThread())).when(channel).basicAck(anyLong(), anyBoolean());
+
+        consumer.onMessageBatch(List.of(message(0), message(0)), channel);
+
+        assertEquals(List.of(Thread.currentThread(), Thread.currentThread()), ackThreads);
+    }
+
+    private Message message(int previousAttempts) {
+        RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
+        rabbitMQMessage.setPatientEmail("patient@domain.com");
+        rabbitMQMessage.setDoctorEmail("doctor@clinic.com");
+        rabbitMQMessage.setAppointmentDate("2030-01-01 10:00");
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(7);
+        if (previousAttempts > 0) {
+            properties.setHeader(RabbitMQConfig.ATTEMPTS_HEADER, previousAttempts);
+        }
+        return converter.toMessage(rabbitMQMessage, properties);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.symply_care.Consumer;
+
+import com.example.symply_care.Publisher.RabbitMQProducer;
+import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.service.EmailDeliveryService;
+import com.example.symply_care.service.EmailTemplateService;
+import com.example.symply_care.service.SmtpTransportPool;
+import com.example.symply_care.util.Partitions;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+//בדיקת עומס מול "ברוקר" בזיכרון: תור לכל מחיצה ו thread אחד שצורך מכל תור במנות, כמו הcontainers של RabbitMQConfig.
+//שרת הSMTP מדומה עם השהיה קבועה. מודדים הודעות לשנייה עם מחיצה אחת ועם כמה מחיצות,
+//ובודקים שכל מטופל קיבל את המיילים שלו בסדר שבו ההודעות נשלחו.
+//לוקחת כמה שניות ולכן לא רצה בmvn test הרגיל: mvn test -Dgroups=benchmark -DexcludedGroups=
+@Tag("benchmark")
+class NotificationThroughputTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationThroughputTest.class);
+
+    private static final int MESSAGES = 400;
+    private static final int RECIPIENTS = 160;
+    private static final int BATCH_SIZE = 20;
+    //כל נמען בדומיין משלו, כדי שהמגבלה לדומיין של EmailDeliveryService לא תהיה צוואר הבקבוק.
+    //ההשהיה גבוהה כדי שהמדידה תהיה של ההמתנה לשרת הדואר ולא של הCPU (בניית המיילים), גם במכונה עם ליבה אחת
+    private static final int WORKERS = 64;
+    //זמן תגובה מדומה של שרת הSMTP, וגם של שאילתה למסד
+    private static final long LATENCY_MILLIS = 50;
+    //כשהצרכן שלף את הרופא ואת המטופל לכל הודעה, מחיצה אחת לא יכלה לעבור את הקצב הזה
+    private static final double LOOKUP_BOUND_MESSAGES_PER_SECOND = 1000.0 / (2 * LATENCY_MILLIS);
+    private static final Pattern SEQUENCE = Pattern.compile("Seq(\\d+)");
+
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+
+    @Test
+    void throughputIsNotBoundByLookupsAndKeepsPerRecipientOrder() throws Exception {
+        //חימום של הJIT בשתי התצורות, כדי שההשוואה לא תכלול את זמן הקומפילציה
+        for (int i = 0; i < 2; i++) {
+            run(1);
+            run(4);
+        }
+        double single = run(1);
+        double partitioned = run(4);
+
+        LOGGER.info(String.format("Notification throughput: 1 partition %.0f msg/s, 4 partitions %.0f msg/s", single, partitioned));
+        assertTrue(single > LOOKUP_BOUND_MESSAGES_PER_SECOND, "1 partition: " + single + " msg/s");
+        //מחיצה מחכה שכל המיילים של המנה שלה יישלחו לפני הack, ומחיצות אחרות ממשיכות לשלוח בזמן הזה
+        assertTrue(partitioned > single * 2, "1 partition: " + single + " msg/s, 4 partitions: " + partitioned + " msg/s");
+    }
+
+    private double run(int partitions) throws Exception {
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        EmailDeliveryService emailDeliveryService = emailDeliveryService(received);
+        RabbitMQConsumer consumer = new RabbitMQConsumer(emailDeliveryService, new EmailTemplateService("v1"), converter, mock(RabbitMQProducer.class), 4);
+        CountDownLatch acked = new CountDownLatch(MESSAGES);
+        Channel channel = mock(Channel.class);
+        doAnswer(invocation -> {
+            acked.countDown();
+            return null;
+        }).when(channel).basicAck(anyLong(), anyBoolean());
+
+        List<BlockingQueue<Message>> queues = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            queues.add(new LinkedBlockingQueue<>());
+        }
+        long[] deliveryTags = new long[partitions];
+        for (int seq = 0; seq < MESSAGES; seq++) {
+            RabbitMQMessage message = new RabbitMQMessage();
+            message.setPatientEmail("patient" + (seq % RECIPIENTS) + "@domain" + (seq % RECIPIENTS) + ".com");
+            message.setPatientName("Patient Test");
+            message.setDoctorEmail("doctor" + seq + "@clinic" + (seq % RECIPIENTS) + ".com");
+            message.setDoctorName("Doctor Seq" + seq);
+            message.setAppointmentDate("2030-01-01 10:00");
+            int partition = Partitions.of(RabbitMQProducer.partitionKey(message), partitions);
+            MessageProperties properties = new MessageProperties();
+            properties.setDeliveryTag(++deliveryTags[partition]);
+            queues.get(partition).add(converter.toMessage(message, properties));
+        }
+
+        ExecutorService listeners = Executors.newFixedThreadPool(partitions);
+        long start = System.nanoTime();
+        for (BlockingQueue<Message> queue : queues) {
+            listeners.execute(() -> {
+                List<Message> batch = new ArrayList<>();
+                while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                    consumer.onMessageBatch(batch, channel);
+                    batch.clear();
+                }
+            });
+        }
+        assertTrue(acked.await(60, TimeUnit.SECONDS), "not all messages were acknowledged");
+        double seconds = (System.nanoTime() - start) / 1e9;
+        listeners.shutdown();
+        emailDeliveryService.destroy();
+
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        assertEquals(RECIPIENTS, received.size());
+        received.forEach((recipient, sequence) -> {
+            for (int i = 1; i < sequence.size(); i++) {
+                assertTrue(sequence.get(i - 1) < sequence.get(i), recipient + " received " + sequence);
+            }
+        });
+        return MESSAGES / seconds;
+    }
+
+    //כל מייל למטופל נרשם עם מספר ההודעה, שמגיע מהשם של הרופא בגוף המייל
+    private EmailDeliveryService emailDeliveryService(Map<String, List<Integer>> received) throws Exception {
+        SmtpTransportPool transportPool = mock(SmtpTransportPool.class);
+        Transport transport = mock(Transport.class);
+        doAnswer(invocation -> {
+            String recipient = ((Address[]) invocation.getArgument(1))[0].toString();
+            Thread.sleep(LATENCY_MILLIS);
+            if (recipient.startsWith("patient")) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                ((MimeMessage) invocation.getArgument(0)).writeTo(content);
+                Matcher matcher = SEQUENCE.matcher(content.toString());
+                assertTrue(matcher.find());
+                received.computeIfAbsent(recipient, r -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(matcher.group(1)));
+            }
+            return null;
+        }).when(transport).sendMessage(any(), any());
+        when(transportPool.borrow(anyLong())).thenReturn(new SmtpTransportPool.PooledTransport(transport));
+        EmailDeliveryService emailDeliveryService = new EmailDeliveryService(transportPool, new JavaMailSenderImpl(),
+                new SimpleMeterRegistry(), "clinic@example.com", WORKERS, WORKERS * 64, 4, 5_000, 5_000, 5_000);
+        emailDeliveryService.afterPropertiesSet();
+        return emailDeliveryService;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.symply_care.Publisher;
+
+import com.example.symply_care.Consumer.RabbitMQConsumer;
+import com.example.symply_care.config.RabbitMQConfig;
+import com.example.symply_care.entity.RabbitMQMessage;
+import com.example.symply_care.service.EmailDeliveryService;
+import com.example.symply_care.service.EmailTemplateService;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ReturnListener;
+import jakarta.mail.MessagingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+//הצרכן והשולח האמיתיים מול RabbitTemplate מדומה: ההודעה המקורית מקבלת ack רק אחרי שהברוקר אישר
+//את ההעברה לתור ההמתנה או לparking lot, וחוזרת לתור (nack) כשהאישור לא הגיע או שההודעה לא נותבה
+class RabbitMQProducerTest {
+
+    private static final long DELIVERY_TAG = 7;
+
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final EmailDeliveryService emailDeliveryService = mock(EmailDeliveryService.class);
+    private final Channel channel = mock(Channel.class);
+    private RabbitMQProducer producer;
+    private RabbitMQConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        producer = new RabbitMQProducer(rabbitTemplate);
+        ReflectionTestUtils.setField(producer, "exhange", "main_exchange");
+        ReflectionTestUtils.setField(producer, "queue", "main");
+        ReflectionTestUtils.setField(producer, "routingKey", "route");
+        ReflectionTestUtils.setField(producer, "partitions", 8);
+        ReflectionTestUtils.setField(producer, "initialDelayMillis", 1000L);
+        ReflectionTestUtils.setField(producer, "multiplier", 5);
+        ReflectionTestUtils.setField(producer, "confirmTimeoutMillis", 200L);
+        consumer = new RabbitMQConsumer(emailDeliveryService, new EmailTemplateService("v1"), converter, producer, 4);
+        when(emailDeliveryService.submit(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new MessagingException("Connection refused")));
+    }
+
+    @Test
+    void failedMessageIsAcknowledgedAfterTheRetryIsConfirmed() throws Exception {
+        brokerAnswers(correlationData -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null)));
+
+        consumer.onMessageBatch(List.of(message(1)), channel);
+
+        InOrder inOrder = inOrder(rabbitTemplate, channel);
+        //נסיון שני ממתין 5 שניות
+        inOrder.verify(rabbitTemplate).send(eq("main_exchange.retry"), eq("route.3"),
+                argThat(retry -> "main.retry.5000ms".equals(retry.getMessageProperties().getHeader(RabbitMQConfig.RETRY_QUEUE_HEADER))
+                        && Integer.valueOf(2).equals(retry.getMessageProperties().getHeader(RabbitMQConfig.ATTEMPTS_HEADER))),
+                any(CorrelationData.class));
+        inOrder.verify(channel).basicAck(DELIVERY_TAG, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void parkedMessageIsAcknowledgedAfterTheParkingLotIsConfirmed() throws Exception {
+        brokerAnswers(correlationData -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null)));
+
+        consumer.onMessageBatch(List.of(message(3)), channel);
+
+        InOrder inOrder = inOrder(rabbitTemplate, channel);
+        inOrder.verify(rabbitTemplate).send(eq(""), eq("main.parking-lot"), any(Message.class), any(CorrelationData.class));
+        inOrder.verify(channel).basicAck(DELIVERY_TAG, false);
+    }
+
+    @Test
+    void messageIsRequeuedWhenTheBrokerRejectsTheRetry() throws Exception {
+        brokerAnswers(correlationData -> correlationData.getFuture().complete(new CorrelationData.Confirm(false, "disk full")));
+
+        consumer.onMessageBatch(List.of(message(0)), channel);
+
+        verify(channel).basicNack(DELIVERY_TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void messageIsRequeuedWhenTheRetryIsNotRouted() throws Exception {
+        brokerAnswers(correlationData -> {
+            correlationData.setReturned(new ReturnedMessage(new Message(new byte[0]), 312, "NO_ROUTE", "main_exchange.retry", "route.3"));
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+        });
+
+        consumer.onMessageBatch(List.of(message(0)), channel);
+
+        verify(channel).basicNack(DELIVERY_TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void messageIsRequeuedWhenTheConfirmDoesNotArrive() throws Exception {
+        brokerAnswers(correlationData -> { });
+
+        consumer.onMessageBatch(List.of(message(0)), channel);
+
+        verify(channel).basicNack(DELIVERY_TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void replayAcknowledgesEachMessageAfterItsConfirm() throws Exception {
+        Channel replayChannel = replayChannel(2);
+
+        assertEquals(2, producer.replayParkingLot(10));
+
+        InOrder inOrder = inOrder(replayChannel);
+        inOrder.verify(replayChannel).confirmSelect();
+        for (long tag = 1; tag <= 2; tag++) {
+            inOrder.verify(replayChannel).basicPublish(eq("main_exchange"), eq("route.3"), eq(true), any(AMQP.BasicProperties.class), any(byte[].class));
+            inOrder.verify(replayChannel).waitForConfirmsOrDie(200L);
+            inOrder.verify(replayChannel).basicAck(tag, false);
+        }
+    }
+
+    @Test
+    void replayStopsAndKeepsTheMessageWhenItIsNotRouted() throws Exception {
+        Channel replayChannel = replayChannel(2);
+        ReturnListener[] listener = new ReturnListener[1];
+        doAnswer(invocation -> listener[0] = invocation.getArgument(0)).when(replayChannel).addReturnListener(any(ReturnListener.class));
+        doAnswer(invocation -> {
+            listener[0].handleReturn(312, "NO_ROUTE", invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(3), invocation.getArgument(4));
+            return null;
+        }).when(replayChannel).basicPublish(anyString(), anyString(), eq(true), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        assertEquals(0, producer.replayParkingLot(10));
+
+        verify(replayChannel).basicNack(1L, false, true);
+        verify(replayChannel, never()).basicAck(anyLong(), anyBoolean());
+        verify(replayChannel).removeReturnListener(listener[0]);
+    }
+
+    private void brokerAnswers(java.util.function.Consumer<CorrelationData> broker) {
+        doAnswer(invocation -> {
+            broker.accept(invocation.getArgument(3));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Channel replayChannel(int parked) throws Exception {
+        Channel replayChannel = mock(Channel.class);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Map.of(RabbitMQConfig.ORIGINAL_ROUTING_KEY_HEADER, "route.3", RabbitMQConfig.LAST_ERROR_HEADER, "boom"))
+                .build();
+        GetResponse[] responses = new GetResponse[parked];
+        for (int i = 0; i < parked; i++) {
+            responses[i] = new GetResponse(new Envelope(i + 1, false, "", "main.parking-lot"), properties, new byte[0], parked - i - 1);
+        }
+        when(replayChannel.basicGet("main.parking-lot", false)).thenReturn(responses[0],
+                Arrays.copyOfRange(responses, 1, parked + 1));
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                ((ChannelCallback<Object>) invocation.getArgument(0)).doInRabbit(replayChannel));
+        return replayChannel;
+    }
+
+    private Message message(int previousAttempts) {
+        RabbitMQMessage rabbitMQMessage = new RabbitMQMessage();
+        rabbitMQMessage.setPatientEmail("patient@domain.com");
+        rabbitMQMessage.setDoctorEmail("doctor@clinic.com");
+        rabbitMQMessage.setAppointmentDate("2030-01-01 10:00");
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(DELIVERY_TAG);
+        properties.setReceivedRoutingKey("route.3");
+        if (previousAttempts > 0) {
+            properties.setHeader(RabbitMQConfig.ATTEMPTS_HEADER, previousAttempts);
+        }
+        return converter.toMessage(rabbitMQMessage, properties);
+    }
+}
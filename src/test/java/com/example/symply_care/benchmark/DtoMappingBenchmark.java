@@ -0,0 +1,218 @@
+package com.example.symply_care.benchmark;
+
+import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.mapper.DoctorMapper;
+import com.example.symply_care.mapper.DoctorMapperImpl;
+import com.example.symply_care.mapper.PatientMapper;
+import com.example.symply_care.mapper.PatientMapperImpl;
+import com.example.symply_care.util.ProfileImageUrls;
+import jakarta.transaction.Transactional;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//משווה את המיפוי הידני הישן (שרשרת setters מאחורי proxy של @Transactional) למיפוי שנוצר בזמן קומפילציה,
+//על רשימה בגודל של getAllDoctors / getAllPatients. בלי בסיס נתונים: מנהל הטרנזקציות לא עושה כלום,
+//כך שההפרש הוא רק העלות של הproxy, הinterceptor וההמרה עצמה
+//הרצה: mvn -q test-compile exec:exec -Dexec.args="-cp %classpath org.openjdk.jmh.Main DtoMappingBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private List<Doctor> doctors;
+    private List<Patient> patients;
+    private LegacyMappers legacy;
+    private LegacyMappers legacyProxy;
+    private DoctorMapper doctorMapper;
+    private PatientMapper patientMapper;
+
+    @Setup
+    public void setUp() {
+        doctors = new ArrayList<>();
+        patients = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            doctors.add(doctor(i));
+            patients.add(patient(i));
+        }
+        legacy = new LegacyMappers();
+        ProxyFactory proxyFactory = new ProxyFactory(legacy);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor((TransactionManager) new NoOpTransactionManager(), new AnnotationTransactionAttributeSource()));
+        legacyProxy = (LegacyMappers) proxyFactory.getProxy();
+        doctorMapper = new DoctorMapperImpl();
+        patientMapper = new PatientMapperImpl();
+    }
+
+    @Benchmark
+    public List<DoctorDTO> doctorsLegacyTransactional() {
+        List<DoctorDTO> result = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            result.add(legacyProxy.mapDoctorToDoctorDTO(doctor));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<DoctorDTO> doctorsLegacyDirect() {
+        List<DoctorDTO> result = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            result.add(legacy.mapDoctorToDoctorDTO(doctor));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<DoctorDTO> doctorsGenerated() {
+        List<DoctorDTO> result = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            result.add(doctorMapper.toDoctorDTO(doctor));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<PatientSummaryDTO> patientsLegacyTransactional() {
+        List<PatientSummaryDTO> result = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            result.add(legacyProxy.mapPatientToSummary(patient));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<PatientSummaryDTO> patientsGenerated() {
+        List<PatientSummaryDTO> result = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            result.add(patientMapper.toSummary(patient));
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DtoMappingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static Doctor doctor(int i) {
+        Doctor doctor = new Doctor();
+        doctor.setId((long) i);
+        doctor.setFirstName("Doctor" + i);
+        doctor.setLastName("Last" + i);
+        doctor.setEmail("doctor" + i + "@example.com");
+        doctor.setCity("Tel Aviv");
+        doctor.setCountry("Israel");
+        doctor.setStreet("Herzl " + i);
+        doctor.setBirthDay("01/01/1980");
+        doctor.setImageHash(i % 2 == 0 ? "0123456789abcdef0123456789abcdef" : null);
+        doctor.setSpecialization(Specialization.values()[i % Specialization.values().length]);
+        doctor.setHospital("Ichilov");
+        doctor.setHmo("Clalit");
+        doctor.setExperience(i % 40);
+        doctor.setInquiries(new ArrayList<>());
+        doctor.setPatients(new ArrayList<>());
+        doctor.setAppointments(new ArrayList<>());
+        return doctor;
+    }
+
+    private static Patient patient(int i) {
+        Patient patient = new Patient();
+        patient.setId((long) i);
+        patient.setFirstName("Patient" + i);
+        patient.setLastName("Last" + i);
+        patient.setEmail("patient" + i + "@example.com");
+        patient.setCity("Haifa");
+        patient.setCountry("Israel");
+        patient.setStreet("Allenby " + i);
+        patient.setBirthDay("01/01/1990");
+        patient.setImageHash(i % 2 == 0 ? "0123456789abcdef0123456789abcdef" : null);
+        return patient;
+    }
+
+    //העתק של המיפוי הידני כפי שהיה ב DoctorService וב PatientService
+    public static class LegacyMappers {
+
+        @Transactional
+        public DoctorDTO mapDoctorToDoctorDTO(Doctor doctor) {
+            if (doctor != null) {
+                DoctorDTO doctorDTO = new DoctorDTO();
+                doctorDTO.setId(doctor.getId());
+                doctorDTO.setFirstName(doctor.getFirstName());
+                doctorDTO.setLastName(doctor.getLastName());
+                doctorDTO.setEmail(doctor.getEmail());
+                doctorDTO.setCity(doctor.getCity());
+                doctorDTO.setStreet(doctor.getStreet());
+                doctorDTO.setCountry(doctor.getCountry());
+                doctorDTO.setHmo(doctor.getHmo());
+                doctorDTO.setExperience(doctor.getExperience());
+                doctorDTO.setHospital(doctor.getHospital());
+                doctorDTO.setSpecialization(doctor.getSpecialization() != null ? doctor.getSpecialization().toString() : null);
+                doctorDTO.setBirthDay(doctor.getBirthDay());
+                doctorDTO.setImageUrl(ProfileImageUrls.doctorImage(doctor.getId(), doctor.getImageHash()));
+                doctorDTO.setThumbnailUrl(ProfileImageUrls.doctorThumbnail(doctor.getId(), doctor.getImageHash()));
+                doctorDTO.setInquiriesList(doctor.getInquiries());
+                doctorDTO.setPatients(doctor.getPatients());
+                doctorDTO.setAppointments(doctor.getAppointments());
+                return doctorDTO;
+            }
+            return null;
+        }
+
+        @Transactional
+        public PatientSummaryDTO mapPatientToSummary(Patient patient) {
+            PatientSummaryDTO summary = new PatientSummaryDTO();
+            summary.setId(patient.getId());
+            summary.setFirstName(patient.getFirstName());
+            summary.setLastName(patient.getLastName());
+            summary.setEmail(patient.getEmail());
+            summary.setCity(patient.getCity());
+            summary.setCountry(patient.getCountry());
+            summary.setStreet(patient.getStreet());
+            summary.setBirthDay(patient.getBirthDay());
+            summary.setImageUrl(ProfileImageUrls.patientImage(patient.getId(), patient.getImageHash()));
+            summary.setThumbnailUrl(ProfileImageUrls.patientThumbnail(patient.getId(), patient.getImageHash()));
+            return summary;
+        }
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
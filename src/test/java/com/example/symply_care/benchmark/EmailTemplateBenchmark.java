@@ -0,0 +1,72 @@
+package com.example.symply_care.benchmark;
+
+import com.example.symply_care.service.EmailTemplateService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//משווה את בניית גוף המייל בשרשור מחרוזות (כמו שהיה בRabbitMQConsumer) לרינדור של תבנית מקומפלת עם escaping,
+//לכל סוגי המיילים. כדאי להריץ עם -prof gc כדי לראות גם כמה זיכרון כל מייל מקצה
+//הרצה: mvn -q test-compile exec:exec -Dexec.args="-cp %classpath org.openjdk.jmh.Main EmailTemplateBenchmark -prof gc"
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private EmailTemplateService emailTemplateService;
+    private String doctorName;
+    private String patientName;
+    private String message;
+    private String email;
+
+    @Setup
+    public void setUp() throws IOException {
+        emailTemplateService = new EmailTemplateService("v1");
+        doctorName = "Dana Levi";
+        patientName = "Avi Cohen";
+        message = "Hello, I would like to know more about the application & how to join as a clinic.";
+        email = "someone@example.com";
+    }
+
+    @Benchmark
+    public String appointmentConcatenation() {
+        return "<html>" +
+                "<body style=\"font-family: Arial, sans-serif;\">" +
+                "<div style=\"background-color: #f2f2f2; padding: 20px;\">" +
+                "<h1 style=\"color:royalblue; margin-bottom: 20px;\">Hi! It's SYMPly - Care</h1>" +
+                "<p style=\"margin-bottom: 20px;\">We are pleased to inform you that a new meeting has been scheduled for you with the following details:</p>" +
+                "<ul style=\"margin-left: 40px;\">" +
+                "<li style=\"margin-bottom: 10px;\"><strong>Doctor:</strong> " + doctorName + "</li>" +
+                "<li style=\"margin-bottom: 10px;\"><strong>Patient:</strong> " + patientName + "</li>" +
+                "</ul>" +
+                "<p style=\"margin-bottom: 20px;\">For more details, please check your profile on our website.</p>" +
+                "</div>" +
+                "</body>" +
+                "</html>";
+    }
+
+    @Benchmark
+    public String appointmentTemplate() {
+        return emailTemplateService.render("appointment", Map.of("doctorName", doctorName, "patientName", patientName));
+    }
+
+    @Benchmark
+    public String contactUsConcatenation() {
+        return "<html><body><h1 style=\"color:royalblue;\">Hi! it's SYMPly - Care</h1><br/><br/>"
+                + "<p>Information:</p>"
+                + "<p>Message: " + message + "</p>"
+                + "<p>From this Email Address: " + email + "</p>"
+                + "<p>For more details, check the website in your profile.</p>"
+                + "</body></html>";
+    }
+
+    @Benchmark
+    public String contactUsTemplate() {
+        return emailTemplateService.render("contact-us", Map.of("message", message, "email", email));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.symply_care.benchmark;
+
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorAvailabilityRepository;
+import com.example.symply_care.service.ScheduleIndex;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//זמן החיפוש של תורים פנויים באינדקס שבזיכרון: 200 רופאים באותה התמחות, ימים א'-ה' 08:00-16:00 בתורים של 30 דקות,
+//וכחצי מהתורים בחודש הקרוב כבר תפוסים. המטרה היא מיקרו-שניות לשאילתה, בלי לגשת לבסיס הנתונים
+//הרצה: mvn -q test-compile exec:exec -Dexec.args="-cp %classpath org.openjdk.jmh.Main ScheduleIndexBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleIndexBenchmark {
+
+    private static final int DOCTORS = 200;
+    private static final Specialization SPECIALIZATION = Specialization.values()[0];
+
+    private ScheduleIndex scheduleIndex;
+    private Instant from;
+    private Instant to;
+
+    @Setup
+    public void setUp() {
+        List<Object[]> templates = new ArrayList<>();
+        List<Object[]> appointments = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        for (long doctorId = 1; doctorId <= DOCTORS; doctorId++) {
+            for (DayOfWeek day : List.of(DayOfWeek.SUNDAY, DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY)) {
+                templates.add(new Object[]{doctorId, SPECIALIZATION, day, LocalTime.of(8, 0), LocalTime.of(16, 0), 30});
+            }
+            for (int dayOffset = 1; dayOffset <= 28; dayOffset++) {
+                for (int slot = 0; slot < 16; slot++) {
+                    if (random.nextBoolean()) {
+                        Instant startsAt = today.plusDays(dayOffset).atTime(8, 0).plusMinutes(30L * slot)
+                                .atZone(ZoneId.systemDefault()).toInstant();
+                        appointments.add(new Object[]{doctorId, startsAt, startsAt.plus(30, ChronoUnit.MINUTES)});
+                    }
+                }
+            }
+        }
+        DoctorAvailabilityRepository doctorAvailabilityRepository = mock(DoctorAvailabilityRepository.class);
+        AppointmentsRepository appointmentsRepository = mock(AppointmentsRepository.class);
+        when(doctorAvailabilityRepository.findAllForIndex()).thenReturn(templates);
+        when(appointmentsRepository.findUpcomingForIndex(any())).thenReturn(appointments);
+        scheduleIndex = new ScheduleIndex(doctorAvailabilityRepository, appointmentsRepository, mock(TaskScheduler.class), 300_000);
+        scheduleIndex.reload();
+        from = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        to = from.plus(14, ChronoUnit.DAYS);
+    }
+
+    @Benchmark
+    public List<ScheduleIndex.Slot> freeSlotsForDoctor() {
+        return scheduleIndex.freeSlots(100L, from, to, 10);
+    }
+
+    @Benchmark
+    public List<ScheduleIndex.Slot> freeSlotsBySpecialization() {
+        return scheduleIndex.freeSlotsBySpecialization(SPECIALIZATION, from, to, 20);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.controller.RabbitMQController;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.mapper.DoctorMapperImpl;
+import com.example.symply_care.mapper.PatientMapperImpl;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+
+//קביעת תורים מול בסיס נתונים אמיתי (H2) שברירת המחדל שלו היא REPEATABLE READ, כמו בMySQL.
+//הקביעה השנייה נעצרת אחרי שקראה את המטופל והרופא (ולכן כבר יש לה snapshot), וממשיכה רק אחרי הcommit של הראשונה.
+//אם בדיקת החפיפה הייתה רואה את הsnapshot הישן, שני התורים החופפים היו נשמרים
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:booking-isolation;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.transaction-isolation=TRANSACTION_REPEATABLE_READ"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PatientService.class, AppointmentService.class, SchedulingService.class, DoctorMapperImpl.class, PatientMapperImpl.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AppointmentBookingIsolationTest {
+
+    @MockBean
+    private ScheduleIndex scheduleIndex;
+    @MockBean
+    private RabbitMQController rabbitMQController;
+    @MockBean
+    private ProfileImageService profileImageService;
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+
+    @SpyBean
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private AppointmentsRepository appointmentsRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Instant tomorrow;
+
+    @BeforeEach
+    void setUp() {
+        tomorrow = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            persistDoctor(1L);
+            persistDoctor(2L);
+            persistPatient(101L);
+            persistPatient(102L);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.createNativeQuery("DELETE FROM doctors_appointments").executeUpdate();
+            entityManager.createNativeQuery("DELETE FROM patients_appointments").executeUpdate();
+            entityManager.createNativeQuery("DELETE FROM appointments").executeUpdate();
+            entityManager.createQuery("delete from Patient").executeUpdate();
+            entityManager.createQuery("delete from Doctor").executeUpdate();
+        });
+    }
+
+    @Test
+    void doctorIsNotDoubleBookedByATransactionThatStartedEarlier() throws Exception {
+        //אותו רופא, מטופלים שונים, 10:00-10:30 מול 10:15-10:45
+        assertSecondBookingRejected(1L, 101L, tomorrow, 1L, 102L, tomorrow.plus(15, ChronoUnit.MINUTES));
+    }
+
+    @Test
+    void patientIsNotDoubleBookedByATransactionThatStartedEarlier() throws Exception {
+        //אותו מטופל אצל שני רופאים
+        assertSecondBookingRejected(1L, 101L, tomorrow, 2L, 101L, tomorrow.plus(15, ChronoUnit.MINUTES));
+    }
+
+    private void assertSecondBookingRejected(long firstDoctor, long firstPatient, Instant firstStart,
+                                             long secondDoctor, long secondPatient, Instant secondStart) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch snapshotTaken = new CountDownLatch(1);
+        CountDownLatch firstCommitted = new CountDownLatch(1);
+        Thread main = Thread.currentThread();
+        //הקביעה השנייה נעצרת אחרי קריאת הרופא, לפני AppointmentService.book.
+        //הspy הוא של proxy בלי מימוש, לכן הקריאה האמיתית עוברת לrepository רגיל
+        DoctorRepository real = new JpaRepositoryFactory(entityManager).getRepository(DoctorRepository.class);
+        doAnswer(invocation -> {
+            Object doctor = real.findById(invocation.getArgument(0));
+            if (Thread.currentThread() != main) {
+                snapshotTaken.countDown();
+                await(firstCommitted);
+            }
+            return doctor;
+        }).when(doctorRepository).findById(anyLong());
+        try {
+            Future<?> second = executor.submit(() -> book(secondDoctor, secondPatient, secondStart));
+
+            await(snapshotTaken);
+            book(firstDoctor, firstPatient, firstStart);
+            firstCommitted.countDown();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> second.get(30, TimeUnit.SECONDS));
+            assertInstanceOf(NoSuchElementException.class, failure.getCause());
+            assertEquals(1, appointmentsRepository.count());
+        } finally {
+            firstCommitted.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private void book(long doctorId, long patientId, Instant startsAt) {
+        try {
+            patientService.addAppointmentToPatient(patientId, Map.of(
+                    "doctor", Map.of("id", doctorId),
+                    "date", AppointmentService.formatDate(startsAt),
+                    "durationMinutes", 30));
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void persistDoctor(long id) {
+        Doctor doctor = new Doctor();
+        doctor.setId(id);
+        doctor.setFirstName("Doctor");
+        doctor.setLastName("No" + id);
+        doctor.setEmail("doctor" + id + "@example.com");
+        doctor.setPassword("secret");
+        doctor.setSpecialization(Specialization.values()[0]);
+        doctor.setExperience(5);
+        doctor.setPatients(new ArrayList<>());
+        doctor.setAppointments(new ArrayList<>());
+        doctor.setInquiries(new ArrayList<>());
+        entityManager.persist(doctor);
+    }
+
+    private void persistPatient(long id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setFirstName("Patient");
+        patient.setLastName("No" + id);
+        patient.setEmail("patient" + id + "@example.com");
+        patient.setPassword("secret");
+        patient.setDoctors(new ArrayList<>());
+        patient.setAppointments(new ArrayList<>());
+        patient.setInquiries(new ArrayList<>());
+        entityManager.persist(patient);
+    }
+}
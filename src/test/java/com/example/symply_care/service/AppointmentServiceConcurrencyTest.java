@@ -0,0 +1,157 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.Appointments;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.entity.Patient;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorRepository;
+import com.example.symply_care.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//הרבה threads מנסים לקבוע תורים חופפים בו זמנית. בדיקת החפיפה ב"בסיס הנתונים" המדומה איטית בכוונה,
+//כך שבלי המנעולים שני threads היו עוברים אותה יחד ושומרים תורים חופפים
+class AppointmentServiceConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 20;
+
+    private final List<Appointments> stored = new CopyOnWriteArrayList<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private AppointmentsRepository appointmentsRepository;
+    private AppointmentService appointmentService;
+
+    @BeforeEach
+    void setUp() {
+        appointmentsRepository = mock(AppointmentsRepository.class);
+        DoctorRepository doctorRepository = mock(DoctorRepository.class);
+        PatientRepository patientRepository = mock(PatientRepository.class);
+        when(doctorRepository.lockById(anyLong())).thenAnswer(invocation -> Optional.of(doctor(invocation.getArgument(0))));
+        when(patientRepository.lockById(anyLong())).thenAnswer(invocation -> Optional.of(patient(invocation.getArgument(0))));
+        when(appointmentsRepository.lockDoctorOverlaps(anyLong(), any(), any(), any())).thenAnswer(invocation ->
+                slowOverlaps(invocation.getArgument(0), invocation.getArgument(2), invocation.getArgument(3), true));
+        when(appointmentsRepository.lockPatientOverlaps(anyLong(), any(), any(), any())).thenAnswer(invocation ->
+                slowOverlaps(invocation.getArgument(0), invocation.getArgument(2), invocation.getArgument(3), false));
+        when(appointmentsRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            Appointments appointment = invocation.getArgument(0);
+            Thread.sleep(1);
+            appointment.setId((long) ids.incrementAndGet());
+            stored.add(appointment);
+            return appointment;
+        });
+        appointmentService = new AppointmentService(appointmentsRepository, doctorRepository, patientRepository,
+                mock(ScheduleIndex.class), mock(SchedulingService.class), 64, 10_000);
+    }
+
+    @Test
+    void concurrentBookingsNeverOverlap() throws Exception {
+        Instant base = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    //שני רופאים ושמונה מטופלים, ותחילות כל 10 דקות עם תורים של 30 דקות - הרבה חפיפות
+                    long doctorId = 1 + (thread + i) % 2;
+                    long patientId = 100 + (thread * 7 + i) % 8;
+                    Instant startsAt = base.plus(10L * ((thread + i * 3) % 12), ChronoUnit.MINUTES);
+                    try {
+                        bookInTransaction(doctorId, patientId, startsAt);
+                    } catch (NoSuchElementException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertFalse(stored.isEmpty());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, stored.size() + rejected.get());
+        for (int i = 0; i < stored.size(); i++) {
+            for (int j = i + 1; j < stored.size(); j++) {
+                Appointments a = stored.get(i);
+                Appointments b = stored.get(j);
+                if (overlaps(a, b)) {
+                    assertNotEquals(a.getDoctor().getId(), b.getDoctor().getId(), "doctor double-booked");
+                    assertNotEquals(a.getPatient().getId(), b.getPatient().getId(), "patient double-booked");
+                }
+            }
+        }
+    }
+
+    @Test
+    void uniqueConstraintViolationIsReportedAsUnavailable() {
+        doThrow(new DataIntegrityViolationException("uk_appointments_doctor_starts_at"))
+                .when(appointmentsRepository).saveAndFlush(any());
+        Instant startsAt = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+
+        assertThrows(NoSuchElementException.class, () -> bookInTransaction(1L, 100L, startsAt));
+    }
+
+    //מדמה את הטרנזקציה: המנעולים משתחררים בafterCompletion כמו אחרי commit אמיתי
+    private void bookInTransaction(long doctorId, long patientId, Instant startsAt) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            appointmentService.book(doctor(doctorId), patient(patientId), AppointmentService.formatDate(startsAt), 30);
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        }
+    }
+
+    private List<Long> slowOverlaps(long id, Instant startsAt, Instant endsAt, boolean byDoctor) throws InterruptedException {
+        List<Long> overlaps = stored.stream()
+                .filter(a -> (byDoctor ? a.getDoctor().getId() : a.getPatient().getId()) == id)
+                .filter(a -> a.getStartsAt().isBefore(endsAt) && a.getEndsAt().isAfter(startsAt))
+                .map(Appointments::getId)
+                .toList();
+        Thread.sleep(1);
+        return overlaps;
+    }
+
+    private static boolean overlaps(Appointments a, Appointments b) {
+        return a.getStartsAt().isBefore(b.getEndsAt()) && b.getStartsAt().isBefore(a.getEndsAt());
+    }
+
+    private static Doctor doctor(long id) {
+        Doctor doctor = new Doctor();
+        doctor.setId(id);
+        return doctor;
+    }
+
+    private static Patient patient(long id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        return patient;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.TokenRevocationMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//שני "שרתים" שמחוברים דרך fanout בזיכרון במקום RabbitMQ
+class ClusteredTokenRevocationStoreTest {
+
+    private final List<ClusteredTokenRevocationStore> nodes = new CopyOnWriteArrayList<>();
+    private final List<String> usersEvictedOnA = new CopyOnWriteArrayList<>();
+    private final List<String> usersEvictedOnB = new CopyOnWriteArrayList<>();
+    private ClusteredTokenRevocationStore nodeA;
+    private ClusteredTokenRevocationStore nodeB;
+
+    @BeforeEach
+    void setUp() {
+        RevocationBroadcaster inProcessFanout = message -> nodes.forEach(node -> node.onRemoteRevocation(copyOf(message)));
+        nodeA = new ClusteredTokenRevocationStore(inProcessFanout, usersEvictedOnA::add, 1000, 0.01);
+        nodeB = new ClusteredTokenRevocationStore(inProcessFanout, usersEvictedOnB::add, 1000, 0.01);
+        nodes.add(nodeA);
+        nodes.add(nodeB);
+    }
+
+    @Test
+    void revocationOnOneNodeIsVisibleOnTheOther() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        nodeA.revoke("jti-1", expiresAt);
+
+        assertTrue(nodeA.isRevoked("jti-1"));
+        assertTrue(nodeB.isRevoked("jti-1"));
+        assertFalse(nodeB.isRevoked("jti-2"));
+    }
+
+    @Test
+    void expiredTokensAreNotRevokedOrBroadcast() {
+        nodeA.revoke("jti-old", System.currentTimeMillis() - 1);
+
+        assertFalse(nodeA.isRevoked("jti-old"));
+        assertFalse(nodeB.isRevoked("jti-old"));
+    }
+
+    @Test
+    void revocationsSurviveBloomFilterRebuild() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        for (int i = 0; i < 5000; i++) {
+            nodeB.revoke("jti-" + i, expiresAt);
+        }
+
+        nodeA.removeExpiredTokens();
+
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(nodeA.isRevoked("jti-" + i));
+        }
+        assertFalse(nodeA.isRevoked("jti-unknown"));
+    }
+
+    @Test
+    void broadcastFailureStillRevokesLocally() {
+        ClusteredTokenRevocationStore isolated = new ClusteredTokenRevocationStore(message -> {
+            throw new IllegalStateException("broker down");
+        }, email -> {
+        }, 1000, 0.01);
+
+        isolated.revoke("jti-1", System.currentTimeMillis() + 60_000);
+        isolated.revokeUser("user@example.com");
+
+        assertTrue(isolated.isRevoked("jti-1"));
+    }
+
+    //שרת שעולה אחרי הביטול מקבל אותו מהשרתים שכבר רצים
+    @Test
+    void nodeStartedLaterCatchesUpWithLiveRevocations() {
+        nodeA.revoke("jti-live", System.currentTimeMillis() + 60_000);
+        ClusteredTokenRevocationStore nodeC = new ClusteredTokenRevocationStore(message ->
+                nodes.forEach(node -> node.onRemoteRevocation(copyOf(message))), email -> {
+        }, 1000, 0.01);
+        nodes.add(nodeC);
+        assertFalse(nodeC.isRevoked("jti-live"));
+
+        nodeC.requestSync();
+
+        assertTrue(nodeC.isRevoked("jti-live"));
+    }
+
+    //שינוי סיסמה בשרת אחד מוחק את המשתמש מהמטמונים של שאר השרתים. השרת ששלח כבר עשה את זה בעצמו
+    @Test
+    void credentialsChangeIsSentToOtherNodes() {
+        nodeA.revokeUser("user@example.com");
+
+        assertEquals(List.of("user@example.com"), usersEvictedOnB);
+        assertTrue(usersEvictedOnA.isEmpty());
+        assertFalse(nodeB.isRevoked("user@example.com"));
+    }
+
+    private static TokenRevocationMessage copyOf(TokenRevocationMessage message) {
+        return new TokenRevocationMessage(message.getKind(), message.getTokenId(), message.getExpiresAtMillis(),
+                message.getOriginNode(), message.getUserEmail());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.symply_care.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+//שרת SMTP מדומה שלוקח כמה מילישניות לכל מייל וסופר כמה מיילים נשלחים במקביל לכל דומיין
+class EmailDeliveryServiceTest {
+
+    private static final int WORKERS = 6;
+    private static final int PER_DOMAIN_LIMIT = 2;
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+    private final AtomicInteger maxTotalInFlight = new AtomicInteger();
+    private final AtomicInteger staleConnections = new AtomicInteger();
+    private SmtpTransportPool transportPool;
+    private EmailDeliveryService emailDeliveryService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        transportPool = mock(SmtpTransportPool.class);
+        when(transportPool.borrow(anyLong())).thenAnswer(invocation -> new SmtpTransportPool.PooledTransport(transport()));
+        emailDeliveryService = new EmailDeliveryService(transportPool, new JavaMailSenderImpl(), new SimpleMeterRegistry(),
+                "clinic@example.com", WORKERS, 100, PER_DOMAIN_LIMIT, 5_000, 5_000, 5_000);
+        emailDeliveryService.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        emailDeliveryService.destroy();
+    }
+
+    @Test
+    void limitsConcurrencyPerRecipientDomain() throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            results.add(emailDeliveryService.submit("user" + i + "@domain" + (i % 3) + ".com", "subject", "<p>body</p>"));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertEquals(3, maxInFlight.size());
+        maxInFlight.forEach((domain, max) -> assertTrue(max.get() <= PER_DOMAIN_LIMIT, domain + " had " + max + " in flight"));
+        assertTrue(maxTotalInFlight.get() > PER_DOMAIN_LIMIT, "domains were not delivered in parallel");
+        verify(transportPool, times(60)).release(any());
+    }
+
+    @Test
+    void rejectedRecipientFailsPermanently() {
+        CompletableFuture<Void> result = emailDeliveryService.submit("rejected@domain0.com", "subject", "<p>body</p>");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertTrue(EmailDeliveryService.isPermanent(error.getCause()));
+    }
+
+    @Test
+    void staleConnectionIsReplacedOnce() throws Exception {
+        staleConnections.set(1);
+
+        emailDeliveryService.submit("user@domain0.com", "subject", "<p>body</p>").get(10, TimeUnit.SECONDS);
+
+        verify(transportPool, times(1)).invalidate(any());
+        verify(transportPool, times(1)).release(any());
+    }
+
+    @Test
+    void missingDomainFailsPermanently() {
+        CompletableFuture<Void> result = emailDeliveryService.submit("nobody", "subject", "<p>body</p>");
+
+        assertTrue(result.isCompletedExceptionally());
+        ExecutionException error = assertThrows(ExecutionException.class, result::get);
+        assertTrue(EmailDeliveryService.isPermanent(error.getCause()));
+    }
+
+    private Transport transport() throws MessagingException {
+        Transport transport = mock(Transport.class);
+        doAnswer(invocation -> {
+            Address[] recipients = invocation.getArgument(1);
+            String recipient = recipients[0].toString();
+            if (staleConnections.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                throw new MessagingException("Connection closed by server");
+            }
+            if (recipient.startsWith("rejected@")) {
+                throw new SendFailedException("550 No such user", null, new Address[0], new Address[0],
+                        new Address[]{new InternetAddress(recipient)});
+            }
+            String domain = recipient.substring(recipient.indexOf('@') + 1);
+            int domainCount = inFlight.computeIfAbsent(domain, d -> new AtomicInteger()).incrementAndGet();
+            maxInFlight.computeIfAbsent(domain, d -> new AtomicInteger()).accumulateAndGet(domainCount, Math::max);
+            maxTotalInFlight.accumulateAndGet(totalInFlight.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            totalInFlight.decrementAndGet();
+            inFlight.get(domain).decrementAndGet();
+            return null;
+        }).when(transport).sendMessage(any(), any());
+        return transport;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.util.HtmlTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailTemplateServiceTest {
+
+    @Test
+    void rendersTemplateOfConfiguredVersion() throws Exception {
+        EmailTemplateService emailTemplateService = new EmailTemplateService("v1");
+
+        String body = emailTemplateService.render("appointment", Map.of("doctorName", "Dana Levi", "patientName", "Avi Cohen"));
+
+        assertTrue(body.contains("<strong>Doctor:</strong> Dana Levi</li>"), body);
+        assertTrue(body.contains("<strong>Patient:</strong> Avi Cohen</li>"), body);
+        assertFalse(body.contains("{{"), body);
+    }
+
+    //הודעה מטופס "צור קשר" לא יכולה להוסיף תגיות או תכונות למייל
+    @Test
+    void escapesUserContent() throws Exception {
+        EmailTemplateService emailTemplateService = new EmailTemplateService("v1");
+
+        String body = emailTemplateService.render("contact-us",
+                Map.of("message", "<script>alert('x')</script> & \"more\"", "email", "a@b.com"));
+
+        assertTrue(body.contains("Message: &lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt; &amp; &quot;more&quot;</p>"), body);
+        assertFalse(body.contains("<script>"), body);
+    }
+
+    @Test
+    void buffersAreReusedBetweenRenders() throws Exception {
+        EmailTemplateService emailTemplateService = new EmailTemplateService("v1");
+
+        String first = emailTemplateService.render("answer", Map.of("doctorName", "A very long doctor name", "recipientName", "B"));
+        String second = emailTemplateService.render("answer", Map.of("doctorName", "C", "recipientName", "D"));
+
+        assertTrue(first.contains("Doctor: A very long doctor name</p>"), first);
+        assertTrue(second.contains("Doctor: C</p>"), second);
+        assertFalse(second.contains("long"), second);
+    }
+
+    //מה שRabbitMQConsumer בודק בעלייה
+    @Test
+    void parametersMustMatchTheTemplateSlots() throws Exception {
+        EmailTemplateService emailTemplateService = new EmailTemplateService("v1");
+
+        emailTemplateService.requireParameters("appointment", Set.of("patientName", "doctorName"));
+        assertThrows(IllegalStateException.class, () -> emailTemplateService.requireParameters("appointment", Set.of("doctorName")));
+        assertThrows(IllegalStateException.class,
+                () -> emailTemplateService.requireParameters("answer", Set.of("doctorName", "recipientName", "patientName")));
+        assertThrows(IllegalStateException.class, () -> emailTemplateService.requireParameters("missing", Set.of()));
+    }
+
+    @Test
+    void unknownTemplateOrVersionIsRejected() throws Exception {
+        EmailTemplateService emailTemplateService = new EmailTemplateService("v1");
+
+        assertThrows(IllegalArgumentException.class, () -> emailTemplateService.render("missing", Map.of()));
+        assertThrows(IllegalStateException.class, () -> new EmailTemplateService("v0"));
+        assertThrows(IllegalArgumentException.class, () -> HtmlTemplate.compile("<p>{{name</p>"));
+    }
+}
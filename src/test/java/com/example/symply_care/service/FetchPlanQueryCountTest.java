@@ -0,0 +1,274 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.controller.RabbitMQController;
+import com.example.symply_care.dto.DoctorDTO;
+import com.example.symply_care.dto.DoctorSummaryDTO;
+import com.example.symply_care.dto.PatientDTO;
+import com.example.symply_care.dto.PatientSummaryDTO;
+import com.example.symply_care.entity.*;
+import com.example.symply_care.mapper.DoctorMapperImpl;
+import com.example.symply_care.mapper.PatientMapperImpl;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//סופר את שאילתות הSQL של כל פעולה על רופא עם מעט מטופלים ועל רופא עם הרבה מטופלים
+//מספר השאילתות צריך להיות קבוע ולא לגדול עם כמות הנתונים (N+1)
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"})
+@Import({DoctorService.class, PatientService.class, DoctorMapperImpl.class, PatientMapperImpl.class})
+class FetchPlanQueryCountTest {
+
+    private static final int FEW = 3;
+    private static final int MANY = 20;
+
+    @MockBean
+    private AppointmentService appointmentService;
+    @MockBean
+    private ScheduleIndex scheduleIndex;
+    @MockBean
+    private RabbitMQController rabbitMQController;
+    @MockBean
+    private ProfileImageService profileImageService;
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private DoctorService doctorService;
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private long nextPatientId = 1000;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getDoctorByIdIsBounded() {
+        long small = seedDoctor(1L, FEW);
+        long large = seedDoctor(2L, MANY);
+
+        long smallCount = count(() -> doctorService.getDoctorByID(small));
+        long largeCount = count(() -> doctorService.getDoctorByID(large));
+
+        assertEquals(smallCount, largeCount);
+        assertTrue(largeCount <= 5, "getDoctorByID ran " + largeCount + " statements");
+    }
+
+    @Test
+    void getPatientsOfDoctorIsBounded() {
+        long small = seedDoctor(1L, FEW);
+        long large = seedDoctor(2L, MANY);
+
+        long smallCount = count(() -> doctorService.getPatientsOfDoctor(small));
+        long largeCount = count(() -> {
+            List<PatientDTO> patients = doctorService.getPatientsOfDoctor(large);
+            assertEquals(MANY, patients.size());
+            patients.forEach(patient -> assertEquals(1, patient.getAppointments().size()));
+            return patients;
+        });
+
+        assertEquals(smallCount, largeCount);
+        assertTrue(largeCount <= 4, "getPatientsOfDoctor ran " + largeCount + " statements");
+    }
+
+    @Test
+    void patientSummariesOfDoctorAreBounded() {
+        long small = seedDoctor(1L, FEW);
+        long large = seedDoctor(2L, MANY);
+
+        long smallCount = count(() -> doctorService.getPatientSummariesOfDoctor(small));
+        long largeCount = count(() -> {
+            List<PatientSummaryDTO> patients = doctorService.getPatientSummariesOfDoctor(large);
+            assertEquals(MANY, patients.size());
+            patients.forEach(patient -> assertEquals(1, patient.getAppointmentsCount()));
+            return patients;
+        });
+
+        assertEquals(smallCount, largeCount);
+    }
+
+    @Test
+    void getInquiriesAndAppointmentsOfDoctorAreSingleStatements() {
+        long doctor = seedDoctor(1L, MANY);
+
+        assertEquals(1, count(() -> doctorService.getInquiriesOfDoctor(doctor)));
+        assertEquals(1, count(() -> doctorService.getAppointmentsOfDoctor(doctor)));
+    }
+
+    @Test
+    void getDoctorsOfPatientIsBounded() {
+        seedDoctor(1L, FEW);
+        seedDoctor(2L, FEW);
+        seedDoctor(3L, FEW);
+        Patient shared = newPatient();
+        for (long doctorId = 1; doctorId <= 3; doctorId++) {
+            Doctor doctor = entityManager.find(Doctor.class, doctorId);
+            doctor.getPatients().add(shared);
+            shared.getDoctors().add(doctor);
+        }
+        flushAndClear();
+
+        long statements = count(() -> {
+            List<DoctorDTO> doctors = patientService.getDoctorsOfPatient(shared.getId());
+            assertEquals(3, doctors.size());
+            return doctors;
+        });
+
+        assertTrue(statements <= 5, "getDoctorsOfPatient ran " + statements + " statements");
+    }
+
+    @Test
+    void getAllDoctorSummariesIsBounded() {
+        seedDoctor(1L, FEW);
+        long smallCount = count(() -> doctorService.getAllDoctorSummaries());
+        seedDoctor(2L, MANY);
+        seedDoctor(3L, MANY);
+        long largeCount = count(() -> {
+            List<DoctorSummaryDTO> doctors = doctorService.getAllDoctorSummaries();
+            assertEquals(3, doctors.size());
+            doctors.forEach(doctor -> assertEquals(doctor.getPatientsCount(), doctor.getInquiriesCount()));
+            return doctors;
+        });
+
+        assertEquals(smallCount, largeCount);
+    }
+
+    //העמודה לא חייבת להיות מלאה בשורות ישנות
+    @Test
+    void summaryOfDoctorWithoutSpecialization() {
+        Doctor doctor = new Doctor();
+        doctor.setId(1L);
+
+        assertNull(new DoctorMapperImpl().toSummary(doctor).getSpecialization());
+    }
+
+    @Test
+    void summariesAreBoundedAndPaged() {
+        long doctor = seedDoctor(1L, MANY);
+        Long patientId = nextPatientId - 1;
+
+        long statements = count(() -> {
+            DoctorSummaryDTO summary = doctorService.getDoctorSummary(doctor);
+            assertEquals(MANY, summary.getPatientsCount());
+            assertEquals(DoctorService.SUMMARY_RECENT_ITEMS, summary.getRecentInquiries().size());
+            assertEquals(DoctorService.SUMMARY_RECENT_ITEMS, summary.getUpcomingAppointments().size());
+            return summary;
+        });
+        assertTrue(statements <= 6, "getDoctorSummary ran " + statements + " statements");
+
+        assertEquals(1, patientService.getPatientSummary(patientId).getDoctorsCount());
+        assertEquals(MANY, doctorService.getPatientsOfDoctor(doctor, 0, 5).getTotalElements());
+        assertEquals(5, doctorService.getInquiriesOfDoctor(doctor, 1, 5, "asc").getContent().size());
+    }
+
+    @Test
+    void getInquiriesAndAppointmentsOfPatientAreBounded() {
+        seedDoctor(1L, FEW);
+        Long patientId = nextPatientId - 1;
+
+        assertEquals(2, count(() -> patientService.getInquiriesOfPatient(patientId)));
+        assertEquals(2, count(() -> patientService.getAppointmentsOfPatient(patientId)));
+    }
+
+    private long count(Supplier<?> action) {
+        flushAndClear();
+        statistics.clear();
+        action.get();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    //רופא עם patients מטופלים, ולכל מטופל תור אחד ופנייה אחת
+    private long seedDoctor(long id, int patients) {
+        Doctor doctor = new Doctor();
+        doctor.setId(id);
+        doctor.setFirstName("Doctor");
+        doctor.setLastName("No" + id);
+        doctor.setEmail("doctor" + id + "@example.com");
+        doctor.setPassword("secret");
+        doctor.setSpecialization(Specialization.values()[0]);
+        doctor.setExperience(5);
+        doctor.setPatients(new ArrayList<>());
+        doctor.setAppointments(new ArrayList<>());
+        doctor.setInquiries(new ArrayList<>());
+        entityManager.persist(doctor);
+
+        Instant start = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 0; i < patients; i++) {
+            Patient patient = newPatient();
+            doctor.getPatients().add(patient);
+            patient.getDoctors().add(doctor);
+
+            Appointments appointment = new Appointments();
+            appointment.setDoctor(doctor);
+            appointment.setPatient(patient);
+            appointment.setStartsAt(start.plus(30L * i, ChronoUnit.MINUTES));
+            appointment.setEndsAt(appointment.getStartsAt().plus(30, ChronoUnit.MINUTES));
+            appointment.setDurationMinutes(30);
+            appointment.setDate(AppointmentService.formatDate(appointment.getStartsAt()));
+            entityManager.persist(appointment);
+            doctor.getAppointments().add(appointment);
+            patient.getAppointments().add(appointment);
+
+            Inquiries inquiry = new Inquiries();
+            inquiry.setDoctor(new ArrayList<>(List.of(doctor)));
+            inquiry.setPatient(patient);
+            inquiry.setSymptoms("fever");
+            inquiry.setSenderId(patient.getId());
+            inquiry.setCreatedAt(LocalDateTime.now());
+            entityManager.persist(inquiry);
+            doctor.getInquiries().add(inquiry);
+            patient.getInquiries().add(inquiry);
+        }
+        flushAndClear();
+        return id;
+    }
+
+    private Patient newPatient() {
+        long id = nextPatientId++;
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setFirstName("Patient");
+        patient.setLastName("No" + id);
+        patient.setEmail("patient" + id + "@example.com");
+        patient.setPassword("secret");
+        patient.setDoctors(new ArrayList<>());
+        patient.setAppointments(new ArrayList<>());
+        patient.setInquiries(new ArrayList<>());
+        entityManager.persist(patient);
+        return patient;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.dto.HistoryPageDTO;
+import com.example.symply_care.dto.HistoryRecordDTO;
+import com.example.symply_care.entity.*;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.HistoryArchiveRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//הארכיון נכתב בסדר שבו התורים היו, וההיסטוריה נקראת בעמודים לפי (occurredAt, id) גם כשהמזהים לא באותו סדר
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "cleanup.batch-size=2"})
+@Import({HistoryArchiveService.class, ScheduledService.class, HistoryArchiveServiceTest.Config.class})
+class HistoryArchiveServiceTest {
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper().findAndRegisterModules();
+        }
+    }
+
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
+    @Autowired
+    private ScheduledService scheduledService;
+    @Autowired
+    private HistoryArchiveRepository historyArchiveRepository;
+    @Autowired
+    private AppointmentsRepository appointmentsRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void pastAppointmentsAreArchivedOldestFirst() {
+        Doctor doctor = persistDoctor();
+        Patient patient = persistPatient();
+        Instant base = Instant.now().minus(30, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        //המזהים נוצרים בסדר הפוך לזמן התור
+        List<Long> ids = new ArrayList<>();
+        for (int day = 5; day >= 1; day--) {
+            ids.add(persistAppointment(doctor, patient, base.plus(day, ChronoUnit.DAYS)));
+        }
+        entityManager.flush();
+
+        assertEquals(List.of(ids.get(4), ids.get(3)), appointmentsRepository.findIdsStartingBefore(Instant.now(), 2));
+
+        assertEquals(5, scheduledService.archiveOldAppointments());
+
+        List<HistoryArchive> archived = historyArchiveRepository.findAll(Sort.by("id"));
+        assertEquals(5, archived.size());
+        assertEquals(archived.stream().map(HistoryArchive::getOccurredAt).sorted().toList(),
+                archived.stream().map(HistoryArchive::getOccurredAt).toList());
+        assertEquals(0L, entityManager.createQuery("select count(a) from Appointments a", Long.class).getSingleResult());
+    }
+
+    @Test
+    void appointmentIsArchivedOnlyOnce() {
+        Long id = persistAppointment(persistDoctor(), persistPatient(), Instant.now().minus(1, ChronoUnit.DAYS));
+        historyArchiveService.archiveAppointments(List.of(id));
+        entityManager.flush();
+
+        //שרת שני שבחר את אותה מנה
+        historyArchiveService.archiveAppointments(List.of(id));
+        assertThrows(DataIntegrityViolationException.class, () -> historyArchiveRepository.flush());
+    }
+
+    @Test
+    void historyPagesFollowOccurrenceTimeNotArchiveOrder() {
+        Instant base = Instant.parse("2024-03-01T10:00:00Z");
+        List<HistoryArchive> rows = new ArrayList<>();
+        //נשמרים מהחדש לישן, ושתי רשומות באותו זמן בדיוק
+        long sourceId = 0;
+        for (int hour : new int[]{9, 7, 7, 5, 3, 1, 0}) {
+            rows.add(historyArchiveRepository.save(new HistoryArchive(null, ArchiveKind.APPOINTMENT, ++sourceId, 1L, 2L,
+                    202403, base.plus(hour, ChronoUnit.HOURS), Instant.now(), gzip())));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Long> expected = rows.stream()
+                .sorted(Comparator.comparing(HistoryArchive::getOccurredAt).thenComparing(HistoryArchive::getId).reversed())
+                .map(HistoryArchive::getSourceId)
+                .toList();
+        List<Long> actual = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HistoryPageDTO page = historyArchiveService.getPatientHistory(2L, "2024-03", cursor, 2);
+            page.getRecords().stream().map(HistoryRecordDTO::getSourceId).forEach(actual::add);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(expected, actual);
+        assertEquals(4, pages);
+        assertEquals(List.of(), historyArchiveService.getDoctorHistory(1L, "2024-04", null, 10).getRecords());
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> historyArchiveService.getPatientHistory(2L, null, "42", 10));
+    }
+
+    private static byte[] gzip() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write("{}".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Long persistAppointment(Doctor doctor, Patient patient, Instant startsAt) {
+        Appointments appointment = new Appointments();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patient);
+        appointment.setStartsAt(startsAt);
+        appointment.setEndsAt(startsAt.plus(30, ChronoUnit.MINUTES));
+        appointment.setDurationMinutes(30);
+        appointment.setDate(AppointmentService.formatDate(startsAt));
+        entityManager.persist(appointment);
+        return appointment.getId();
+    }
+
+    private Doctor persistDoctor() {
+        Doctor doctor = new Doctor();
+        doctor.setId(1L);
+        doctor.setFirstName("Doctor");
+        doctor.setLastName("No1");
+        doctor.setEmail("doctor1@example.com");
+        doctor.setPassword("secret");
+        doctor.setSpecialization(Specialization.values()[0]);
+        doctor.setExperience(5);
+        doctor.setPatients(new ArrayList<>());
+        doctor.setAppointments(new ArrayList<>());
+        doctor.setInquiries(new ArrayList<>());
+        entityManager.persist(doctor);
+        return doctor;
+    }
+
+    private Patient persistPatient() {
+        Patient patient = new Patient();
+        patient.setId(2L);
+        patient.setFirstName("Patient");
+        patient.setLastName("No2");
+        patient.setEmail("patient2@example.com");
+        patient.setPassword("secret");
+        patient.setDoctors(new ArrayList<>());
+        patient.setAppointments(new ArrayList<>());
+        patient.setInquiries(new ArrayList<>());
+        entityManager.persist(patient);
+        return patient;
+    }
+}
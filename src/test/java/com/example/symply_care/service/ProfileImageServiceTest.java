@@ -0,0 +1,98 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.dto.ImageMetadata;
+import com.example.symply_care.entity.Doctor;
+import com.example.symply_care.repository.DoctorRepository;
+import com.example.symply_care.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+//סוג התוכן של תמונה נקבע לפי הפורמט שזוהה, וכל קובץ אחר נדחה בהעלאה ולא מוגש כדף
+class ProfileImageServiceTest {
+
+    private final DoctorRepository doctorRepository = mock(DoctorRepository.class);
+    private ProfileImageService profileImageService;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws Exception {
+        profileImageService = new ProfileImageService(doctorRepository, mock(PatientRepository.class),
+                new ImageBlobStore(directory.toString()), 200, 25_000_000);
+    }
+
+    @Test
+    void contentTypeComesFromTheImageFormat() throws Exception {
+        Doctor doctor = new Doctor();
+
+        profileImageService.applyImage(doctor, png());
+
+        assertEquals(MediaType.IMAGE_PNG_VALUE, doctor.getImageContentType());
+        assertNotNull(doctor.getThumbnailHash());
+    }
+
+    @Test
+    void fileThatIsNotAnImageIsRejected() {
+        Doctor doctor = new Doctor();
+        byte[] html = "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8);
+        byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\" onload=\"alert(1)\"/>".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IllegalArgumentException.class, () -> profileImageService.applyImage(doctor, html));
+        assertThrows(IllegalArgumentException.class, () -> profileImageService.applyImage(doctor, svg));
+        assertNull(doctor.getImageHash());
+    }
+
+    @Test
+    void imageIsServedInlineWithoutSniffing() throws Exception {
+        Doctor doctor = new Doctor();
+        profileImageService.applyImage(doctor, png());
+        when(doctorRepository.findImageMetadataById(1L)).thenReturn(Optional.of(new ImageMetadata(
+                doctor.getImageHash(), doctor.getThumbnailHash(), doctor.getImageUpdatedAt(), doctor.getImageContentType())));
+
+        ResponseEntity<Resource> response = profileImageService.getDoctorImage(1L, false, null, request());
+
+        assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType());
+        assertEquals("nosniff", response.getHeaders().getFirst("X-Content-Type-Options"));
+        assertEquals("inline; filename=\"" + doctor.getImageHash() + ".png\"", response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+    }
+
+    @Test
+    void storedTypeOutsideTheAllowlistIsServedAsDownload() throws Exception {
+        Doctor doctor = new Doctor();
+        profileImageService.applyImage(doctor, png());
+        //שורה שנשמרה לפני הבדיקה, עם הסוג שהלקוח הצהיר עליו
+        when(doctorRepository.findImageMetadataById(1L)).thenReturn(Optional.of(new ImageMetadata(
+                doctor.getImageHash(), null, doctor.getImageUpdatedAt(), MediaType.TEXT_HTML_VALUE)));
+
+        ResponseEntity<Resource> response = profileImageService.getDoctorImage(1L, false, null, request());
+
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM, response.getHeaders().getContentType());
+        assertEquals("nosniff", response.getHeaders().getFirst("X-Content-Type-Options"));
+        assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).startsWith("attachment"));
+    }
+
+    private static ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/doctors/doctor/1/image"));
+    }
+
+    private static byte[] png() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.Specialization;
+import com.example.symply_care.repository.AppointmentsRepository;
+import com.example.symply_care.repository.DoctorAvailabilityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//האינדקס נטען מ"בסיס נתונים" מדומה: רופא 1 עובד בימי שני 09:00-12:00 בתורים של 30 דקות
+class ScheduleIndexTest {
+
+    private static final Specialization SPECIALIZATION = Specialization.values()[0];
+
+    private final DoctorAvailabilityRepository doctorAvailabilityRepository = mock(DoctorAvailabilityRepository.class);
+    private final AppointmentsRepository appointmentsRepository = mock(AppointmentsRepository.class);
+    //התורים ש"שמורים בבסיס הנתונים": מזהה רופא, התחלה, סיום
+    private final List<Object[]> storedAppointments = new CopyOnWriteArrayList<>();
+    private ScheduleIndex scheduleIndex;
+    private LocalDate monday;
+
+    @BeforeEach
+    void setUp() {
+        monday = LocalDate.now().plusDays(1).with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+        List<Object[]> templates = new ArrayList<>();
+        templates.add(new Object[]{1L, SPECIALIZATION, DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(12, 0), 30});
+        templates.add(new Object[]{2L, SPECIALIZATION, DayOfWeek.MONDAY, LocalTime.of(9, 15), LocalTime.of(10, 15), 30});
+        when(doctorAvailabilityRepository.findAllForIndex()).thenReturn(templates);
+        when(appointmentsRepository.findUpcomingForIndex(any())).thenAnswer(invocation -> new ArrayList<>(storedAppointments));
+        scheduleIndex = new ScheduleIndex(doctorAvailabilityRepository, appointmentsRepository, mock(TaskScheduler.class), 300_000);
+    }
+
+    @Test
+    void freeSlotsSkipOverlappingAppointments() {
+        //10:00-10:45 תופס את 10:00 וגם את 10:30
+        storedAppointments.add(new Object[]{1L, at(10, 0), at(10, 45)});
+        scheduleIndex.reload();
+
+        List<ScheduleIndex.Slot> slots = scheduleIndex.freeSlots(1L, at(0, 0), at(23, 0), 10);
+
+        assertEquals(List.of(at(9, 0), at(9, 30), at(11, 0), at(11, 30)),
+                slots.stream().map(ScheduleIndex.Slot::startsAt).toList());
+    }
+
+    @Test
+    void freeSlotsBySpecializationAreSortedAcrossDoctors() {
+        scheduleIndex.reload();
+
+        List<ScheduleIndex.Slot> slots = scheduleIndex.freeSlotsBySpecialization(SPECIALIZATION, at(0, 0), at(23, 0), 4);
+
+        assertEquals(List.of(at(9, 0), at(9, 15), at(9, 30), at(9, 45)),
+                slots.stream().map(ScheduleIndex.Slot::startsAt).toList());
+        assertEquals(List.of(1L, 2L, 1L, 2L), slots.stream().map(ScheduleIndex.Slot::doctorId).toList());
+    }
+
+    @Test
+    void appointmentMustFitInsideOneWorkingWindow() {
+        List<ScheduleIndex.Template> templates = List.of(
+                new ScheduleIndex.Template(DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(12, 0), 30),
+                new ScheduleIndex.Template(DayOfWeek.MONDAY, LocalTime.of(16, 0), LocalTime.of(18, 0), 30));
+
+        assertTrue(ScheduleIndex.withinWorkingHours(templates, at(9, 0), at(9, 30)));
+        assertTrue(ScheduleIndex.withinWorkingHours(templates, at(11, 15), at(12, 0)));
+        assertFalse(ScheduleIndex.withinWorkingHours(templates, at(11, 45), at(12, 15)));
+        assertFalse(ScheduleIndex.withinWorkingHours(templates, at(13, 0), at(13, 30)));
+        assertFalse(ScheduleIndex.withinWorkingHours(templates, at(9, 0).plus(1, ChronoUnit.DAYS), at(9, 30).plus(1, ChronoUnit.DAYS)));
+        //רופא בלי שעות עבודה מוגדרות
+        assertTrue(ScheduleIndex.withinWorkingHours(List.of(), at(3, 0), at(3, 30)));
+    }
+
+    //תור שנשמר אחרי שהאינדקס כבר קרא מבסיס הנתונים לא נעלם בהחלפה
+    @Test
+    void changesMadeDuringReloadAreKept() {
+        when(appointmentsRepository.findUpcomingForIndex(any())).thenAnswer(invocation -> {
+            List<Object[]> snapshot = new ArrayList<>(storedAppointments);
+            scheduleIndex.addBusyAfterCommit(1L, at(9, 0), at(9, 30));
+            return snapshot;
+        });
+
+        scheduleIndex.reload();
+
+        assertEquals(at(9, 30), scheduleIndex.freeSlots(1L, at(0, 0), at(23, 0), 1).get(0).startsAt());
+    }
+
+    @Test
+    void failedReloadKeepsTheCurrentIndex() {
+        scheduleIndex.reload();
+        scheduleIndex.addBusyAfterCommit(1L, at(9, 0), at(9, 30));
+        when(appointmentsRepository.findUpcomingForIndex(any())).thenThrow(new IllegalStateException("database down"));
+
+        assertThrows(IllegalStateException.class, () -> scheduleIndex.reload());
+        scheduleIndex.addBusyAfterCommit(1L, at(9, 30), at(10, 0));
+
+        assertEquals(at(10, 0), scheduleIndex.freeSlots(1L, at(0, 0), at(23, 0), 1).get(0).startsAt());
+    }
+
+    //הרבה threads קובעים תורים (קודם "commit" לבסיס הנתונים ואז עדכון האינדקס) בזמן שהאינדקס נבנה מחדש שוב ושוב.
+    //בסוף האינדקס צריך להכיל בדיוק את מה שבבסיס הנתונים
+    @Test
+    void concurrentBookingsDuringReloadsStayConsistent() throws Exception {
+        scheduleIndex.reload();
+        int threads = 8;
+        int bookingsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> bookers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            bookers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    Instant startsAt = at(0, 0).plus((long) (thread * bookingsPerThread + i) * 30, ChronoUnit.MINUTES);
+                    Instant endsAt = startsAt.plus(30, ChronoUnit.MINUTES);
+                    storedAppointments.add(new Object[]{3L, startsAt, endsAt});
+                    scheduleIndex.addBusyAfterCommit(3L, startsAt, endsAt);
+                }
+                return null;
+            }));
+        }
+        Future<?> reloader = executor.submit(() -> {
+            start.await();
+            while (bookers.stream().anyMatch(booker -> !booker.isDone())) {
+                scheduleIndex.reload();
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> booker : bookers) {
+            booker.get(60, TimeUnit.SECONDS);
+        }
+        reloader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //כל חצי שעה בטווח נקבעה, לכן אף slot בו לא יכול להיות פנוי
+        List<ScheduleIndex.Template> allWeek = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            allWeek.add(new ScheduleIndex.Template(day, LocalTime.MIN, LocalTime.of(23, 30), 30));
+        }
+        scheduleIndex.setTemplatesAfterCommit(3L, SPECIALIZATION, allWeek);
+        Instant end = at(0, 0).plus((long) threads * bookingsPerThread * 30, ChronoUnit.MINUTES);
+        assertEquals(threads * bookingsPerThread, storedAppointments.size());
+        assertEquals(List.of(), scheduleIndex.freeSlots(3L, at(0, 0), end, 10_000));
+        assertFalse(scheduleIndex.freeSlots(3L, end, end.plus(1, ChronoUnit.DAYS), 1).isEmpty());
+    }
+
+    private Instant at(int hour, int minute) {
+        return monday.atTime(hour, minute).atZone(ZoneId.systemDefault()).toInstant();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.symply_care.service;
+
+import com.example.symply_care.entity.DoctorAvailability;
+import com.example.symply_care.repository.DoctorAvailabilityRepository;
+import com.example.symply_care.repository.DoctorRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SchedulingServiceTest {
+
+    private final DoctorAvailabilityRepository doctorAvailabilityRepository = mock(DoctorAvailabilityRepository.class);
+    private final SchedulingService schedulingService = new SchedulingService(mock(DoctorRepository.class),
+            doctorAvailabilityRepository, mock(ScheduleIndex.class));
+
+    //שעות העבודה נקראות מבסיס הנתונים בכל קביעה
+    @Test
+    void bookingOutsideWorkingHoursIsRejected() {
+        DoctorAvailability morning = new DoctorAvailability();
+        morning.setDayOfWeek(DayOfWeek.MONDAY);
+        morning.setStartTime(LocalTime.of(9, 0));
+        morning.setEndTime(LocalTime.of(12, 0));
+        morning.setSlotMinutes(30);
+        when(doctorAvailabilityRepository.lockByDoctorId(1L)).thenReturn(List.of(morning));
+        Instant mondayAtNine = LocalDate.now().with(TemporalAdjusters.next(DayOfWeek.MONDAY))
+                .atTime(9, 0).atZone(ZoneId.systemDefault()).toInstant();
+
+        assertDoesNotThrow(() -> schedulingService.requireWithinWorkingHours(1L, mondayAtNine, mondayAtNine.plus(30, ChronoUnit.MINUTES)));
+        assertThrows(NoSuchElementException.class, () -> schedulingService.requireWithinWorkingHours(1L,
+                mondayAtNine.plus(3, ChronoUnit.HOURS), mondayAtNine.plus(210, ChronoUnit.MINUTES)));
+        assertDoesNotThrow(() -> schedulingService.requireWithinWorkingHours(2L,
+                mondayAtNine.plus(3, ChronoUnit.HOURS), mondayAtNine.plus(210, ChronoUnit.MINUTES)));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.symply_care.service;
+
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+//המאגר מול Session מדומה: כל getTransport מחזיר חיבור חדש, וכך אפשר לספור כמה חיבורים נפתחו ונסגרו
+class SmtpTransportPoolTest {
+
+    private static final int POOL_SIZE = 2;
+    private static final int MAX_MESSAGES = 3;
+
+    private final List<Transport> opened = new ArrayList<>();
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Session session = mock(Session.class);
+        when(session.getTransport(nullable(String.class))).thenAnswer(invocation -> {
+            Transport transport = mock(Transport.class);
+            when(transport.isConnected()).thenReturn(true);
+            opened.add(transport);
+            return transport;
+        });
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setSession(session);
+        mailSender.setHost("smtp.example.com");
+    }
+
+    @Test
+    void releasedConnectionIsReused() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, POOL_SIZE, 10_000, MAX_MESSAGES);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow(100);
+        pool.release(first);
+
+        assertSame(first, pool.borrow(100));
+        assertEquals(1, opened.size());
+        verify(opened.get(0)).connect(eq("smtp.example.com"), anyInt(), any(), any());
+    }
+
+    @Test
+    void borrowWaitsForCapacityAndGivesUp() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, POOL_SIZE, 10_000, MAX_MESSAGES);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow(100);
+        assertNotNull(pool.borrow(100));
+        assertNull(pool.borrow(50));
+
+        pool.invalidate(first);
+        assertNotNull(pool.borrow(50));
+        verify(opened.get(0)).close();
+        assertEquals(3, opened.size());
+    }
+
+    @Test
+    void idleConnectionThatWasDroppedIsReplaced() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, POOL_SIZE, 0, MAX_MESSAGES);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow(100);
+        pool.release(first);
+        //השרת ניתק את החיבור בזמן שחיכה במאגר
+        when(first.transport().isConnected()).thenReturn(false);
+
+        SmtpTransportPool.PooledTransport second = pool.borrow(100);
+        assertNotSame(first, second);
+        verify(first.transport()).close();
+
+        //חיבור שעדיין מחובר עובר את הבדיקה וחוזר
+        pool.release(second);
+        assertSame(second, pool.borrow(100));
+    }
+
+    @Test
+    void connectionIsEvictedAfterMaxMessages() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, POOL_SIZE, 10_000, MAX_MESSAGES);
+
+        SmtpTransportPool.PooledTransport pooled = pool.borrow(100);
+        for (int i = 1; i < MAX_MESSAGES; i++) {
+            pool.release(pooled);
+            assertSame(pooled, pool.borrow(100));
+        }
+        pool.release(pooled);
+
+        verify(pooled.transport()).close();
+        assertNotSame(pooled, pool.borrow(100));
+        assertEquals(2, opened.size());
+    }
+
+    @Test
+    void destroyClosesIdleConnectionsAndStopsLending() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, POOL_SIZE, 10_000, MAX_MESSAGES);
+        SmtpTransportPool.PooledTransport idle = pool.borrow(100);
+        SmtpTransportPool.PooledTransport busy = pool.borrow(100);
+        pool.release(idle);
+
+        pool.destroy();
+        verify(idle.transport()).close();
+        assertNull(pool.borrow(100));
+
+        //חיבור שהיה בשימוש בזמן הסגירה נסגר כשהוא חוזר
+        pool.release(busy);
+        verify(busy.transport()).close();
+    }
+}